@@ -0,0 +1,205 @@
+package com.mvc.controller;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.mvc.service.FoodService;
+import com.mvc.util.JsonUtil;
+import com.mvc.util.ReadProperties;
+
+/**
+ * 异步下单/加菜接口：使用servlet 3异步处理，容器线程在redis操作期间被释放，
+ * redis操作在独立的有界线程池中执行，线程池已满或排队期间超时返回503；
+ * 已开始执行的操作不会撤销，执行期间超时返回202 ACCEPTED，结果以菜品数量为准。
+ * 
+ * @author 23006
+ *
+ */
+@Controller
+@RequestMapping("/async")
+public class AsyncOrderController {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncOrderController.class);
+
+	@Resource
+	private FoodService foodService;
+
+	private ThreadPoolExecutor executor;
+	private long timeoutMillis;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong accepted = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		int threads = Integer.parseInt(ReadProperties.getProperties("async_order_threads", "16"));
+		int queueSize = Integer.parseInt(ReadProperties.getProperties("async_order_queue_size", "1000"));
+		timeoutMillis = Long.parseLong(ReadProperties.getProperties("async_order_timeout_millis", "3000"));
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+				queueSize), new ThreadFactory() {
+			private final AtomicInteger index = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "async-order-" + index.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdown();
+	}
+
+	/**
+	 * 异步下单
+	 * 
+	 * @param foodId
+	 */
+	@RequestMapping("/click.do")
+	public void click(@RequestParam("foodId") final String foodId, HttpServletRequest request,
+			HttpServletResponse response) {
+		submit(request, new Operation() {
+			public long run() {
+				return foodService.editFoodNumber(foodId);
+			}
+		}, foodId);
+	}
+
+	/**
+	 * 异步加菜
+	 * 
+	 * @param foodId
+	 */
+	@RequestMapping("/save.do")
+	public void save(@RequestParam("foodId") final String foodId, HttpServletRequest request,
+			HttpServletResponse response) {
+		submit(request, new Operation() {
+			public long run() {
+				return foodService.saveFoodNumber(foodId);
+			}
+		}, foodId);
+	}
+
+	/**
+	 * 异步处理统计：排队数、处理中数、完成数、拒绝数、超时数、执行中超时数
+	 */
+	@RequestMapping(value = "/stats.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String stats() {
+		return "{\"queued\":" + executor.getQueue().size() + ",\"inFlight\":" + inFlight.get() + ",\"completed\":"
+				+ completed.get() + ",\"rejected\":" + rejected.get() + ",\"timeouts\":" + timeouts.get()
+				+ ",\"accepted\":" + accepted.get() + "}";
+	}
+
+	private void submit(HttpServletRequest request, final Operation operation, final String foodId) {
+		final AsyncContext ctx = request.startAsync();
+		ctx.setTimeout(timeoutMillis);
+		// 超时与处理完成只有一方能写响应
+		final AtomicBoolean answered = new AtomicBoolean();
+		// 超时与开始执行只有一方能成功：排队期间超时的操作不再执行，已开始执行的操作超时时不能报告TIMEOUT
+		final AtomicBoolean started = new AtomicBoolean();
+		ctx.addListener(new AsyncListener() {
+			public void onTimeout(AsyncEvent event) throws IOException {
+				if (started.compareAndSet(false, true)) {
+					if (answered.compareAndSet(false, true)) {
+						timeouts.incrementAndGet();
+						write(ctx, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "{\"status\":\"TIMEOUT\"}");
+					}
+				} else if (answered.compareAndSet(false, true)) {
+					// 已经在扣减，可能已成功，不能让客户端当作失败重试
+					accepted.incrementAndGet();
+					write(ctx, HttpServletResponse.SC_ACCEPTED, "{\"foodId\":" + JsonUtil.quote(foodId)
+							+ ",\"status\":\"ACCEPTED\"}");
+				}
+			}
+
+			public void onError(AsyncEvent event) throws IOException {
+				answered.set(true);
+			}
+
+			public void onComplete(AsyncEvent event) throws IOException {
+			}
+
+			public void onStartAsync(AsyncEvent event) throws IOException {
+			}
+		});
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					// 排队期间已超时或出错的请求不再扣减
+					if (answered.get() || !started.compareAndSet(false, true)) {
+						return;
+					}
+					inFlight.incrementAndGet();
+					try {
+						String json = StockApiController.stockJson(foodId, operation.run());
+						if (answered.compareAndSet(false, true)) {
+							completed.incrementAndGet();
+							write(ctx, 200, json);
+						}
+					} catch (Exception e) {
+						logger.error("异步处理菜品" + foodId + "失败：" + e.getMessage());
+						if (answered.compareAndSet(false, true)) {
+							write(ctx, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "{\"status\":\"FAILED\"}");
+						}
+					} finally {
+						inFlight.decrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			if (answered.compareAndSet(false, true)) {
+				write(ctx, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "{\"status\":\"BUSY\"}");
+			}
+		}
+	}
+
+	private void write(AsyncContext ctx, int status, String json) {
+		try {
+			HttpServletResponse response = (HttpServletResponse) ctx.getResponse();
+			response.setStatus(status);
+			response.setContentType("application/json;charset=UTF-8");
+			response.getWriter().write(json);
+		} catch (Exception e) {
+			logger.error("写入异步响应失败：" + e.getMessage());
+		} finally {
+			ctx.complete();
+		}
+	}
+
+	/**
+	 * 在线程池中执行的redis操作
+	 */
+	private interface Operation {
+		long run();
+	}
+}
@@ -0,0 +1,44 @@
+package com.mvc.controller;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.mvc.util.RedisUtil;
+
+/**
+ * 健康检查接口，供负载均衡判断本节点是否可以接收请求
+ * 
+ * @author 23006
+ *
+ */
+@Controller
+@RequestMapping("/health")
+public class HealthController {
+
+	/**
+	 * 应用启动时即初始化redis连接池并开始预热，不等第一个请求
+	 */
+	@PostConstruct
+	public void init() {
+		RedisUtil.isReady();
+	}
+
+	/**
+	 * 连接池预热完成前返回503
+	 * 
+	 * @return {"ready":true}
+	 */
+	@RequestMapping(value = "/ready.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String ready(HttpServletResponse response) {
+		boolean ready = RedisUtil.isReady();
+		if (!ready) {
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+		return "{\"ready\":" + ready + "}";
+	}
+}
@@ -0,0 +1,84 @@
+package com.mvc.controller;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.mvc.util.LatencyHistogram;
+import com.mvc.util.RedisPoolMetrics;
+import com.mvc.util.RedisUtil;
+
+/**
+ * 文本格式的监控指标，每行“指标名 值”，可直接被prometheus抓取；同样的数据也通过JMX发布
+ * 
+ * @author 23006
+ *
+ */
+@Controller
+public class MetricsController {
+
+	@RequestMapping(value = "/metrics.do", produces = "text/plain;charset=UTF-8")
+	@ResponseBody
+	public String metrics() {
+		StringBuilder out = new StringBuilder();
+		// 多个redis节点时每个节点的连接池以node标签区分
+		for (Map.Entry<String, RedisPoolMetrics> entry : RedisUtil.getNodePoolMetrics().entrySet()) {
+			String node = RedisUtil.isSharded() ? "node=\"" + entry.getKey() + "\"" : null;
+			RedisPoolMetrics pool = entry.getValue();
+			line(out, metric("redis_pool_max_active", node), pool.getMaxActive());
+			line(out, metric("redis_pool_max_idle", node), pool.getMaxIdle());
+			line(out, metric("redis_pool_active", node), pool.getActive());
+			line(out, metric("redis_pool_idle", node), pool.getIdle());
+			line(out, metric("redis_pool_borrow_wait_micros", node, "quantile=\"0.5\""), pool.getBorrowWaitP50());
+			line(out, metric("redis_pool_borrow_wait_micros", node, "quantile=\"0.99\""), pool.getBorrowWaitP99());
+			line(out, metric("redis_pool_borrow_wait_micros", node, "quantile=\"0.999\""), pool.getBorrowWaitP999());
+			line(out, metric("redis_pool_borrow_wait_micros", node, "quantile=\"1\""), pool.getBorrowWaitMax());
+			line(out, metric("redis_pool_borrow_wait_micros_count", node), pool.getBorrows());
+			line(out, metric("redis_pool_borrow_wait_micros_mean", node), pool.getBorrowWaitMean());
+			line(out, metric("redis_pool_exhausted_total", node), pool.getExhausted());
+			line(out, metric("redis_pool_connect_failures_total", node), pool.getConnectFailures());
+			line(out, metric("redis_pool_broken_returns_total", node), pool.getBrokenReturns());
+			line(out, metric("redis_pool_validations_total", node), pool.getValidations());
+			line(out, metric("redis_pool_validation_failures_total", node), pool.getValidationFailures());
+			line(out, metric("redis_pool_created_total", node), pool.getCreated());
+			line(out, metric("redis_pool_destroyed_total", node), pool.getDestroyed());
+			line(out, metric("redis_pool_created_per_minute", node), pool.getCreatedPerMinute());
+		}
+		line(out, "redis_pool_ready", RedisUtil.isReady() ? 1 : 0);
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(RedisUtil
+				.getCommandLatencies()).entrySet()) {
+			String command = "redis_command_micros{command=\"" + entry.getKey() + "\"";
+			LatencyHistogram histogram = entry.getValue();
+			line(out, command + ",quantile=\"0.5\"}", histogram.getPercentile(50));
+			line(out, command + ",quantile=\"0.9\"}", histogram.getPercentile(90));
+			line(out, command + ",quantile=\"0.99\"}", histogram.getPercentile(99));
+			line(out, command + ",quantile=\"0.999\"}", histogram.getPercentile(99.9));
+			line(out, command + ",quantile=\"1\"}", histogram.getMax());
+			line(out, "redis_command_micros_count{command=\"" + entry.getKey() + "\"}", histogram.getCount());
+		}
+		line(out, "redis_slow_commands_total", RedisUtil.getSlowCommands());
+		return out.toString();
+	}
+
+	/**
+	 * 指标名加上非空的标签
+	 */
+	private static String metric(String name, String... labels) {
+		StringBuilder res = new StringBuilder(name);
+		char separator = '{';
+		for (String label : labels) {
+			if (label != null) {
+				res.append(separator).append(label);
+				separator = ',';
+			}
+		}
+		return separator == '{' ? name : res.append('}').toString();
+	}
+
+	private static void line(StringBuilder out, String name, Object value) {
+		out.append(name).append(' ').append(value).append('\n');
+	}
+}
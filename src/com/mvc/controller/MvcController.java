@@ -1,16 +1,25 @@
 package com.mvc.controller;
 
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
 import javax.annotation.Resource;
 
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.SessionAttributes;
 
+import com.mvc.dao.FoodDao;
+import com.mvc.entity.BulkLoadReport;
+import com.mvc.entity.CartResult;
 import com.mvc.service.FoodService;
-import com.mvc.util.RedisUtil;
+import com.mvc.util.JsonUtil;
 
 @Controller
 @RequestMapping("/")
@@ -42,6 +51,22 @@ public class MvcController {
 
 	}
 
+	/**
+	 * 批量初始化菜品，请求体为csv，每行一个“菜品编号,菜品数量”
+	 * 
+	 * @param body
+	 * @return 写入行数、失败行数、被同一块中重复编号覆盖的行数、耗时和每秒写入行数
+	 * @throws IOException
+	 */
+	@RequestMapping(value = "/bulkInit.do", method = RequestMethod.POST, produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String bulkInit(Reader body) throws IOException {
+		BulkLoadReport report = foodService.bulkInit(body);
+		return "{\"rows\":" + report.getRows() + ",\"failures\":" + report.getFailures() + ",\"merged\":"
+				+ report.getMerged() + ",\"millis\":" + report.getMillis() + ",\"rowsPerSecond\":"
+				+ report.getRowsPerSecond() + "}";
+	}
+
 	/**
 	 * 当点击点餐时
 	 * 
@@ -53,14 +78,8 @@ public class MvcController {
 
 	public  String click(@RequestParam("foodId") final String foodId, Model model) {
 		System.out.println("进入点餐 控制器");
-		String foodNumber = null;
-
-		synchronized (this){
-			
-		 foodService.editFoodNumber(foodId);
-		 
-		}
-		foodNumber = RedisUtil.get(foodId);
+		long stock = foodService.editFoodNumber(foodId);
+		String foodNumber = toFoodNumber(stock);
 		model.addAttribute("foodId", foodId);
 		model.addAttribute("foodNumber", foodNumber);
 		return "redirect:index.jsp";
@@ -77,16 +96,108 @@ public class MvcController {
 	@RequestMapping("/save.do")
 	public String save(@RequestParam("foodId") String foodId, Model model) {
 		System.out.println("进入增加控制器");
-		String foodNumber = null;
-		synchronized (this){
-			
-		foodService.saveFoodNumber(foodId);
-		
-		}
-		foodNumber = RedisUtil.get(foodId);
+		long stock = foodService.saveFoodNumber(foodId);
+		String foodNumber = toFoodNumber(stock);
 		model.addAttribute("foodId", foodId);
 		model.addAttribute("foodNumber", foodNumber);
 		return "redirect:index.jsp";
 	}
 
+	/**
+	 * 异步下单，订单进入缓冲区后立即返回订单号，客户端通过orderResult.do查询结果；
+	 * 未开启异步下单时同步处理并直接返回结果
+	 * 
+	 * @param foodId
+	 * @return
+	 */
+	@RequestMapping(value = "/order.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String order(@RequestParam("foodId") String foodId) {
+		if (!foodService.isOrderPipelineEnabled()) {
+			return orderJson(-1L, foodService.editFoodNumber(foodId));
+		}
+		long orderId = foodService.submitOrder(foodId);
+		if (orderId == FoodService.ORDER_REJECTED) {
+			return "{\"status\":\"REJECTED\"}";
+		}
+		return "{\"orderId\":" + orderId + ",\"status\":\"ACCEPTED\"}";
+	}
+
+	/**
+	 * 查询异步订单的处理结果
+	 * 
+	 * @param orderId
+	 * @return
+	 */
+	@RequestMapping(value = "/orderResult.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String orderResult(@RequestParam("orderId") long orderId) {
+		return orderJson(orderId, foodService.getOrderResult(orderId));
+	}
+
+	/**
+	 * 购物车下单，多个菜品一次原子扣减，全部成功或全部不扣减
+	 * 
+	 * @param foodIds 菜品编号
+	 * @param quantities 与foodId一一对应的数量
+	 * @return
+	 */
+	@RequestMapping(value = "/cart.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String cart(@RequestParam("foodId") String[] foodIds, @RequestParam("quantity") long[] quantities) {
+		if (foodIds.length != quantities.length) {
+			return "{\"success\":false,\"error\":\"foodId和quantity个数不一致\"}";
+		}
+		for (long quantity : quantities) {
+			if (quantity <= 0) {
+				return "{\"success\":false,\"error\":\"quantity必须大于0\"}";
+			}
+		}
+		CartResult result;
+		try {
+			result = foodService.orderCart(foodIds, quantities);
+		} catch (UnsupportedOperationException e) {
+			return "{\"success\":false,\"error\":" + JsonUtil.quote(e.getMessage()) + "}";
+		}
+		StringBuilder json = new StringBuilder("{\"success\":").append(result.isSuccess()).append(",\"items\":[");
+		boolean first = true;
+		for (Map.Entry<String, Long> entry : result.getFoodNumbers().entrySet()) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+			json.append("{\"foodId\":").append(JsonUtil.quote(entry.getKey()));
+			if (entry.getValue() >= 0) {
+				json.append(",\"foodNumber\":").append(entry.getValue());
+			} else {
+				json.append(",\"status\":\"NOT_FOUND\"");
+			}
+			json.append('}');
+		}
+		return json.append("]}").toString();
+	}
+
+	private String orderJson(long orderId, long result) {
+		String status = StockApiController.status(result);
+		StringBuilder json = new StringBuilder("{");
+		if (orderId >= 0) {
+			json.append("\"orderId\":").append(orderId).append(',');
+		}
+		json.append("\"status\":\"").append(status).append('"');
+		if (result >= 0) {
+			json.append(",\"foodNumber\":").append(result);
+		}
+		return json.append('}').toString();
+	}
+
+	/**
+	 * 将下单/加菜返回的数量转换为页面显示值，售完显示0，菜品不存在为null
+	 */
+	private String toFoodNumber(long stock) {
+		if (stock >= 0) {
+			return String.valueOf(stock);
+		}
+		return stock == FoodDao.SOLD_OUT ? "0" : null;
+	}
+
 }
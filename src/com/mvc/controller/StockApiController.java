@@ -0,0 +1,153 @@
+package com.mvc.controller;
+
+import java.nio.charset.Charset;
+
+import javax.annotation.Resource;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.mvc.dao.FoodDao;
+import com.mvc.service.FoodService;
+import com.mvc.util.JsonUtil;
+
+/**
+ * 菜品数量的json接口：下单、加菜、初始化、查询直接返回操作后的数量，不跳转页面，不使用session
+ * 
+ * @author 23006
+ *
+ */
+@Controller
+@RequestMapping("/api")
+public class StockApiController {
+
+	private static final MediaType JSON = new MediaType("application", "json", Charset.forName("UTF-8"));
+
+	@Resource
+	private FoodService foodService;
+
+	/**
+	 * 下单
+	 * 
+	 * @param foodId
+	 * @return {"foodId":"1","status":"SUCCESS","foodNumber":9}
+	 */
+	@RequestMapping(value = "/order.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String order(@RequestParam("foodId") String foodId) {
+		return stockJson(foodId, foodService.editFoodNumber(foodId));
+	}
+
+	/**
+	 * 加菜
+	 * 
+	 * @param foodId
+	 * @return
+	 */
+	@RequestMapping(value = "/restock.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String restock(@RequestParam("foodId") String foodId) {
+		return stockJson(foodId, foodService.saveFoodNumber(foodId));
+	}
+
+	/**
+	 * 初始化菜品数量
+	 * 
+	 * @param foodId
+	 * @param foodNumber 0或正整数
+	 * @return
+	 */
+	@RequestMapping(value = "/init.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String init(@RequestParam("foodId") String foodId, @RequestParam("foodNumber") String foodNumber) {
+		if (!FoodDao.isValidFoodNumber(foodNumber)) {
+			return "{\"foodId\":" + JsonUtil.quote(foodId) + ",\"status\":\"INVALID\"}";
+		}
+		if (!foodService.intoRedis(foodId, foodNumber)) {
+			return "{\"foodId\":" + JsonUtil.quote(foodId) + ",\"status\":\"FAILED\"}";
+		}
+		return stockJson(foodId, Long.parseLong(foodNumber));
+	}
+
+	/**
+	 * 查询菜品数量，响应带以菜品版本号生成的ETag；客户端带If-None-Match且版本号未变化时返回304，
+	 * 不读取菜品数量
+	 * 
+	 * @param foodId
+	 * @param ifNoneMatch
+	 * @return
+	 */
+	@RequestMapping(value = "/stock.do", produces = "application/json;charset=UTF-8")
+	public ResponseEntity<String> stock(@RequestParam("foodId") String foodId,
+			@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+		HttpHeaders headers = new HttpHeaders();
+		// 浏览器每次都带ETag来验证
+		headers.setCacheControl("no-cache");
+		// 先取版本号再取数量，期间数量变化时返回的是旧版本号，下次请求会重新读取
+		String version = foodService.getStockVersion(foodId);
+		if (version != null) {
+			String etag = "\"" + version + "\"";
+			headers.setETag(etag);
+			if (matches(ifNoneMatch, etag)) {
+				return new ResponseEntity<String>(headers, HttpStatus.NOT_MODIFIED);
+			}
+		}
+		headers.setContentType(JSON);
+		return new ResponseEntity<String>(stockJson(foodId, foodService.getFoodNumber(foodId)), headers, HttpStatus.OK);
+	}
+
+	/**
+	 * If-None-Match中是否有与etag相同的值，可以是逗号分隔的多个值或*
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals(etag) || tag.equals("*")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 下单/加菜/查询结果对应的状态
+	 */
+	static String status(long result) {
+		if (result >= 0) {
+			return "SUCCESS";
+		} else if (result == FoodDao.SOLD_OUT) {
+			return "SOLD_OUT";
+		} else if (result == FoodDao.NOT_FOUND) {
+			return "NOT_FOUND";
+		} else if (result == FoodService.ORDER_PENDING) {
+			return "PENDING";
+		} else if (result == FoodService.ORDER_FAILED) {
+			return "FAILED";
+		}
+		return "UNKNOWN";
+	}
+
+	static String stockJson(String foodId, long result) {
+		StringBuilder json = new StringBuilder("{\"foodId\":").append(JsonUtil.quote(foodId));
+		json.append(",\"status\":\"").append(status(result)).append('"');
+		if (result >= 0) {
+			json.append(",\"foodNumber\":").append(result);
+		} else if (result == FoodDao.SOLD_OUT) {
+			json.append(",\"foodNumber\":0");
+		}
+		return json.append('}').toString();
+	}
+}
@@ -0,0 +1,477 @@
+package com.mvc.controller;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.mvc.dao.FoodDao;
+import com.mvc.service.FoodService;
+import com.mvc.util.ReadProperties;
+import com.mvc.util.RedisSubscriber;
+
+/**
+ * 菜品数量实时推送（Server-Sent Events）
+ * <p>
+ * 本节点只订阅一次数量变化频道，收到的变化按菜品合并，每个周期只推送各菜品版本号最大的数量；
+ * 乱序到达的旧数量不会覆盖新数量。同一周期的多条变化对同一连接只写一次。
+ * </p>
+ * <p>
+ * 推送线程只把数据放入各连接的待写缓冲，由写线程池写出，每个连接同时只有一个写任务，慢连接不会拖住其他连接；
+ * 单次写出超时或待写数据积压过多的连接直接关闭。
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+@Controller
+public class StockStreamController {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockStreamController.class);
+
+	/**
+	 * 未指定菜品的连接接收全部菜品的变化
+	 */
+	private static final String ALL = "*";
+
+	/**
+	 * 每个连接最多积压的待写字符数，超出时关闭连接
+	 */
+	private static final int MAX_BUFFERED_CHARS = 64 * 1024;
+
+	@Resource
+	private FoodService foodService;
+
+	/**
+	 * 菜品编号 -> 关注该菜品的连接
+	 */
+	private final ConcurrentHashMap<String, Set<StreamConnection>> connections = new ConcurrentHashMap<String, Set<StreamConnection>>();
+
+	/**
+	 * 本周期内收到的变化，同一菜品只保留版本号最大的数量
+	 */
+	private final ConcurrentHashMap<String, StockChange> pending = new ConcurrentHashMap<String, StockChange>();
+
+	/**
+	 * 各菜品已推送的最大版本号，只在推送线程中访问；上一周期之后才到达的旧数量据此丢弃
+	 */
+	private final Map<String, Long> pushed = new HashMap<String, Long>();
+
+	private final AtomicInteger connectionCount = new AtomicInteger();
+
+	private ScheduledExecutorService scheduler;
+	private ExecutorService writers;
+	private int maxConnections;
+	private long writeTimeoutMillis;
+	private long heartbeatMillis;
+	private long lastHeartbeat;
+
+	@PostConstruct
+	public void init() {
+		long tickMillis = Long.parseLong(ReadProperties.getProperties("stock_events_tick_millis", "200"));
+		heartbeatMillis = Long.parseLong(ReadProperties.getProperties("stock_events_heartbeat_millis", "15000"));
+		maxConnections = Integer.parseInt(ReadProperties.getProperties("stock_events_max_connections", "10000"));
+		writeTimeoutMillis = Long.parseLong(ReadProperties.getProperties("stock_events_write_timeout_millis", "5000"));
+		writers = Executors.newFixedThreadPool(
+				Integer.parseInt(ReadProperties.getProperties("stock_events_writer_threads", "4")), new ThreadFactory() {
+					private final AtomicInteger index = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "stock-stream-writer-" + index.getAndIncrement());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		lastHeartbeat = System.currentTimeMillis();
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "stock-stream");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					tick();
+				} catch (Exception e) {
+					logger.error("推送菜品数量失败：" + e.getMessage());
+				}
+			}
+		}, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+		RedisSubscriber.addListener(FoodDao.STOCK_CHANNEL, new RedisSubscriber.MessageListener() {
+			public void onMessage(String channel, String message) {
+				int pos = message.indexOf(' ');
+				int pos2 = pos < 0 ? -1 : message.indexOf(' ', pos + 1);
+				if (pos <= 0 || pos2 <= pos + 1) {
+					logger.error("无法解析菜品数量变化：" + message);
+					return;
+				}
+				try {
+					offer(message.substring(pos2 + 1), new StockChange(Long.parseLong(message.substring(0, pos)),
+							Long.parseLong(message.substring(pos + 1, pos2))));
+				} catch (NumberFormatException e) {
+					logger.error("无法解析菜品数量变化：" + message);
+				}
+			}
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		scheduler.shutdownNow();
+		writers.shutdownNow();
+		for (Set<StreamConnection> set : connections.values()) {
+			for (StreamConnection conn : set) {
+				conn.close();
+			}
+		}
+	}
+
+	/**
+	 * 订阅菜品数量变化，不传foodId时接收全部菜品；连接建立后先推送一次当前数量
+	 *
+	 * @param foodIds
+	 */
+	@RequestMapping("/stream.do")
+	public void stream(@RequestParam(value = "foodId", required = false) String[] foodIds,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (connectionCount.incrementAndGet() > maxConnections) {
+			connectionCount.decrementAndGet();
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return;
+		}
+		response.setContentType("text/event-stream;charset=UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+		AsyncContext ctx = request.startAsync();
+		ctx.setTimeout(0);
+		boolean all = foodIds == null || foodIds.length == 0;
+		final StreamConnection conn = new StreamConnection(ctx, all ? new String[] { ALL } : foodIds);
+		ctx.addListener(new AsyncListener() {
+			public void onTimeout(AsyncEvent event) throws IOException {
+				remove(conn);
+			}
+
+			public void onError(AsyncEvent event) throws IOException {
+				remove(conn);
+			}
+
+			public void onComplete(AsyncEvent event) throws IOException {
+				remove(conn);
+			}
+
+			public void onStartAsync(AsyncEvent event) throws IOException {
+			}
+		});
+		// 先登记再读取当前数量，之间发生的变化会在下一周期补上
+		for (String foodId : conn.foodIds) {
+			Set<StreamConnection> set = connections.get(foodId);
+			if (set == null) {
+				Set<StreamConnection> created = Collections.newSetFromMap(new ConcurrentHashMap<StreamConnection, Boolean>());
+				set = connections.putIfAbsent(foodId, created);
+				if (set == null) {
+					set = created;
+				}
+			}
+			set.add(conn);
+		}
+		StringBuilder snapshot = new StringBuilder(":connected\n\n");
+		if (!all) {
+			for (String foodId : conn.foodIds) {
+				appendEvent(snapshot, StockApiController.stockJson(foodId, foodService.getFoodNumber(foodId)));
+			}
+		}
+		send(conn, snapshot.toString());
+	}
+
+	/**
+	 * 推送连接统计
+	 */
+	@RequestMapping(value = "/stream/stats.do", produces = "application/json;charset=UTF-8")
+	@ResponseBody
+	public String stats() {
+		return "{\"connections\":" + connectionCount.get() + ",\"pending\":" + pending.size() + "}";
+	}
+
+	/**
+	 * 放入本周期的变化，已有同一菜品版本号更大的变化时丢弃；版本号相同时后到的覆盖先到的
+	 */
+	private void offer(String foodId, StockChange change) {
+		while (true) {
+			StockChange current = pending.putIfAbsent(foodId, change);
+			if (current == null) {
+				return;
+			}
+			if (current.version > change.version) {
+				return;
+			}
+			if (pending.replace(foodId, current, change)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 一个推送周期：关闭写出超时的连接，取出本周期的变化，每个菜品的事件只拼接一次，再按连接合并交给写线程池
+	 */
+	private void tick() {
+		long now = System.currentTimeMillis();
+		boolean heartbeat = now - lastHeartbeat >= heartbeatMillis;
+		if (heartbeat) {
+			lastHeartbeat = now;
+		}
+		for (Set<StreamConnection> set : connections.values()) {
+			for (StreamConnection conn : set) {
+				long started = conn.writeStarted;
+				if (started > 0 && now - started > writeTimeoutMillis) {
+					logger.warn("推送连接写出超时，关闭连接");
+					remove(conn);
+				}
+			}
+		}
+		Map<StreamConnection, StringBuilder> out = new HashMap<StreamConnection, StringBuilder>();
+		if (!pending.isEmpty()) {
+			StringBuilder all = new StringBuilder();
+			for (String foodId : pending.keySet()) {
+				// 逐个取出，取出后到达的变化留到下一周期
+				StockChange change = pending.remove(foodId);
+				if (change == null) {
+					continue;
+				}
+				Long last = pushed.get(foodId);
+				if (last != null && change.version < last) {
+					continue;
+				}
+				pushed.put(foodId, change.version);
+				String event = appendEvent(new StringBuilder(), StockApiController.stockJson(foodId, change.number))
+						.toString();
+				all.append(event);
+				Set<StreamConnection> set = connections.get(foodId);
+				if (set != null) {
+					for (StreamConnection conn : set) {
+						// 同时订阅全部菜品的连接只推送全部菜品的事件，避免重复
+						if (conn.all) {
+							continue;
+						}
+						StringBuilder sb = out.get(conn);
+						if (sb == null) {
+							sb = new StringBuilder();
+							out.put(conn, sb);
+						}
+						sb.append(event);
+					}
+				}
+			}
+			Set<StreamConnection> set = connections.get(ALL);
+			if (set != null) {
+				for (StreamConnection conn : set) {
+					out.put(conn, all);
+				}
+			}
+		}
+		if (heartbeat) {
+			for (Set<StreamConnection> set : connections.values()) {
+				for (StreamConnection conn : set) {
+					if (!out.containsKey(conn)) {
+						out.put(conn, new StringBuilder(":\n\n"));
+					}
+				}
+			}
+		}
+		for (Map.Entry<StreamConnection, StringBuilder> entry : out.entrySet()) {
+			send(entry.getKey(), entry.getValue().toString());
+		}
+	}
+
+	/**
+	 * 放入连接的待写缓冲，连接没有正在进行的写任务时提交一个；缓冲积压过多时关闭连接
+	 */
+	private void send(final StreamConnection conn, String data) {
+		int res = conn.offer(data);
+		if (res == StreamConnection.REJECTED) {
+			remove(conn);
+		} else if (res == StreamConnection.SCHEDULE) {
+			try {
+				writers.execute(new Runnable() {
+					public void run() {
+						if (!conn.flush()) {
+							remove(conn);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// 正在关闭
+				remove(conn);
+			}
+		}
+	}
+
+	private static StringBuilder appendEvent(StringBuilder sb, String json) {
+		return sb.append("event: stock\ndata: ").append(json).append("\n\n");
+	}
+
+	private void remove(StreamConnection conn) {
+		if (!conn.closed) {
+			conn.close();
+		}
+		boolean removed = false;
+		for (String foodId : conn.foodIds) {
+			Set<StreamConnection> set = connections.get(foodId);
+			if (set != null && set.remove(conn)) {
+				removed = true;
+			}
+		}
+		if (removed) {
+			connectionCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 一条数量变化
+	 */
+	private static class StockChange {
+		private final long number;
+		private final long version;
+
+		StockChange(long number, long version) {
+			this.number = number;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * 一个推送连接
+	 */
+	private static class StreamConnection {
+
+		/**
+		 * offer结果：已放入缓冲，已有写任务
+		 */
+		static final int BUFFERED = 0;
+
+		/**
+		 * offer结果：已放入缓冲，需要提交写任务
+		 */
+		static final int SCHEDULE = 1;
+
+		/**
+		 * offer结果：连接已关闭或积压过多
+		 */
+		static final int REJECTED = 2;
+
+		private final AsyncContext ctx;
+		private final String[] foodIds;
+
+		/**
+		 * 是否订阅了全部菜品
+		 */
+		private final boolean all;
+		private volatile boolean closed;
+
+		/**
+		 * 待写数据，由this保护
+		 */
+		private final StringBuilder buffer = new StringBuilder();
+		private boolean scheduled;
+
+		/**
+		 * 当前写出开始的时间，没有正在写出时为0
+		 */
+		private volatile long writeStarted;
+
+		StreamConnection(AsyncContext ctx, String[] foodIds) {
+			this.ctx = ctx;
+			this.foodIds = foodIds;
+			this.all = Arrays.asList(foodIds).contains(ALL);
+		}
+
+		synchronized int offer(String data) {
+			if (closed || buffer.length() + data.length() > MAX_BUFFERED_CHARS) {
+				return REJECTED;
+			}
+			buffer.append(data);
+			if (scheduled) {
+				return BUFFERED;
+			}
+			scheduled = true;
+			return SCHEDULE;
+		}
+
+		/**
+		 * 在写线程中执行，写出缓冲中的全部数据，写出期间到达的数据继续写出
+		 * 
+		 * @return false表示连接已断开
+		 */
+		boolean flush() {
+			while (true) {
+				String data;
+				synchronized (this) {
+					if (closed || buffer.length() == 0) {
+						scheduled = false;
+						return !closed;
+					}
+					data = buffer.toString();
+					buffer.setLength(0);
+				}
+				writeStarted = System.currentTimeMillis();
+				try {
+					PrintWriter writer = ctx.getResponse().getWriter();
+					writer.write(data);
+					writer.flush();
+					if (writer.checkError()) {
+						return false;
+					}
+				} catch (Exception e) {
+					return false;
+				} finally {
+					writeStarted = 0;
+				}
+			}
+		}
+
+		/**
+		 * 不等待正在进行的写出，结束异步请求使阻塞的写出失败返回
+		 */
+		void close() {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				buffer.setLength(0);
+			}
+			try {
+				ctx.complete();
+			} catch (Exception e) {
+				// 连接已断开
+			}
+		}
+	}
+}
@@ -1,50 +1,867 @@
 package com.mvc.dao;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import com.mvc.entity.CartResult;
+import com.mvc.entity.StockGrant;
+import com.mvc.util.JedisCallback;
+import com.mvc.util.ReadProperties;
 import com.mvc.util.RedisUtil;
 
+import redis.clients.jedis.Jedis;
+
 public class FoodDao {
 	/**
-	 * 初始化菜品，并将菜品编号和菜品数量以key-value的方式存放到redis中 去
+	 * 下单返回值:菜品已售完
+	 */
+	public static final long SOLD_OUT = RedisUtil.STOCK_EMPTY;
+
+	/**
+	 * 下单/加菜返回值:菜品不存在(或redis操作失败)
+	 */
+	public static final long NOT_FOUND = RedisUtil.KEY_NOT_EXISTS;
+
+	/**
+	 * 菜品数量变化通知频道，消息格式：数量 版本号 菜品编号；版本号与数量在同一脚本内得到，用于丢弃晚到的旧数量
+	 */
+	public static final String STOCK_CHANNEL = "food:stock";
+
+	/**
+	 * 菜品版本号key的后缀，菜品数量每次变化时与数量在同一脚本内加1
+	 */
+	static final String VERSION_SUFFIX = ":ver";
+
+	/**
+	 * 菜品代数key的后缀，开启租约模式时菜品每次被初始化时与数量在同一脚本内加1，租约记录领取时的代数
+	 */
+	static final String GENERATION_SUFFIX = ":gen";
+
+	/**
+	 * 合法的菜品数量：不带前导0的非负整数
+	 */
+	private static final Pattern FOOD_NUMBER = Pattern.compile("^([1-9]\\d*|0)$");
+
+	/**
+	 * 哈希存储时菜品所在hash的key前缀，后接桶号
+	 */
+	private static final String BUCKET_PREFIX = "food:stock:";
+
+	/**
+	 * 库存租约，未开启租约模式时为null
+	 */
+	private final StockLeaseManager leaseManager;
+
+	/**
+	 * 库存分片数，大于1时一个菜品的数量分散存放在多个子key中，每个分片有自己的版本号，菜品的版本号为各分片版本号之和；
+	 * 分片不带公共的hash tag，配置了多个redis节点时分散到各节点，下单只访问一个分片
+	 */
+	private final int shards;
+
+	/**
+	 * 哈希存储的桶数，大于0时菜品数量和版本号按菜品编号分桶存放在hash中，否则每个菜品一个字符串key
+	 */
+	private final int buckets;
+
+	/**
+	 * 售完菜品缓存，未开启时为null
+	 */
+	private final SoldOutCache soldOutCache;
+
+	/**
+	 * 数量变化通知，未开启时为null
+	 */
+	private final StockEventPublisher stockEvents;
+
+	public FoodDao() {
+		if (Boolean.parseBoolean(ReadProperties.getProperties("stock_events_enabled", "false"))) {
+			stockEvents = new StockEventPublisher();
+		} else {
+			stockEvents = null;
+		}
+		if (Boolean.parseBoolean(ReadProperties.getProperties("sold_out_cache_enabled", "false"))) {
+			soldOutCache = new SoldOutCache(Long.parseLong(ReadProperties.getProperties("sold_out_cache_millis", "60000")));
+		} else {
+			soldOutCache = null;
+		}
+		shards = Math.max(1, Integer.parseInt(ReadProperties.getProperties("stock_shards", "1")));
+		buckets = Math.max(0, Integer.parseInt(ReadProperties.getProperties("stock_hash_buckets", "0")));
+		if (buckets > 0 && shards > 1) {
+			throw new IllegalStateException("哈希存储不支持库存分片");
+		}
+		boolean leaseEnabled = Boolean.parseBoolean(ReadProperties.getProperties("stock_lease_enabled", "false"));
+		if (leaseEnabled && shards > 1) {
+			// 租约已经把下单留在本地，不需要再分片；租约的代数也无法在多个节点的分片间保持一致
+			throw new IllegalStateException("库存租约不支持库存分片");
+		}
+		if (leaseEnabled) {
+			leaseManager = new StockLeaseManager(this,
+					Long.parseLong(ReadProperties.getProperties("stock_lease_millis", "5000")),
+					Long.parseLong(ReadProperties.getProperties("stock_lease_min_block", "1")),
+					Long.parseLong(ReadProperties.getProperties("stock_lease_max_block", "100")));
+		} else {
+			leaseManager = null;
+		}
+	}
+
+	/**
+	 * 初始化菜品，并将菜品编号和菜品数量以key-value的方式存放到redis中 去；
+	 * 开启分片时数量平均分散到各个分片子key中；开启哈希存储时写入菜品所在桶的hash
 	 * 
+	 * @param foodNumber 去掉首尾空白后须为{@link #isValidFoodNumber(String)}，否则不写入
+	 * @return 是否已写入
 	 */
 	public boolean intoRedis(String foodId, String foodNumber) {
 		boolean flag = false;
+		foodNumber = foodNumber == null ? null : foodNumber.trim();
+		if (!isValidFoodNumber(foodNumber)) {
+			return false;
+		}
+		// 写入前冻结租约，写入后的库存不会被领取后丢弃
+		if (leaseManager != null) {
+			leaseManager.freeze(foodId);
+		}
 		try {
-			RedisUtil.set(foodId, foodNumber);
-			flag = true;
+			List<Long> counters;
+			if (buckets > 0) {
+				counters = RedisUtil.hmsetVersioned(bucketKey(foodId, buckets),
+						Collections.singletonMap(foodId, foodNumber), counterKeys(foodId));
+			} else if (shards > 1) {
+				String[] keysvalues = new String[shards * 2];
+				putShardValues(keysvalues, 0, foodId, Long.parseLong(foodNumber));
+				counters = RedisUtil.msetVersioned(keysvalues, counterKeys(foodId));
+			} else {
+				counters = RedisUtil.msetVersioned(new String[] { foodId, foodNumber }, counterKeys(foodId));
+			}
+			if (counters != null) {
+				Map<String, Long> versions = new HashMap<String, Long>(2);
+				Map<String, Long> generations = new HashMap<String, Long>(2);
+				putCounters(Collections.singleton(foodId), counters, versions, generations);
+				if (leaseManager != null) {
+					// 其他节点的租约由广播丢弃，晚到的归还按代数拒绝
+					leaseManager.publishGenerations(generations);
+				}
+				if (soldOutCache != null) {
+					clearSoldOut(foodId, versions.get(foodId));
+				}
+				if (stockEvents != null) {
+					stockEvents.publish(foodId, Long.parseLong(foodNumber), versions.get(foodId));
+				}
+				flag = true;
+			}
 
 		} catch (Exception e) {
 			System.out.println("存放失败！");
+		} finally {
+			if (leaseManager != null) {
+				leaseManager.unfreeze(foodId);
+			}
 		}
 		return flag;
 	}
-	 
+
 	/**
-	 * 当点击下单时，修改 redis中 菜品value值
+	 * 批量初始化菜品，所有菜品通过一次mset写入；清除这些菜品在所有节点的售完标记并发布数量变化
+	 * 
+	 * @param foods 菜品编号 -> 菜品数量，数量去掉首尾空白后写入
+	 * @return 写入的菜品数
+	 * @throws IllegalArgumentException 有菜品数量不是{@link #isValidFoodNumber(String)}，所有菜品都不写入
+	 * @throws IllegalStateException redis写入失败
 	 */
-	public  void editFoodNumber(String foodId){
-	   String number = RedisUtil.get(foodId);
-	   String  foodNumber=null;
-		 if(null != number){
-			 if(Integer.parseInt(number)==0){
-				foodNumber=0+""; 
-			 }else{
-				foodNumber= (Integer.parseInt(number)-1)+""; 
-			 }
-			 RedisUtil.set(foodId, foodNumber);
-		 }
-		
+	public int intoRedis(Map<String, String> foods) {
+		foods = trimValues(foods);
+		for (Map.Entry<String, String> entry : foods.entrySet()) {
+			if (!isValidFoodNumber(entry.getValue())) {
+				throw new IllegalArgumentException("菜品" + entry.getKey() + "的数量不合法：" + entry.getValue());
+			}
+		}
+		if (leaseManager != null) {
+			for (String foodId : foods.keySet()) {
+				leaseManager.freeze(foodId);
+			}
+		}
+		Map<String, Long> versions = new HashMap<String, Long>(foods.size() * 2);
+		Map<String, Long> generations = new HashMap<String, Long>(foods.size() * 2);
+		try {
+			if (buckets > 0) {
+				intoBuckets(foods, versions, generations);
+			} else {
+				intoKeys(foods, versions, generations);
+			}
+			if (leaseManager != null) {
+				leaseManager.publishGenerations(generations);
+			}
+		} finally {
+			if (leaseManager != null) {
+				for (String foodId : foods.keySet()) {
+					leaseManager.unfreeze(foodId);
+				}
+			}
+		}
+		if (soldOutCache != null) {
+			soldOutCache.clear(versions);
+		}
+		if (stockEvents != null) {
+			Map<String, Long> foodNumbers = new LinkedHashMap<String, Long>();
+			for (Map.Entry<String, String> entry : foods.entrySet()) {
+				foodNumbers.put(entry.getKey(), Long.parseLong(entry.getValue()));
+			}
+			stockEvents.publishAll(foodNumbers, versions);
+		}
+		return foods.size();
 	}
+
+	/**
+	 * 菜品数量是否合法，初始化接口、批量导入和写入redis前都按它校验
+	 */
+	public static boolean isValidFoodNumber(String foodNumber) {
+		return foodNumber != null && FOOD_NUMBER.matcher(foodNumber).matches();
+	}
+
+	private static Map<String, String> trimValues(Map<String, String> foods) {
+		Map<String, String> trimmed = new LinkedHashMap<String, String>(foods.size() * 2);
+		for (Map.Entry<String, String> entry : foods.entrySet()) {
+			trimmed.put(entry.getKey(), entry.getValue() == null ? null : entry.getValue().trim());
+		}
+		return trimmed;
+	}
+
+	/**
+	 * 写入脚本按counterKeys的顺序返回加1后的计数器，按菜品拆分：租约模式下每个菜品依次为版本号和代数，
+	 * 分片模式下为各分片的版本号，相加后为菜品的版本号
+	 */
+	private void putCounters(Collection<String> foodIds, List<Long> counters, Map<String, Long> versions,
+			Map<String, Long> generations) {
+		int i = 0;
+		for (String foodId : foodIds) {
+			long version = 0;
+			for (int j = 0; j < shards; j++) {
+				version += counters.get(i++);
+			}
+			versions.put(foodId, version);
+			if (leaseManager != null) {
+				generations.put(foodId, counters.get(i++));
+			}
+		}
+	}
+
+	private void intoKeys(Map<String, String> foods, Map<String, Long> versions, Map<String, Long> generations) {
+		String[] keysvalues = new String[foods.size() * shards * 2];
+		List<String> versionKeys = new ArrayList<String>(foods.size() * 2);
+		int pos = 0;
+		for (Map.Entry<String, String> entry : foods.entrySet()) {
+			Collections.addAll(versionKeys, counterKeys(entry.getKey()));
+			if (shards > 1) {
+				putShardValues(keysvalues, pos, entry.getKey(), Long.parseLong(entry.getValue()));
+				pos += shards * 2;
+			} else {
+				keysvalues[pos++] = entry.getKey();
+				keysvalues[pos++] = entry.getValue();
+			}
+		}
+		List<Long> counters = RedisUtil.msetVersioned(keysvalues, versionKeys.toArray(new String[versionKeys.size()]));
+		if (counters == null) {
+			throw new IllegalStateException("批量存放失败");
+		}
+		putCounters(foods.keySet(), counters, versions, generations);
+	}
+
+	/**
+	 * 按桶分组，每个桶一次脚本调用，所有桶共用一个连接；配置了多个redis节点时每个节点一个连接
+	 */
+	private void intoBuckets(Map<String, String> foods, final Map<String, Long> versions,
+			final Map<String, Long> generations) {
+		final Map<String, Map<String, String>> byBucket = new HashMap<String, Map<String, String>>();
+		for (Map.Entry<String, String> entry : foods.entrySet()) {
+			String bucket = bucketKey(entry.getKey(), buckets);
+			Map<String, String> hash = byBucket.get(bucket);
+			if (hash == null) {
+				hash = new HashMap<String, String>();
+				byBucket.put(bucket, hash);
+			}
+			hash.put(entry.getKey(), entry.getValue());
+		}
+		Boolean ok = RedisUtil.execute(new JedisCallback<Boolean>() {
+			public Boolean doInRedis(Jedis jedis) {
+				for (Map.Entry<String, Map<String, String>> entry : byBucket.entrySet()) {
+					Map<String, String> hash = entry.getValue();
+					List<String> versionFields = new ArrayList<String>(hash.size() * 2);
+					for (String foodId : hash.keySet()) {
+						Collections.addAll(versionFields, counterKeys(foodId));
+					}
+					List<Long> counters = RedisUtil.hmsetVersioned(entry.getKey(), hash,
+							versionFields.toArray(new String[versionFields.size()]));
+					if (counters == null) {
+						return false;
+					}
+					putCounters(hash.keySet(), counters, versions, generations);
+				}
+				return true;
+			}
+		});
+		if (!Boolean.TRUE.equals(ok)) {
+			throw new IllegalStateException("批量存放失败");
+		}
+	}
+
+	/**
+	 * 当点击下单时，在redis中原子地将菜品数量减1（数量为0时不再扣减）；
+	 * 开启租约模式时优先从本节点的租约中扣减；开启分片时只扣减一个分片；已知售完的菜品直接在内存中返回
+	 * 
+	 * @return 扣减后的剩余数量（分片模式下为该分片的剩余数量）；已售完返回{@link #SOLD_OUT}；菜品不存在返回{@link #NOT_FOUND}
+	 */
+	public long editFoodNumber(final String foodId) {
+		if (soldOutCache != null && soldOutCache.isSoldOut(foodId)) {
+			return SOLD_OUT;
+		}
+		if (leaseManager != null || shards > 1) {
+			// 租约模式下大多在本地扣减，分片模式下扣减的分片可能位于任一节点，都在需要时才借出连接
+			return sell(foodId);
+		}
+		// 扣减及随后的售完广播、数量通知共用菜品数量所在节点的一个连接
+		Long number = RedisUtil.execute(routingKey(foodId), new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return sell(foodId);
+			}
+		});
+		return number == null ? NOT_FOUND : number;
+	}
+
+	private long sell(String foodId) {
+		long number;
+		long version = 0;
+		if (leaseManager != null) {
+			number = leaseManager.sell(foodId);
+		} else {
+			List<Long> res;
+			if (buckets > 0) {
+				res = RedisUtil.hdecrIfPositiveWithVersion(bucketKey(foodId, buckets), foodId, versionKey(foodId));
+			} else if (shards > 1) {
+				res = editShardedFoodNumber(foodId);
+			} else {
+				res = RedisUtil.decrIfPositiveWithVersion(foodId, versionKey(foodId));
+			}
+			number = res == null ? NOT_FOUND : res.get(0);
+			version = res == null ? 0 : res.get(1);
+		}
+		if (soldOutCache != null && (number == 0 || number == SOLD_OUT)) {
+			markSoldOut(foodId);
+		}
+		// 租约模式下返回的是本节点租约余量，分片模式下是一个分片的数量，都不是总数，不发布
+		if (stockEvents != null && leaseManager == null && shards == 1 && number >= 0) {
+			stockEvents.publish(foodId, number, version);
+		}
+		return number;
+	}
+
 	/**
 	 * 当点击增加按钮时调用此方法来增加redis里菜品数量
 	 * @param foodId
+	 * @return 增加后的数量；菜品不存在返回{@link #NOT_FOUND}
+	 */
+	public long saveFoodNumber(String foodId) {
+		return addFoodNumber(foodId, 1);
+	}
+
+	/**
+	 * 一次性增加count份菜品数量
+	 * 
+	 * @return 增加后的数量；菜品不存在返回{@link #NOT_FOUND}
+	 */
+	public long addFoodNumber(final String foodId, final long count) {
+		if (shards > 1) {
+			// 各分片可能位于不同节点
+			return restock(foodId, count);
+		}
+		Long number = RedisUtil.execute(routingKey(foodId), new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return restock(foodId, count);
+			}
+		});
+		return number == null ? NOT_FOUND : number;
+	}
+
+	private long restock(String foodId, long count) {
+		List<Long> res = incrFoodNumber(foodId, count);
+		long number = res == null ? NOT_FOUND : res.get(0);
+		if (soldOutCache != null && number > 0) {
+			// 分片模式下返回的是一个分片的版本号，重新读取各分片版本号之和
+			if (shards > 1) {
+				clearSoldOut(foodId);
+			} else {
+				clearSoldOut(foodId, res.get(1));
+			}
+		}
+		// 租约模式下redis中只是未被领取的部分，分片模式下各分片不是同一时刻读取的，都不发布
+		if (stockEvents != null && leaseManager == null && shards == 1 && number >= 0) {
+			stockEvents.publish(foodId, number, res.get(1));
+		}
+		return number;
+	}
+
+	/**
+	 * 一次性原子地扣减最多count份菜品数量，用于合并多个订单；不经过本地租约
+	 * 
+	 * @return 实际扣到的数量及剩余数量；菜品不存在时扣到的数量为{@link #NOT_FOUND}
+	 */
+	public StockGrant takeFoodNumber(final String foodId, final long count) {
+		if (soldOutCache != null && soldOutCache.isSoldOut(foodId)) {
+			return new StockGrant(0, 0);
+		}
+		if (shards > 1) {
+			return take(foodId, count);
+		}
+		StockGrant grant = RedisUtil.execute(routingKey(foodId), new JedisCallback<StockGrant>() {
+			public StockGrant doInRedis(Jedis jedis) {
+				return take(foodId, count);
+			}
+		});
+		return grant == null ? new StockGrant(NOT_FOUND, 0) : grant;
+	}
+
+	private StockGrant take(String foodId, long count) {
+		StockGrant grant = takeStock(foodId, count);
+		if (soldOutCache != null && grant.getGranted() >= 0 && grant.getRemaining() == 0) {
+			markSoldOut(foodId);
+		}
+		// 租约模式和分片模式下剩余数量不是总数，不发布
+		if (stockEvents != null && leaseManager == null && shards == 1 && grant.getGranted() > 0) {
+			stockEvents.publish(foodId, grant.getRemaining(), grant.getVersion());
+		}
+		return grant;
+	}
+
+	/**
+	 * 购物车下单：在一次redis脚本调用中检查并扣减所有菜品，任一菜品不存在或数量不足时整单不扣减。
+	 * 不经过本地租约；分片模式下按各分片之和判断是否足够，并在同一脚本内依次扣减各分片
+	 * 
+	 * @param foodCounts 菜品编号 -> 数量
+	 * @throws UnsupportedOperationException 配置了多个redis节点且菜品（分片模式下各分片）不在同一节点上
+	 */
+	public CartResult orderCart(final Map<String, Long> foodCounts) {
+		Map<String, Long> foodNumbers = new LinkedHashMap<String, Long>();
+		if (soldOutCache != null) {
+			for (String foodId : foodCounts.keySet()) {
+				if (soldOutCache.isSoldOut(foodId)) {
+					foodNumbers.put(foodId, 0L);
+				}
+			}
+			if (!foodNumbers.isEmpty()) {
+				return new CartResult(false, foodNumbers);
+			}
+		}
+		// 多节点时菜品分布在不同节点上无法原子扣减，由RedisUtil抛出UnsupportedOperationException
+		String first = foodCounts.isEmpty() ? null : routingKey(foodCounts.keySet().iterator().next());
+		CartResult result = RedisUtil.execute(first, new JedisCallback<CartResult>() {
+			public CartResult doInRedis(Jedis jedis) {
+				return cart(foodCounts);
+			}
+		});
+		if (result == null) {
+			for (String foodId : foodCounts.keySet()) {
+				foodNumbers.put(foodId, NOT_FOUND);
+			}
+			return new CartResult(false, foodNumbers);
+		}
+		return result;
+	}
+
+	private CartResult cart(Map<String, Long> foodCounts) {
+		Map<String, Long> foodNumbers = new LinkedHashMap<String, Long>();
+		List<Long> res;
+		if (buckets > 0) {
+			int n = foodCounts.size();
+			String[] keys = new String[n];
+			String[] fields = new String[n];
+			long[] counts = new long[n];
+			String[] versionFields = new String[n];
+			int i = 0;
+			for (Map.Entry<String, Long> entry : foodCounts.entrySet()) {
+				keys[i] = bucketKey(entry.getKey(), buckets);
+				fields[i] = entry.getKey();
+				counts[i] = entry.getValue();
+				versionFields[i++] = versionKey(entry.getKey());
+			}
+			res = RedisUtil.hdecrAllIfEnough(keys, fields, counts, versionFields);
+		} else if (shards > 1) {
+			int n = foodCounts.size();
+			String[] keys = new String[n * shards];
+			long[] counts = new long[n];
+			String[] versionKeys = new String[n * shards];
+			int i = 0;
+			for (Map.Entry<String, Long> entry : foodCounts.entrySet()) {
+				int start = ThreadLocalRandom.current().nextInt(shards);
+				for (int j = 0; j < shards; j++) {
+					keys[i * shards + j] = shardKey(entry.getKey(), (start + j) % shards);
+					versionKeys[i * shards + j] = versionKey(keys[i * shards + j]);
+				}
+				counts[i++] = entry.getValue();
+			}
+			res = RedisUtil.decrAllSumsIfEnough(keys, shards, counts, versionKeys);
+		} else {
+			List<String> versionKeys = new ArrayList<String>(foodCounts.size());
+			for (String foodId : foodCounts.keySet()) {
+				versionKeys.add(versionKey(foodId));
+			}
+			res = RedisUtil.decrAllIfEnough(foodCounts, versionKeys);
+		}
+		int i = 1;
+		for (String foodId : foodCounts.keySet()) {
+			long number = res == null ? NOT_FOUND : res.get(i++);
+			foodNumbers.put(foodId, number);
+		}
+		boolean success = res != null && res.get(0) == 1L;
+		if (soldOutCache != null) {
+			for (Map.Entry<String, Long> entry : foodNumbers.entrySet()) {
+				if (entry.getValue() == 0) {
+					markSoldOut(entry.getKey());
+				}
+			}
+		}
+		// 租约模式下redis中的数量不是总数，分片模式下没有菜品的版本号，都不发布
+		if (stockEvents != null && leaseManager == null && shards == 1 && success) {
+			// 扣减成功时各菜品的版本号依次附在数量之后
+			int n = foodNumbers.size();
+			int j = 1;
+			for (Map.Entry<String, Long> entry : foodNumbers.entrySet()) {
+				stockEvents.publish(entry.getKey(), entry.getValue(), res.get(n + j++));
+			}
+		}
+		return new CartResult(success, foodNumbers);
+	}
+
+	/**
+	 * @return [增加后的数量, 版本号]；菜品不存在时数量为{@link #NOT_FOUND}；redis操作失败返回null
+	 */
+	private List<Long> incrFoodNumber(String foodId, long count) {
+		if (buckets > 0) {
+			return RedisUtil.hincrByIfExistsWithVersion(bucketKey(foodId, buckets), foodId, count, versionKey(foodId));
+		}
+		if (shards > 1) {
+			return incrEmptiestShard(foodId, count);
+		}
+		return RedisUtil.incrByIfExistsWithVersion(foodId, count, versionKey(foodId));
+	}
+
+	/**
+	 * 查询菜品剩余数量，开启分片时通过一次mget汇总各分片
+	 * 
+	 * @return 剩余数量；菜品不存在返回{@link #NOT_FOUND}
+	 */
+	public long getFoodNumber(String foodId) {
+		if (buckets > 0) {
+			String number = RedisUtil.hget(bucketKey(foodId, buckets), foodId);
+			return number == null ? NOT_FOUND : Long.parseLong(number);
+		}
+		if (shards > 1) {
+			return sum(RedisUtil.mget(shardKeys(foodId)));
+		}
+		String number = RedisUtil.get(foodId);
+		return number == null ? NOT_FOUND : Long.parseLong(number);
+	}
+
+	/**
+	 * 查询菜品数量的版本号，数量每次变化时加1；开启近端缓存时版本号未变化的查询不访问redis
+	 * 
+	 * @return 版本号；菜品从未写入过时返回null
+	 */
+	public String getStockVersion(String foodId) {
+		if (buckets > 0) {
+			return RedisUtil.hget(bucketKey(foodId, buckets), versionKey(foodId));
+		}
+		if (shards > 1) {
+			long version = sum(RedisUtil.mget(shardVersionKeys(foodId)));
+			return version == NOT_FOUND ? null : String.valueOf(version);
+		}
+		return RedisUtil.get(versionKey(foodId));
+	}
+
+	/**
+	 * 节点关闭时归还租约中未卖出的库存
+	 */
+	public void destroy() {
+		if (leaseManager != null) {
+			leaseManager.shutdown();
+		}
+	}
+
+	/**
+	 * 从redis中最多扣减count份库存；开启租约模式时同时读取菜品的代数
+	 */
+	StockGrant takeStock(String foodId, long count) {
+		String generationKey = leaseManager != null ? generationKey(foodId) : null;
+		List<Long> res;
+		if (buckets > 0) {
+			res = RedisUtil.hdecrByUpTo(bucketKey(foodId, buckets), foodId, count, versionKey(foodId), generationKey);
+		} else if (shards > 1) {
+			return takeFromShards(foodId, count);
+		} else {
+			res = RedisUtil.decrByUpTo(foodId, count, versionKey(foodId), generationKey);
+		}
+		if (res == null) {
+			return new StockGrant(NOT_FOUND, 0);
+		}
+		return new StockGrant(res.get(0), res.get(1), res.size() > 3 ? res.get(3) : 0, res.get(2));
+	}
+
+	/**
+	 * 把未卖出的库存归还redis；菜品已被删除，或领取后被重新初始化（代数不同）时丢弃
+	 * 
+	 * @param generation 领取时菜品的代数
+	 * @return 已归还或已丢弃返回true；redis异常返回false，库存仍在调用方手中
+	 */
+	boolean returnStock(final String foodId, final long count, final long generation) {
+		List<Long> res;
+		if (buckets > 0) {
+			res = RedisUtil.hincrByIfExistsWithVersion(bucketKey(foodId, buckets), foodId, count, versionKey(foodId),
+					generationKey(foodId), generation);
+		} else {
+			res = RedisUtil.incrByIfExistsWithVersion(foodId, count, versionKey(foodId), generationKey(foodId),
+					generation);
+		}
+		if (res == null) {
+			return false;
+		}
+		// 归还的库存其他节点可以继续售卖
+		if (soldOutCache != null && res.get(0) > 0) {
+			clearSoldOut(foodId, res.get(1));
+		}
+		return true;
+	}
+
+	/**
+	 * 扣减时看到库存为0后，在一个脚本内重新读取数量和版本号，仍然售完时按该版本号标记；
+	 * 期间补货的清除通知带有更新的版本号，晚到的售完标记不会覆盖补货
+	 */
+	private void markSoldOut(String foodId) {
+		List<Long> res;
+		if (buckets > 0) {
+			res = RedisUtil.hgetWithVersion(bucketKey(foodId, buckets), foodId, versionKey(foodId));
+		} else if (shards > 1) {
+			res = shardsWithVersion(foodId);
+		} else {
+			res = RedisUtil.sumWithVersion(new String[] { foodId }, versionKey(foodId));
+		}
+		if (res != null && res.get(0) == 0) {
+			// 租约模式下其他节点可能还有租约库存，只在本节点标记
+			soldOutCache.markSoldOut(foodId, res.get(1), leaseManager == null);
+		}
+	}
+
+	/**
+	 * 库存写入后按当前版本号清除售完标记，早于该版本号的标记不再生效；只用于分片模式，写入只返回一个分片的版本号
+	 */
+	private void clearSoldOut(String foodId) {
+		String version = getStockVersion(foodId);
+		clearSoldOut(foodId, version == null ? 0 : Long.parseLong(version));
+	}
+
+	/**
+	 * 按写入脚本返回的版本号清除售完标记，早于该版本号的标记不再生效
+	 */
+	private void clearSoldOut(String foodId, long version) {
+		soldOutCache.clear(foodId, version);
+	}
+
+	/**
+	 * 分片模式下单：从随机分片开始，用单key脚本扣减一个分片，该分片已售完时才依次尝试其余分片；
+	 * 各分片位于各自的节点，同一菜品的下单分散到各节点
+	 * 
+	 * @return [扣减的分片的剩余数量，所有分片都已售完为{@link #SOLD_OUT}，菜品不存在为{@link #NOT_FOUND}, 该分片的版本号]；
+	 *         有分片操作失败且其余分片都没有库存时返回null
+	 */
+	private List<Long> editShardedFoodNumber(String foodId) {
+		int start = ThreadLocalRandom.current().nextInt(shards);
+		boolean failed = false;
+		boolean found = false;
+		for (int i = 0; i < shards; i++) {
+			String key = shardKey(foodId, (start + i) % shards);
+			List<Long> res = RedisUtil.decrIfPositiveWithVersion(key, versionKey(key));
+			if (res == null) {
+				failed = true;
+			} else if (res.get(0) >= 0) {
+				return res;
+			} else if (res.get(0) == SOLD_OUT) {
+				found = true;
+			}
+		}
+		if (failed) {
+			return null;
+		}
+		return Arrays.asList(found ? SOLD_OUT : NOT_FOUND, 0L);
+	}
+
+	/**
+	 * 分片模式加菜：一次mget读出各分片，加到数量最少的分片上；读取与加菜之间其他分片可能变化，返回的合计是近似值
+	 * 
+	 * @return [加菜后各分片之和, 该分片的版本号]；菜品不存在时数量为{@link #NOT_FOUND}；redis操作失败返回null
+	 */
+	private List<Long> incrEmptiestShard(String foodId, long count) {
+		List<String> values = RedisUtil.mget(shardKeys(foodId));
+		if (values == null) {
+			return null;
+		}
+		int emptiest = -1;
+		long min = 0;
+		long total = 0;
+		for (int i = 0; i < values.size(); i++) {
+			if (values.get(i) != null) {
+				long number = Long.parseLong(values.get(i));
+				total += number;
+				if (emptiest < 0 || number < min) {
+					emptiest = i;
+					min = number;
+				}
+			}
+		}
+		if (emptiest < 0) {
+			return Arrays.asList(NOT_FOUND, 0L);
+		}
+		String key = shardKey(foodId, emptiest);
+		List<Long> res = RedisUtil.incrByIfExistsWithVersion(key, count, versionKey(key));
+		if (res == null || res.get(0) == NOT_FOUND) {
+			return res;
+		}
+		return Arrays.asList(total - min + res.get(0), res.get(1));
+	}
+
+	/**
+	 * 分片模式下从随机分片开始依次扣减，扣够count或所有分片都已扣完为止
+	 * 
+	 * @return 扣到的数量和最后扣减的分片的剩余数量；没扣够时各分片都已为0
+	 */
+	private StockGrant takeFromShards(String foodId, long count) {
+		int start = ThreadLocalRandom.current().nextInt(shards);
+		long granted = 0;
+		long remaining = 0;
+		boolean found = false;
+		for (int i = 0; i < shards && granted < count; i++) {
+			String key = shardKey(foodId, (start + i) % shards);
+			List<Long> res = RedisUtil.decrByUpTo(key, count - granted, versionKey(key));
+			if (res == null || res.get(0) == NOT_FOUND) {
+				continue;
+			}
+			found = true;
+			granted += res.get(0);
+			remaining = res.get(1);
+		}
+		return found ? new StockGrant(granted, remaining) : new StockGrant(NOT_FOUND, 0);
+	}
+
+	/**
+	 * 一次mget读取各分片及其版本号（按节点拆分），分别求和
+	 * 
+	 * @return [各分片之和，分片都不存在时为{@link #NOT_FOUND}, 各分片版本号之和]；读取失败返回null
+	 */
+	private List<Long> shardsWithVersion(String foodId) {
+		String[] keys = new String[shards * 2];
+		for (int i = 0; i < shards; i++) {
+			keys[i] = shardKey(foodId, i);
+			keys[shards + i] = versionKey(keys[i]);
+		}
+		List<String> values = RedisUtil.mget(keys);
+		if (values == null) {
+			return null;
+		}
+		long version = sum(values.subList(shards, shards * 2));
+		return Arrays.asList(sum(values.subList(0, shards)), version == NOT_FOUND ? 0 : version);
+	}
+
+	/**
+	 * 把菜品数量平均分到各分片，按key、value依次写入keysvalues
+	 */
+	private void putShardValues(String[] keysvalues, int pos, String foodId, long number) {
+		for (int i = 0; i < shards; i++) {
+			keysvalues[pos + i * 2] = shardKey(foodId, i);
+			keysvalues[pos + i * 2 + 1] = String.valueOf(number / shards + (i < number % shards ? 1 : 0));
+		}
+	}
+
+	static String versionKey(String foodId) {
+		return counterKey(foodId, VERSION_SUFFIX);
+	}
+
+	static String generationKey(String foodId) {
+		return counterKey(foodId, GENERATION_SUFFIX);
+	}
+
+	/**
+	 * 配置了多个redis节点时以菜品编号（分片模式下为分片子key）作为hash tag，使版本号、代数与数量位于同一节点，可以在一个脚本内更新
+	 */
+	private static String counterKey(String foodId, String suffix) {
+		return (RedisUtil.isSharded() ? "{" + foodId + "}" : foodId) + suffix;
+	}
+
+	/**
+	 * 初始化菜品时需要加1的key：版本号，开启租约模式时还有代数；分片模式下为各分片的版本号
+	 */
+	private String[] counterKeys(String foodId) {
+		if (shards > 1) {
+			return shardVersionKeys(foodId);
+		}
+		return leaseManager != null ? new String[] { versionKey(foodId), generationKey(foodId) }
+				: new String[] { versionKey(foodId) };
+	}
+
+	/**
+	 * 分片子key不带hash tag，配置了多个redis节点时各分片按自己的key分布到不同节点
+	 */
+	static String shardKey(String foodId, int shard) {
+		return foodId + ":s" + shard;
+	}
+
+	/**
+	 * 哈希存储时菜品所在的hash
+	 */
+	static String bucketKey(String foodId, int buckets) {
+		return BUCKET_PREFIX + (foodId.hashCode() & Integer.MAX_VALUE) % buckets;
+	}
+
+	/**
+	 * 菜品数量所在的key，配置了多个redis节点时按它选择节点：哈希存储时为菜品所在的hash，分片模式下为第一个分片，否则为菜品编号
+	 * （版本号以菜品编号或分片子key作为hash tag，与数量位于同一节点）
+	 */
+	private String routingKey(String foodId) {
+		return buckets > 0 ? bucketKey(foodId, buckets) : shards > 1 ? shardKey(foodId, 0) : foodId;
+	}
+
+	private String[] shardKeys(String foodId) {
+		String[] keys = new String[shards];
+		for (int i = 0; i < shards; i++) {
+			keys[i] = shardKey(foodId, i);
+		}
+		return keys;
+	}
+
+	private String[] shardVersionKeys(String foodId) {
+		String[] keys = new String[shards];
+		for (int i = 0; i < shards; i++) {
+			keys[i] = versionKey(shardKey(foodId, i));
+		}
+		return keys;
+	}
+
+	/**
+	 * 各分片数量之和，所有分片都不存在时返回{@link #NOT_FOUND}
 	 */
-	public void saveFoodNumber(String foodId){
-		String  number=RedisUtil.get(foodId);
-		if(null != number){
-			String foodNumber=(Integer.parseInt(number)+1)+"";
-			RedisUtil.set(foodId, foodNumber);
+	private long sum(List<String> values) {
+		long total = 0;
+		boolean found = false;
+		for (int i = 0; values != null && i < values.size(); i++) {
+			if (values.get(i) != null) {
+				total += Long.parseLong(values.get(i));
+				found = true;
+			}
 		}
+		return found ? total : NOT_FOUND;
 	}
 	
 }
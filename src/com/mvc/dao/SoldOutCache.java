@@ -0,0 +1,229 @@
+package com.mvc.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mvc.util.LongLongMap;
+import com.mvc.util.PipelineCallback;
+import com.mvc.util.RedisPipeline;
+import com.mvc.util.RedisSubscriber;
+import com.mvc.util.RedisUtil;
+
+/**
+ * 本节点的售完菜品缓存，已售完的菜品下单时直接在内存中返回，不再访问redis。
+ * <p>
+ * 售完/补货通过redis频道通知其他节点；标记带有效期，消息丢失时最多在有效期内误判。
+ * </p>
+ * <p>
+ * 标记和清除都带有菜品数量的版本号：清除时记录版本号，早于它的标记（扣减后补货前确认的售完，可能晚于补货通知到达）被忽略。
+ * </p>
+ * <p>
+ * 数字菜品编号的标记存放在{@link LongLongMap}中，不为每个菜品创建字符串key和条目对象；其他编号存放在ConcurrentHashMap中。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+class SoldOutCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(SoldOutCache.class);
+
+	/**
+	 * 售完通知频道，消息格式：+版本号 菜品编号 表示售完，-版本号 菜品编号 表示已补货
+	 */
+	static final String CHANNEL = "food:soldout";
+
+	/**
+	 * LongLongMap中表示未标记
+	 */
+	private static final long NOT_MARKED = Long.MIN_VALUE;
+
+	private final long ttlMillis;
+
+	/**
+	 * 数字菜品编号 -> 标记售完的时间
+	 */
+	private final LongLongMap numericSoldOut = new LongLongMap(1024, NOT_MARKED);
+
+	/**
+	 * 非数字菜品编号 -> 标记售完的时间
+	 */
+	private final ConcurrentHashMap<String, Long> soldOut = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * 数字菜品编号 -> 最近一次清除时的版本号
+	 */
+	private final LongLongMap numericCleared = new LongLongMap(1024, NOT_MARKED);
+
+	/**
+	 * 非数字菜品编号 -> 最近一次清除时的版本号
+	 */
+	private final ConcurrentHashMap<String, Long> cleared = new ConcurrentHashMap<String, Long>();
+
+	SoldOutCache(long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+		RedisSubscriber.addListener(CHANNEL, new RedisSubscriber.MessageListener() {
+			public void onMessage(String channel, String message) {
+				int pos = message.indexOf(' ');
+				if (pos < 2) {
+					return;
+				}
+				long version;
+				try {
+					version = Long.parseLong(message.substring(1, pos));
+				} catch (NumberFormatException e) {
+					logger.error("无法解析售完通知：" + message);
+					return;
+				}
+				String foodId = message.substring(pos + 1);
+				if (message.charAt(0) == '+') {
+					mark(foodId, version, System.currentTimeMillis());
+				} else {
+					unmark(foodId, version);
+				}
+			}
+		});
+	}
+
+	boolean isSoldOut(String foodId) {
+		long id = numericId(foodId);
+		long markedAt;
+		if (id >= 0) {
+			markedAt = numericSoldOut.get(id);
+		} else {
+			Long value = soldOut.get(foodId);
+			markedAt = value == null ? NOT_MARKED : value;
+		}
+		if (markedAt == NOT_MARKED) {
+			return false;
+		}
+		if (System.currentTimeMillis() - markedAt > ttlMillis) {
+			removeMark(id, foodId, markedAt);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 标记售完；菜品已按更新的版本号清除过时忽略
+	 * 
+	 * @param version 确认售完时菜品数量的版本号
+	 * @param broadcast 是否通知其他节点
+	 */
+	void markSoldOut(String foodId, long version, boolean broadcast) {
+		if (mark(foodId, version, System.currentTimeMillis()) && broadcast) {
+			publish("+" + version + " " + foodId);
+		}
+	}
+
+	/**
+	 * 清除售完标记并通知其他节点
+	 * 
+	 * @param version 补货后菜品数量的版本号
+	 */
+	void clear(String foodId, long version) {
+		unmark(foodId, version);
+		publish("-" + version + " " + foodId);
+	}
+
+	/**
+	 * 清除一批菜品的售完标记，在一个管道中通知其他节点，用于批量初始化
+	 * 
+	 * @param foodVersions 菜品编号 -> 写入后菜品数量的版本号
+	 */
+	void clear(final Map<String, Long> foodVersions) {
+		for (Map.Entry<String, Long> entry : foodVersions.entrySet()) {
+			unmark(entry.getKey(), entry.getValue());
+		}
+		try {
+			if (!RedisUtil.pipelined(new PipelineCallback() {
+				public void doInPipeline(RedisPipeline pipeline) {
+					for (Map.Entry<String, Long> entry : foodVersions.entrySet()) {
+						pipeline.publish(CHANNEL, "-" + entry.getValue() + " " + entry.getKey());
+					}
+				}
+			})) {
+				logger.error("批量发送售完通知失败");
+			}
+		} catch (Exception e) {
+			logger.error("批量发送售完通知失败：" + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return 是否新增了标记；之前已有标记或版本号早于最近一次清除时返回false
+	 */
+	private boolean mark(String foodId, long version, long now) {
+		long id = numericId(foodId);
+		if (version < clearedVersion(id, foodId)) {
+			return false;
+		}
+		boolean added = id >= 0 ? numericSoldOut.put(id, now) == NOT_MARKED : soldOut.put(foodId, now) == null;
+		// 清除先记录版本号再删除标记，写入标记后再检查一次，不会留下早于清除的标记
+		if (version < clearedVersion(id, foodId)) {
+			removeMark(id, foodId, now);
+			return false;
+		}
+		return added;
+	}
+
+	private void unmark(String foodId, long version) {
+		long id = numericId(foodId);
+		if (id >= 0) {
+			numericCleared.putIfGreater(id, version);
+			numericSoldOut.remove(id);
+		} else {
+			Long old = cleared.putIfAbsent(foodId, version);
+			while (old != null && old < version && !cleared.replace(foodId, old, version)) {
+				old = cleared.get(foodId);
+			}
+			soldOut.remove(foodId);
+		}
+	}
+
+	private long clearedVersion(long id, String foodId) {
+		if (id >= 0) {
+			return numericCleared.get(id);
+		}
+		Long version = cleared.get(foodId);
+		return version == null ? NOT_MARKED : version;
+	}
+
+	private void removeMark(long id, String foodId, long markedAt) {
+		if (id >= 0) {
+			numericSoldOut.remove(id, markedAt);
+		} else {
+			soldOut.remove(foodId, markedAt);
+		}
+	}
+
+	/**
+	 * 不带前导0、不超过18位的十进制菜品编号转换为long，其他编号返回-1，保证同一编号总是进入同一个表
+	 */
+	private static long numericId(String foodId) {
+		int len = foodId.length();
+		if (len == 0 || len > 18 || (len > 1 && foodId.charAt(0) == '0')) {
+			return -1;
+		}
+		long id = 0;
+		for (int i = 0; i < len; i++) {
+			char c = foodId.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			id = id * 10 + (c - '0');
+		}
+		return id;
+	}
+
+	private void publish(String message) {
+		try {
+			RedisUtil.publish(CHANNEL, message);
+		} catch (Exception e) {
+			logger.error("发送售完通知失败：" + e.getMessage());
+		}
+	}
+}
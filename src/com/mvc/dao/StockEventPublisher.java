@@ -0,0 +1,61 @@
+package com.mvc.dao;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mvc.util.PipelineCallback;
+import com.mvc.util.RedisPipeline;
+import com.mvc.util.RedisUtil;
+
+/**
+ * 菜品数量变化通知：下单、加菜、初始化后把最新数量及其版本号发布到redis频道，供各节点推送给客户端；
+ * 各请求线程的发布可能乱序到达，接收方按版本号保留最新的数量
+ * 
+ * @author 23006
+ *
+ */
+class StockEventPublisher {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockEventPublisher.class);
+
+	/**
+	 * @param version 与数量在同一脚本内得到的版本号
+	 */
+	void publish(String foodId, long foodNumber, long version) {
+		try {
+			RedisUtil.publish(FoodDao.STOCK_CHANNEL, message(foodId, foodNumber, version));
+		} catch (Exception e) {
+			logger.error("发布菜品" + foodId + "数量变化失败：" + e.getMessage());
+		}
+	}
+
+	/**
+	 * 在一个管道中发布多个菜品的数量，用于批量初始化
+	 * 
+	 * @param foodNumbers 菜品编号 -> 菜品数量
+	 * @param versions 菜品编号 -> 写入后读取的版本号
+	 */
+	void publishAll(final Map<String, Long> foodNumbers, final Map<String, Long> versions) {
+		try {
+			if (!RedisUtil.pipelined(new PipelineCallback() {
+				public void doInPipeline(RedisPipeline pipeline) {
+					for (Map.Entry<String, Long> entry : foodNumbers.entrySet()) {
+						Long version = versions.get(entry.getKey());
+						pipeline.publish(FoodDao.STOCK_CHANNEL,
+								message(entry.getKey(), entry.getValue(), version == null ? 0 : version));
+					}
+				}
+			})) {
+				logger.error("批量发布" + foodNumbers.size() + "个菜品数量变化失败");
+			}
+		} catch (Exception e) {
+			logger.error("批量发布" + foodNumbers.size() + "个菜品数量变化失败：" + e.getMessage());
+		}
+	}
+
+	private static String message(String foodId, long foodNumber, long version) {
+		return foodNumber + " " + version + " " + foodId;
+	}
+}
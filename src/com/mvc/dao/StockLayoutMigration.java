@@ -0,0 +1,192 @@
+package com.mvc.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mvc.util.ReadProperties;
+import com.mvc.util.RedisUtil;
+import com.mvc.util.ScanCursor;
+
+/**
+ * 把每个菜品一个字符串key的存储迁移为按桶存放的hash（见stock_hash_buckets）。
+ * <p>
+ * 遍历全部key找出菜品：版本号key（分片时为各分片的版本号key）、纯数字的菜品key（不分片时）和数字菜品编号的分片子key（分片时），
+ * 也可以指定菜品编号；每个菜品在一次脚本调用中把数量（分片时为各分片之和）和版本号移入所在桶的hash，并删除原有的key；
+ * 已迁移的菜品没有原有的key，中断后可以重新执行。未迁移的菜品编号（原有的key不存在或迁移失败）在结束时输出。
+ * 迁移期间应停止下单，迁移完成后各节点以哈希存储重启。
+ * </p>
+ * <p>
+ * 用法：java com.mvc.dao.StockLayoutMigration [原分片数] [菜品编号...]，原分片数默认取stock_shards，不指定菜品编号时遍历全部key
+ * </p>
+ * <p>
+ * 配置了多个redis节点时，菜品的原有key与所在桶可能位于不同节点，无法在一次脚本调用中迁移，不支持。
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+public final class StockLayoutMigration {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockLayoutMigration.class);
+
+	/**
+	 * 没有版本号key的菜品只能按编号识别，只迁移数字编号
+	 */
+	private static final Pattern NUMERIC_ID = Pattern.compile("^\\d+$");
+
+	private static final Pattern SHARD_KEY = Pattern.compile("^(\\d+):s\\d+$");
+
+	private final int buckets;
+	private final int shards;
+
+	/**
+	 * @param buckets 目标桶数
+	 * @param shards 原有存储的分片数
+	 */
+	public StockLayoutMigration(int buckets, int shards) {
+		if (buckets <= 0) {
+			throw new IllegalArgumentException("桶数必须大于0");
+		}
+		this.buckets = buckets;
+		this.shards = Math.max(1, shards);
+	}
+
+	/**
+	 * 遍历全部key，迁移找到的所有菜品
+	 * 
+	 * @return 迁移的菜品数
+	 * @throws IllegalStateException 遍历key失败
+	 * @throws UnsupportedOperationException 配置了多个redis节点
+	 */
+	public long migrate() {
+		checkNotSharded();
+		Set<String> seen = new HashSet<String>();
+		List<String> notMigrated = new ArrayList<String>();
+		long migrated = 0;
+		// 迁移中删除的key不影响游标继续遍历；同一菜品有多个key，只迁移一次
+		for (ScanCursor<String> it = RedisUtil.scan("*"); it.hasNext();) {
+			for (String key : it.next()) {
+				String foodId = foodIdOf(key);
+				if (foodId != null && seen.add(foodId) && migrate(foodId, notMigrated)) {
+					migrated++;
+				}
+			}
+		}
+		report(migrated, notMigrated);
+		return migrated;
+	}
+
+	/**
+	 * 迁移指定的菜品
+	 * 
+	 * @return 迁移的菜品数
+	 * @throws UnsupportedOperationException 配置了多个redis节点
+	 */
+	public long migrate(Collection<String> foodIds) {
+		checkNotSharded();
+		List<String> notMigrated = new ArrayList<String>();
+		long migrated = 0;
+		for (String foodId : foodIds) {
+			if (migrate(foodId, notMigrated)) {
+				migrated++;
+			}
+		}
+		report(migrated, notMigrated);
+		return migrated;
+	}
+
+	/**
+	 * @return 是否已迁移；原有的key都不存在或迁移失败时加入notMigrated
+	 */
+	private boolean migrate(String foodId, List<String> notMigrated) {
+		Long number = RedisUtil.moveToHash(sourceKeys(foodId), versionKeys(foodId), FoodDao.bucketKey(foodId, buckets),
+				foodId, FoodDao.versionKey(foodId));
+		if (number == null) {
+			logger.error("迁移菜品" + foodId + "失败");
+		}
+		if (number == null || number == RedisUtil.KEY_NOT_EXISTS) {
+			notMigrated.add(foodId);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return key所属的菜品编号，不是菜品的key返回null
+	 */
+	private String foodIdOf(String key) {
+		if (key.endsWith(FoodDao.VERSION_SUFFIX)) {
+			key = key.substring(0, key.length() - FoodDao.VERSION_SUFFIX.length());
+			if (shards == 1) {
+				return key;
+			}
+			Matcher matcher = SHARD_KEY.matcher(key);
+			return matcher.matches() ? matcher.group(1) : key;
+		}
+		if (shards == 1) {
+			return NUMERIC_ID.matcher(key).matches() ? key : null;
+		}
+		Matcher matcher = SHARD_KEY.matcher(key);
+		return matcher.matches() ? matcher.group(1) : null;
+	}
+
+	private void report(long migrated, List<String> notMigrated) {
+		logger.info("迁移完成，共" + migrated + "个菜品，" + buckets + "个桶");
+		if (!notMigrated.isEmpty()) {
+			logger.error(notMigrated.size() + "个菜品未迁移（原有的key不存在或迁移失败）：" + notMigrated);
+		}
+	}
+
+	private void checkNotSharded() {
+		if (RedisUtil.isSharded()) {
+			throw new UnsupportedOperationException("多个redis节点时不支持迁移存储方式");
+		}
+	}
+
+	private String[] sourceKeys(String foodId) {
+		if (shards == 1) {
+			return new String[] { foodId };
+		}
+		String[] keys = new String[shards];
+		for (int i = 0; i < shards; i++) {
+			keys[i] = FoodDao.shardKey(foodId, i);
+		}
+		return keys;
+	}
+
+	/**
+	 * 分片时各分片有自己的版本号，也包括旧版本按菜品编号存放的版本号
+	 */
+	private String[] versionKeys(String foodId) {
+		if (shards == 1) {
+			return new String[] { FoodDao.versionKey(foodId) };
+		}
+		String[] keys = new String[shards + 1];
+		keys[0] = FoodDao.versionKey(foodId);
+		for (int i = 0; i < shards; i++) {
+			keys[i + 1] = FoodDao.versionKey(FoodDao.shardKey(foodId, i));
+		}
+		return keys;
+	}
+
+	public static void main(String[] args) {
+		int buckets = Integer.parseInt(ReadProperties.getProperties("stock_hash_buckets", "0"));
+		int shards = args.length > 0 ? Integer.parseInt(args[0]) : Integer.parseInt(ReadProperties.getProperties(
+				"stock_shards", "1"));
+		StockLayoutMigration migration = new StockLayoutMigration(buckets, shards);
+		if (args.length > 1) {
+			migration.migrate(Arrays.asList(args).subList(1, args.length));
+		} else {
+			migration.migrate();
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package com.mvc.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mvc.entity.StockGrant;
+import com.mvc.util.PipelineCallback;
+import com.mvc.util.RedisPipeline;
+import com.mvc.util.RedisSubscriber;
+import com.mvc.util.RedisUtil;
+
+/**
+ * 库存租约：本节点一次从redis原子地领取一批库存，在JVM内用AtomicLong售卖，
+ * 租约到期或节点关闭时把未卖完的库存归还redis。
+ * <p>
+ * 每份库存要么在redis中，要么在某个节点的租约里，因此全局不会超卖。
+ * 批量大小根据租约期内的实际售卖速度自适应调整。
+ * </p>
+ * <p>
+ * 菜品被重新初始化时代数加1，租约记录领取时的代数：初始化的节点通过频道通知各节点丢弃更早代数的租约，
+ * 通知到达前已领取的租约在归还时因代数不同被redis拒绝，不会把旧库存加到新库存上。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+class StockLeaseManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockLeaseManager.class);
+
+	/**
+	 * 租约作废通知频道，消息格式：代数 菜品编号，收到后丢弃该菜品更早代数的租约
+	 */
+	static final String CHANNEL = "food:lease";
+
+	private final FoodDao foodDao;
+	private final long leaseMillis;
+	private final long minBlock;
+	private final long maxBlock;
+	private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<String, Lease>();
+	private final ScheduledExecutorService scheduler;
+
+	StockLeaseManager(FoodDao foodDao, long leaseMillis, long minBlock, long maxBlock) {
+		this.foodDao = foodDao;
+		this.leaseMillis = leaseMillis;
+		this.minBlock = minBlock;
+		this.maxBlock = maxBlock;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "stock-lease-expire");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		long period = Math.max(leaseMillis / 2, 100L);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				expireLeases();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+		RedisSubscriber.addListener(CHANNEL, new RedisSubscriber.MessageListener() {
+			public void onMessage(String channel, String message) {
+				int pos = message.indexOf(' ');
+				if (pos <= 0) {
+					return;
+				}
+				try {
+					discard(message.substring(pos + 1), Long.parseLong(message.substring(0, pos)));
+				} catch (NumberFormatException e) {
+					logger.error("无法解析租约作废通知：" + message);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 从本地租约卖出一份，租约用完时再向redis领取一批
+	 * 
+	 * @return 卖出后的剩余数量（本地租约余量加上最近一次领取时redis的余量）；
+	 *         售完返回{@link FoodDao#SOLD_OUT}；菜品不存在返回{@link FoodDao#NOT_FOUND}
+	 */
+	long sell(String foodId) {
+		Lease lease = lease(foodId);
+		while (true) {
+			long left = lease.remaining.get();
+			if (left > 0) {
+				if (lease.remaining.compareAndSet(left, left - 1)) {
+					lease.sold.incrementAndGet();
+					return left - 1 + lease.redisRemaining;
+				}
+				continue;
+			}
+			synchronized (lease) {
+				if (lease.remaining.get() > 0) {
+					continue;
+				}
+				// 菜品数量正在重新初始化，等写入完成后再领取新库存
+				while (lease.frozen > 0) {
+					try {
+						lease.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return FoodDao.NOT_FOUND;
+					}
+				}
+				if (lease.remaining.get() > 0) {
+					continue;
+				}
+				long now = System.currentTimeMillis();
+				// 租约期未过半就卖完了，说明批量太小
+				if (lease.grantedAt > 0 && now - lease.grantedAt < leaseMillis / 2) {
+					lease.blockSize = Math.min(maxBlock, lease.blockSize * 2);
+				}
+				StockGrant grant = foodDao.takeStock(foodId, lease.blockSize);
+				if (grant.getGranted() == FoodDao.NOT_FOUND) {
+					return FoodDao.NOT_FOUND;
+				}
+				if (grant.getGranted() <= 0) {
+					return FoodDao.SOLD_OUT;
+				}
+				lease.redisRemaining = grant.getRemaining();
+				lease.generation = grant.getGeneration();
+				lease.grantedAt = now;
+				lease.sold.set(0);
+				lease.remaining.addAndGet(grant.getGranted());
+			}
+		}
+	}
+
+	/**
+	 * 菜品数量被重新初始化前调用：丢弃本地租约，不归还redis，并在{@link #unfreeze(String)}之前不再领取库存，
+	 * 保证丢弃的只是写入前领取的旧库存，写入后的库存不会被领取后丢弃
+	 */
+	void freeze(String foodId) {
+		Lease lease = lease(foodId);
+		synchronized (lease) {
+			lease.frozen++;
+			lease.remaining.set(0);
+			lease.grantedAt = 0;
+		}
+	}
+
+	/**
+	 * 重新初始化写入后调用，通知所有节点丢弃早于写入后代数的租约
+	 * 
+	 * @param generations 菜品编号 -> 写入后的代数
+	 */
+	void publishGenerations(final Map<String, Long> generations) {
+		try {
+			if (!RedisUtil.pipelined(new PipelineCallback() {
+				public void doInPipeline(RedisPipeline pipeline) {
+					for (Map.Entry<String, Long> entry : generations.entrySet()) {
+						pipeline.publish(CHANNEL, entry.getValue() + " " + entry.getKey());
+					}
+				}
+			})) {
+				logger.error("发送" + generations.size() + "个菜品的租约作废通知失败");
+			}
+		} catch (Exception e) {
+			logger.error("发送" + generations.size() + "个菜品的租约作废通知失败：" + e.getMessage());
+		}
+	}
+
+	/**
+	 * 丢弃早于generation的本地租约，不归还redis
+	 */
+	private void discard(String foodId, long generation) {
+		Lease lease = leases.get(foodId);
+		if (lease != null) {
+			synchronized (lease) {
+				if (lease.generation < generation) {
+					lease.remaining.set(0);
+					lease.grantedAt = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 重新初始化写入完成（或失败）后调用，与{@link #freeze(String)}成对
+	 */
+	void unfreeze(String foodId) {
+		Lease lease = leases.get(foodId);
+		if (lease != null) {
+			synchronized (lease) {
+				if (--lease.frozen == 0) {
+					lease.notifyAll();
+				}
+			}
+		}
+	}
+
+	private Lease lease(String foodId) {
+		Lease lease = leases.get(foodId);
+		if (lease == null) {
+			Lease created = new Lease(minBlock);
+			lease = leases.putIfAbsent(foodId, created);
+			if (lease == null) {
+				lease = created;
+			}
+		}
+		return lease;
+	}
+
+	/**
+	 * 归还所有租约并停止到期检查，节点关闭时调用
+	 */
+	void shutdown() {
+		scheduler.shutdownNow();
+		for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+			giveBack(entry.getKey(), entry.getValue());
+		}
+		leases.clear();
+	}
+
+	private void expireLeases() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+			Lease lease = entry.getValue();
+			if (lease.grantedAt > 0 && now - lease.grantedAt >= leaseMillis) {
+				synchronized (lease) {
+					// 到期仍有剩余，说明批量偏大，按本租约期实际卖出量收缩
+					if (lease.remaining.get() > 0) {
+						lease.blockSize = Math.max(minBlock, Math.min(maxBlock, lease.sold.get()));
+					}
+					// 归还失败时保留租约期，下次检查时重试
+					if (giveBack(entry.getKey(), lease)) {
+						lease.grantedAt = 0;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 把租约剩余的库存归还redis；归还失败时放回租约，只有代数不同（菜品已被重新初始化）时才由redis丢弃
+	 * 
+	 * @return 没有剩余、已归还或已丢弃返回true；归还失败返回false
+	 */
+	private boolean giveBack(String foodId, Lease lease) {
+		long left = lease.remaining.getAndSet(0);
+		if (left <= 0) {
+			return true;
+		}
+		try {
+			if (foodDao.returnStock(foodId, left, lease.generation)) {
+				return true;
+			}
+			logger.error("归还菜品" + foodId + "的租约库存" + left + "失败");
+		} catch (Exception e) {
+			logger.error("归还菜品" + foodId + "的租约库存" + left + "失败：" + e.getMessage());
+		}
+		lease.remaining.addAndGet(left);
+		return false;
+	}
+
+	/**
+	 * 单个菜品的本地租约
+	 */
+	private static class Lease {
+		final AtomicLong remaining = new AtomicLong();
+		final AtomicLong sold = new AtomicLong();
+		volatile long blockSize;
+		volatile long redisRemaining;
+		volatile long grantedAt;
+
+		/**
+		 * 最近一次领取时菜品的代数
+		 */
+		volatile long generation;
+
+		/**
+		 * 正在进行的重新初始化数，由lease的锁保护
+		 */
+		int frozen;
+
+		Lease(long blockSize) {
+			this.blockSize = blockSize;
+		}
+	}
+}
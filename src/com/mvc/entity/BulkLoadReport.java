@@ -0,0 +1,78 @@
+package com.mvc.entity;
+
+/**
+ * 批量初始化菜品的结果统计
+ * 
+ * @author 23006
+ *
+ */
+public class BulkLoadReport {
+	/**
+	 * 成功写入的行数
+	 */
+	private long rows;
+	/**
+	 * 格式错误或写入失败的行数
+	 */
+	private long failures;
+	/**
+	 * 与同一块中后面的行菜品编号重复、被后面的行覆盖的行数；成功、失败、覆盖的行数之和等于输入的非空行数
+	 */
+	private long merged;
+	/**
+	 * 耗时，单位毫秒
+	 */
+	private long millis;
+
+	public long getRows() {
+		return rows;
+	}
+
+	public void setRows(long rows) {
+		this.rows = rows;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public void setFailures(long failures) {
+		this.failures = failures;
+	}
+
+	public long getMerged() {
+		return merged;
+	}
+
+	public void setMerged(long merged) {
+		this.merged = merged;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	public void setMillis(long millis) {
+		this.millis = millis;
+	}
+
+	/**
+	 * 每秒写入行数
+	 */
+	public long getRowsPerSecond() {
+		return millis <= 0 ? rows : rows * 1000 / millis;
+	}
+
+	public BulkLoadReport(long rows, long failures, long merged, long millis) {
+		super();
+		this.rows = rows;
+		this.failures = failures;
+		this.merged = merged;
+		this.millis = millis;
+	}
+
+	public BulkLoadReport() {
+		super();
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.mvc.entity;
+
+import java.util.Map;
+
+/**
+ * 购物车下单结果
+ * 
+ * @author 23006
+ *
+ */
+public class CartResult {
+	/**
+	 * 是否全部扣减成功，任一菜品不存在或数量不足时整单不扣减
+	 */
+	private boolean success;
+	/**
+	 * 菜品编号 -> 扣减后的数量；下单失败时为当前数量，菜品不存在为负数
+	 */
+	private Map<String, Long> foodNumbers;
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public void setSuccess(boolean success) {
+		this.success = success;
+	}
+
+	public Map<String, Long> getFoodNumbers() {
+		return foodNumbers;
+	}
+
+	public void setFoodNumbers(Map<String, Long> foodNumbers) {
+		this.foodNumbers = foodNumbers;
+	}
+
+	public CartResult(boolean success, Map<String, Long> foodNumbers) {
+		super();
+		this.success = success;
+		this.foodNumbers = foodNumbers;
+	}
+
+	public CartResult() {
+		super();
+	}
+
+}
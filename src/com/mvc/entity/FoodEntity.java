@@ -8,7 +8,10 @@ package com.mvc.entity;
  */
 public class FoodEntity {
 	private String foodId;
-	private String foodNumber;
+	/**
+	 * 菜品数量
+	 */
+	private long foodNumber;
 
 	public String getFoodId() {
 		return foodId;
@@ -18,15 +21,15 @@ public class FoodEntity {
 		this.foodId = foodId;
 	}
 
-	public String getFoodNumber() {
+	public long getFoodNumber() {
 		return foodNumber;
 	}
 
-	public void setFoodNumber(String foodNumber) {
+	public void setFoodNumber(long foodNumber) {
 		this.foodNumber = foodNumber;
 	}
 
-	public FoodEntity(String foodId, String foodNumber) {
+	public FoodEntity(String foodId, long foodNumber) {
 		super();
 		this.foodId = foodId;
 		this.foodNumber = foodNumber;
@@ -0,0 +1,55 @@
+package com.mvc.entity;
+
+/**
+ * 一次从redis扣减库存的结果
+ * 
+ * @author 23006
+ *
+ */
+public class StockGrant {
+	/**
+	 * 实际扣到的数量，菜品不存在时为负数
+	 */
+	private final long granted;
+	/**
+	 * 扣减后redis中剩余的数量
+	 */
+	private final long remaining;
+	/**
+	 * 扣减时菜品被初始化的代数，未读取时为0
+	 */
+	private final long generation;
+	/**
+	 * 扣减后菜品数量的版本号，未扣减时为0
+	 */
+	private final long version;
+
+	public StockGrant(long granted, long remaining) {
+		this(granted, remaining, 0, 0);
+	}
+
+	public StockGrant(long granted, long remaining, long generation, long version) {
+		super();
+		this.granted = granted;
+		this.remaining = remaining;
+		this.generation = generation;
+		this.version = version;
+	}
+
+	public long getGranted() {
+		return granted;
+	}
+
+	public long getRemaining() {
+		return remaining;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.mvc.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mvc.dao.FoodDao;
+import com.mvc.entity.BulkLoadReport;
+
+/**
+ * 批量初始化菜品：逐行读取“菜品编号,菜品数量”，按块用mset写入redis，多个块在几个连接上并行写入。
+ * <p>
+ * 同时在途的块数有上限，读取速度超过写入速度时阻塞读取，内存占用与输入大小无关。
+ * </p>
+ * <p>
+ * 同一块中菜品编号重复时以后面的行为准，前面的行计入{@link BulkLoadReport#getMerged()}；
+ * 不同块中的重复编号各自写入，块之间并行写入，哪一行最终生效不确定。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+class BulkLoader {
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkLoader.class);
+
+	private final FoodDao foodDao;
+	private final int chunkSize;
+	private final int threads;
+
+	BulkLoader(FoodDao foodDao, int chunkSize, int threads) {
+		this.foodDao = foodDao;
+		this.chunkSize = chunkSize;
+		this.threads = threads;
+	}
+
+	BulkLoadReport load(Reader input) throws IOException {
+		long begin = System.currentTimeMillis();
+		final AtomicLong rows = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+		long merged = 0;
+		final Semaphore inFlight = new Semaphore(threads * 2);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			BufferedReader reader = new BufferedReader(input);
+			Map<String, String> chunk = new LinkedHashMap<String, String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0) {
+					continue;
+				}
+				int sep = line.indexOf(',');
+				String foodId = sep > 0 ? line.substring(0, sep).trim() : "";
+				String foodNumber = sep > 0 ? line.substring(sep + 1).trim() : "";
+				if (foodId.length() == 0 || !FoodDao.isValidFoodNumber(foodNumber)) {
+					failures.incrementAndGet();
+					continue;
+				}
+				if (chunk.put(foodId, foodNumber) != null) {
+					merged++;
+				}
+				if (chunk.size() >= chunkSize) {
+					submit(executor, inFlight, chunk, rows, failures);
+					chunk = new LinkedHashMap<String, String>();
+				}
+			}
+			if (!chunk.isEmpty()) {
+				submit(executor, inFlight, chunk, rows, failures);
+			}
+			// 等待所有在途的块写完
+			inFlight.acquireUninterruptibly(threads * 2);
+		} finally {
+			executor.shutdown();
+		}
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		BulkLoadReport report = new BulkLoadReport(rows.get(), failures.get(), merged,
+				System.currentTimeMillis() - begin);
+		logger.info("批量初始化菜品完成，成功" + report.getRows() + "行，失败" + report.getFailures() + "行，重复覆盖"
+				+ report.getMerged() + "行，每秒" + report.getRowsPerSecond() + "行");
+		return report;
+	}
+
+	private void submit(ExecutorService executor, final Semaphore inFlight, final Map<String, String> chunk,
+			final AtomicLong rows, final AtomicLong failures) {
+		inFlight.acquireUninterruptibly();
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					rows.addAndGet(foodDao.intoRedis(chunk));
+				} catch (Exception e) {
+					failures.addAndGet(chunk.size());
+					logger.error("批量写入" + chunk.size() + "个菜品失败：" + e.getMessage());
+				} finally {
+					inFlight.release();
+				}
+			}
+		});
+	}
+}
@@ -1,22 +1,147 @@
 package com.mvc.service;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import com.mvc.dao.FoodDao;
+import com.mvc.entity.BulkLoadReport;
+import com.mvc.entity.CartResult;
+import com.mvc.util.ReadProperties;
 
 public class FoodService{
+	/**
+	 * 异步下单返回值:缓冲区已满，订单未被接收
+	 */
+	public static final long ORDER_REJECTED = -1L;
+
+	/**
+	 * 订单结果:尚未处理完
+	 */
+	public static final long ORDER_PENDING = -3L;
+
+	/**
+	 * 订单结果:订单号无效或结果已过期
+	 */
+	public static final long ORDER_UNKNOWN = -4L;
+
+	/**
+	 * 订单结果:处理时redis操作失败
+	 */
+	public static final long ORDER_FAILED = -5L;
+
 	@Resource
 	private FoodDao foodDao;
 
+	/**
+	 * 订单合并提交，未开启时为null
+	 */
+	private OrderCoalescer coalescer;
+
+	/**
+	 * 异步下单流水线，未开启时为null
+	 */
+	private OrderPipeline pipeline;
+
+	@PostConstruct
+	public void init() {
+		long windowMillis = Long.parseLong(ReadProperties.getProperties("order_batch_window_millis", "0"));
+		if (windowMillis > 0) {
+			coalescer = new OrderCoalescer(foodDao, windowMillis, Integer.parseInt(ReadProperties.getProperties(
+					"order_batch_max_size", "100")));
+		}
+		if (Boolean.parseBoolean(ReadProperties.getProperties("order_pipeline_enabled", "false"))) {
+			pipeline = new OrderPipeline(foodDao,
+					Integer.parseInt(ReadProperties.getProperties("order_pipeline_capacity", "65536")),
+					Integer.parseInt(ReadProperties.getProperties("order_pipeline_consumers", "2")),
+					Integer.parseInt(ReadProperties.getProperties("order_pipeline_batch_size", "256")));
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (pipeline != null) {
+			pipeline.shutdown();
+		}
+	}
+
 	public boolean intoRedis(String foodId, String foodNumber) {
 		return foodDao.intoRedis(foodId, foodNumber);
 	}
 
-	public void editFoodNumber(String foodId) {
-		foodDao.editFoodNumber(foodId);
+	/**
+	 * 批量初始化菜品，输入每行一个“菜品编号,菜品数量”，边读边写，不会把整个输入读入内存
+	 * 
+	 * @param input
+	 * @return 写入行数、失败行数和耗时
+	 * @throws IOException 读取输入失败
+	 */
+	public BulkLoadReport bulkInit(Reader input) throws IOException {
+		return new BulkLoader(foodDao, Integer.parseInt(ReadProperties.getProperties("bulk_init_chunk_size", "1000")),
+				Integer.parseInt(ReadProperties.getProperties("bulk_init_threads", "4"))).load(input);
+	}
+
+	public long editFoodNumber(String foodId) {
+		if (coalescer != null) {
+			return coalescer.order(foodId);
+		}
+		return foodDao.editFoodNumber(foodId);
 	}
 	
-	public void saveFoodNumber(String  foodId){
-		foodDao.saveFoodNumber(foodId);
+	public long saveFoodNumber(String  foodId){
+		if (coalescer != null) {
+			return coalescer.restock(foodId);
+		}
+		return foodDao.saveFoodNumber(foodId);
+	}
+
+	public long getFoodNumber(String foodId) {
+		return foodDao.getFoodNumber(foodId);
+	}
+
+	public String getStockVersion(String foodId) {
+		return foodDao.getStockVersion(foodId);
+	}
+
+	/**
+	 * 购物车下单，所有菜品一次原子扣减，全部成功或全部不扣减
+	 * 
+	 * @param foodIds 菜品编号，同一菜品出现多次时数量合并
+	 * @param counts 与foodIds一一对应的数量
+	 */
+	public CartResult orderCart(String[] foodIds, long[] counts) {
+		Map<String, Long> foodCounts = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < foodIds.length; i++) {
+			Long count = foodCounts.get(foodIds[i]);
+			foodCounts.put(foodIds[i], (count == null ? 0L : count) + counts[i]);
+		}
+		return foodDao.orderCart(foodCounts);
+	}
+
+	public boolean isOrderPipelineEnabled() {
+		return pipeline != null;
+	}
+
+	/**
+	 * 异步下单，订单写入缓冲区后立即返回
+	 * 
+	 * @return 订单号；缓冲区已满返回{@link #ORDER_REJECTED}
+	 */
+	public long submitOrder(String foodId) {
+		return pipeline.submit(foodId);
+	}
+
+	/**
+	 * 查询异步订单的结果
+	 * 
+	 * @return 下单后的剩余数量或{@link FoodDao#SOLD_OUT}等状态值
+	 */
+	public long getOrderResult(long orderId) {
+		return pipeline == null ? ORDER_UNKNOWN : pipeline.result(orderId);
 	}
 }
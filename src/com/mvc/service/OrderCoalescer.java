@@ -0,0 +1,179 @@
+package com.mvc.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.mvc.dao.FoodDao;
+import com.mvc.entity.StockGrant;
+
+/**
+ * 订单合并提交：同一菜品在一个很短的时间窗口内的并发下单（或加菜）请求合并成一次redis原子操作，
+ * 扣到的数量按到达顺序分给等待的请求，其余请求返回售完。
+ * <p>
+ * 窗口内第一个到达的线程负责提交，窗口结束或凑满一批时提交，其余线程等待结果。
+ * 没有竞争时不等待窗口：第一个线程让出一次CPU后批内仍只有自己就立即提交。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+class OrderCoalescer {
+
+	private final FoodDao foodDao;
+	private final long windowMillis;
+	private final int maxBatch;
+	private final ConcurrentHashMap<String, Batch> orders = new ConcurrentHashMap<String, Batch>();
+	private final ConcurrentHashMap<String, Batch> restocks = new ConcurrentHashMap<String, Batch>();
+
+	/**
+	 * @throws IllegalArgumentException maxBatch小于1
+	 */
+	OrderCoalescer(FoodDao foodDao, long windowMillis, int maxBatch) {
+		if (maxBatch < 1) {
+			throw new IllegalArgumentException("每批最大订单数必须大于0");
+		}
+		this.foodDao = foodDao;
+		this.windowMillis = windowMillis;
+		this.maxBatch = maxBatch;
+	}
+
+	/**
+	 * 下单一份
+	 * 
+	 * @return 同{@link FoodDao#editFoodNumber(String)}
+	 */
+	long order(String foodId) {
+		return join(orders, foodId, false);
+	}
+
+	/**
+	 * 加菜一份
+	 * 
+	 * @return 同{@link FoodDao#saveFoodNumber(String)}
+	 */
+	long restock(String foodId) {
+		return join(restocks, foodId, true);
+	}
+
+	private long join(ConcurrentHashMap<String, Batch> pending, String foodId, boolean restock) {
+		while (true) {
+			Batch batch = pending.get(foodId);
+			boolean leader = false;
+			if (batch == null) {
+				Batch created = new Batch(maxBatch);
+				batch = pending.putIfAbsent(foodId, created);
+				if (batch == null) {
+					batch = created;
+					leader = true;
+				}
+			}
+			int slot;
+			synchronized (batch) {
+				if (batch.closed) {
+					continue;
+				}
+				slot = batch.size++;
+				if (batch.size == maxBatch) {
+					close(pending, foodId, batch);
+					batch.notifyAll();
+				}
+			}
+			if (leader) {
+				commit(pending, foodId, batch, restock);
+			}
+			return await(batch, slot);
+		}
+	}
+
+	/**
+	 * 等待窗口结束或凑满一批后提交，并把结果分给批内每个请求；没有其他请求加入时立即提交
+	 */
+	private void commit(ConcurrentHashMap<String, Batch> pending, String foodId, Batch batch, boolean restock) {
+		// 让已经在路上的并发请求有机会加入
+		Thread.yield();
+		synchronized (batch) {
+			long deadline = System.currentTimeMillis() + windowMillis;
+			// 只有自己说明该菜品没有竞争，等待窗口只会增加延迟
+			long left = batch.size > 1 ? windowMillis : 0;
+			while (!batch.closed && left > 0) {
+				try {
+					batch.wait(left);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				left = deadline - System.currentTimeMillis();
+			}
+			close(pending, foodId, batch);
+		}
+		int size = batch.size;
+		long[] results = batch.results;
+		try {
+			if (restock) {
+				long number = foodDao.addFoodNumber(foodId, size);
+				for (int i = 0; i < size; i++) {
+					results[i] = number < 0 ? number : number - (size - 1 - i);
+				}
+			} else {
+				StockGrant grant = foodDao.takeFoodNumber(foodId, size);
+				for (int i = 0; i < size; i++) {
+					if (grant.getGranted() < 0) {
+						results[i] = grant.getGranted();
+					} else if (i < grant.getGranted()) {
+						results[i] = grant.getRemaining() + (grant.getGranted() - 1 - i);
+					} else {
+						results[i] = FoodDao.SOLD_OUT;
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			batch.error = e;
+		} finally {
+			synchronized (batch) {
+				batch.done = true;
+				batch.notifyAll();
+			}
+		}
+	}
+
+	private long await(Batch batch, int slot) {
+		synchronized (batch) {
+			boolean interrupted = false;
+			while (!batch.done) {
+				try {
+					batch.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (batch.error != null) {
+			throw batch.error;
+		}
+		return batch.results[slot];
+	}
+
+	private void close(ConcurrentHashMap<String, Batch> pending, String foodId, Batch batch) {
+		if (!batch.closed) {
+			batch.closed = true;
+			pending.remove(foodId, batch);
+		}
+	}
+
+	/**
+	 * 同一菜品在一个窗口内的一批请求，字段均在batch锁内读写
+	 */
+	private static class Batch {
+		final long[] results;
+		int size;
+		boolean closed;
+		boolean done;
+		RuntimeException error;
+
+		Batch(int maxBatch) {
+			this.results = new long[maxBatch];
+		}
+	}
+}
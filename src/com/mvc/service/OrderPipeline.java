@@ -0,0 +1,208 @@
+package com.mvc.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mvc.dao.FoodDao;
+import com.mvc.entity.StockGrant;
+
+/**
+ * 异步下单流水线：请求线程只把订单写入环形缓冲区并立即返回订单号，
+ * 少量消费线程批量取出订单，按菜品合并后对redis扣减，结果写入结果表供客户端查询。
+ * 
+ * @author 23006
+ *
+ */
+class OrderPipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger(OrderPipeline.class);
+
+	/**
+	 * 结果表中正在写入的槽位的订单号
+	 */
+	private static final long WRITING = -2L;
+
+	/**
+	 * 容量的上限：结果表是环形缓冲区的4倍，再大时结果表的大小超出int
+	 */
+	static final int MAX_CAPACITY = OrderRingBuffer.MAX_CAPACITY >> 2;
+
+	private final FoodDao foodDao;
+	private final OrderRingBuffer ring;
+	private final int batchSize;
+	private final AtomicLong nextOrderId = new AtomicLong();
+
+	/**
+	 * 结果表，按订单号取模存放，新订单覆盖旧订单；写入时先把槽位的订单号置为{@link #WRITING}（同一槽位同时只有一个写入者），
+	 * 结果写入后再发布订单号。结果与订单号都是volatile读写，读取方在结果前后读到同一订单号时结果一定属于该订单
+	 */
+	private final int resultMask;
+	private final AtomicLongArray resultOrderIds;
+	private final AtomicLongArray results;
+
+	private final Thread[] consumers;
+	private volatile boolean running = true;
+
+	/**
+	 * @throws IllegalArgumentException 容量超过{@link #MAX_CAPACITY}
+	 */
+	OrderPipeline(FoodDao foodDao, int capacity, int consumerCount, int batchSize) {
+		if (capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("容量不能超过" + MAX_CAPACITY + "：" + capacity);
+		}
+		this.foodDao = foodDao;
+		this.ring = new OrderRingBuffer(capacity);
+		this.batchSize = batchSize;
+		int resultSize = ring.capacity() * 4;
+		this.resultMask = resultSize - 1;
+		this.resultOrderIds = new AtomicLongArray(resultSize);
+		this.results = new AtomicLongArray(resultSize);
+		for (int i = 0; i < resultSize; i++) {
+			resultOrderIds.set(i, -1L);
+		}
+		this.consumers = new Thread[consumerCount];
+		for (int i = 0; i < consumerCount; i++) {
+			consumers[i] = new Thread(new Runnable() {
+				public void run() {
+					consume();
+				}
+			}, "order-pipeline-" + i);
+			consumers[i].setDaemon(true);
+			consumers[i].start();
+		}
+	}
+
+	/**
+	 * 提交订单
+	 * 
+	 * @return 订单号；缓冲区已满返回{@link FoodService#ORDER_REJECTED}
+	 */
+	long submit(String foodId) {
+		long orderId = nextOrderId.getAndIncrement();
+		return ring.offer(orderId, foodId) ? orderId : FoodService.ORDER_REJECTED;
+	}
+
+	/**
+	 * 查询订单结果
+	 * 
+	 * @return 同{@link FoodDao#editFoodNumber(String)}；未处理完返回{@link FoodService#ORDER_PENDING}；
+	 *         结果已被覆盖或订单号无效返回{@link FoodService#ORDER_UNKNOWN}
+	 */
+	long result(long orderId) {
+		if (orderId < 0 || orderId >= nextOrderId.get()) {
+			return FoodService.ORDER_UNKNOWN;
+		}
+		int index = (int) (orderId & resultMask);
+		long stored = resultOrderIds.get(index);
+		if (stored == orderId) {
+			long value = results.get(index);
+			// 读取期间被新订单覆盖
+			return resultOrderIds.get(index) == orderId ? value : FoodService.ORDER_UNKNOWN;
+		}
+		return stored < orderId ? FoodService.ORDER_PENDING : FoodService.ORDER_UNKNOWN;
+	}
+
+	/**
+	 * 停止接收处理，消费线程处理完缓冲区中剩余订单后退出
+	 */
+	void shutdown() {
+		running = false;
+		for (Thread consumer : consumers) {
+			try {
+				consumer.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void consume() {
+		long[] orderIds = new long[batchSize];
+		String[] foodIds = new String[batchSize];
+		Map<String, List<Long>> byFood = new LinkedHashMap<String, List<Long>>();
+		int idle = 0;
+		while (running || !ring.isEmpty()) {
+			int count = ring.drain(orderIds, foodIds, batchSize);
+			if (count == 0) {
+				// 空闲时先自旋，再逐步退避休眠
+				if (++idle > 100) {
+					LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(Math.min(idle, 1000)));
+				}
+				continue;
+			}
+			idle = 0;
+			byFood.clear();
+			for (int i = 0; i < count; i++) {
+				List<Long> ids = byFood.get(foodIds[i]);
+				if (ids == null) {
+					ids = new ArrayList<Long>();
+					byFood.put(foodIds[i], ids);
+				}
+				ids.add(orderIds[i]);
+				foodIds[i] = null;
+			}
+			for (Map.Entry<String, List<Long>> entry : byFood.entrySet()) {
+				process(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * 同一菜品的一批订单一次扣减，扣到的数量按订单顺序分配，其余订单售完
+	 */
+	private void process(String foodId, List<Long> ids) {
+		int size = ids.size();
+		StockGrant grant;
+		try {
+			grant = foodDao.takeFoodNumber(foodId, size);
+		} catch (Exception e) {
+			logger.error("处理菜品" + foodId + "的" + size + "个订单失败：" + e.getMessage());
+			for (Long id : ids) {
+				publish(id, FoodService.ORDER_FAILED);
+			}
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			long value;
+			if (grant.getGranted() < 0) {
+				value = grant.getGranted();
+			} else if (i < grant.getGranted()) {
+				value = grant.getRemaining() + (grant.getGranted() - 1 - i);
+			} else {
+				value = FoodDao.SOLD_OUT;
+			}
+			publish(ids.get(i), value);
+		}
+	}
+
+	/**
+	 * 写入订单结果；槽位已被更新的订单占用时丢弃，不覆盖新订单的结果
+	 */
+	void publish(long orderId, long value) {
+		int index = (int) (orderId & resultMask);
+		while (true) {
+			long current = resultOrderIds.get(index);
+			if (current == WRITING) {
+				continue;
+			}
+			if (current >= orderId) {
+				return;
+			}
+			if (resultOrderIds.compareAndSet(index, current, WRITING)) {
+				break;
+			}
+		}
+		results.set(index, value);
+		resultOrderIds.set(index, orderId);
+	}
+}
@@ -0,0 +1,112 @@
+package com.mvc.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 订单环形缓冲区：容量固定、槽位预先分配的多生产者多消费者无锁队列。
+ * <p>
+ * 每个槽位带一个序号，生产者/消费者通过CAS抢占写/读位置，再用序号发布槽位内容，
+ * 入队出队都不分配对象。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+class OrderRingBuffer {
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final long[] orderIds;
+	private final String[] foodIds;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * 槽位数的上限，再大取整为2的幂时int会溢出
+	 */
+	static final int MAX_CAPACITY = 1 << 30;
+
+	/**
+	 * @param capacity 容量，见{@link #sizeFor(int)}
+	 */
+	OrderRingBuffer(int capacity) {
+		int size = sizeFor(capacity);
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		this.orderIds = new long[size];
+		this.foodIds = new String[size];
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * 容量向上取整为2的幂，至少2个槽位：只有1个槽位时写入后的序号与下一轮的写入位置相同，无法区分槽位是否已被读取
+	 * 
+	 * @throws IllegalArgumentException 容量超过{@link #MAX_CAPACITY}
+	 */
+	static int sizeFor(int capacity) {
+		if (capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("容量不能超过" + MAX_CAPACITY + "：" + capacity);
+		}
+		return capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+	}
+
+	/**
+	 * 写入一个订单
+	 * 
+	 * @return 缓冲区已满返回false
+	 */
+	boolean offer(long orderId, String foodId) {
+		long pos = head.get();
+		while (true) {
+			int index = (int) (pos & mask);
+			long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					orderIds[index] = orderId;
+					foodIds[index] = foodId;
+					sequences.lazySet(index, pos + 1);
+					return true;
+				}
+			} else if (diff < 0) {
+				return false;
+			}
+			pos = head.get();
+		}
+	}
+
+	/**
+	 * 批量取出最多max个订单
+	 * 
+	 * @return 实际取出的个数，缓冲区为空返回0
+	 */
+	int drain(long[] orderIdsOut, String[] foodIdsOut, int max) {
+		int count = 0;
+		while (count < max) {
+			long pos = tail.get();
+			int index = (int) (pos & mask);
+			long diff = sequences.get(index) - (pos + 1);
+			if (diff < 0) {
+				break;
+			}
+			if (diff == 0 && tail.compareAndSet(pos, pos + 1)) {
+				orderIdsOut[count] = orderIds[index];
+				foodIdsOut[count] = foodIds[index];
+				foodIds[index] = null;
+				sequences.lazySet(index, pos + mask + 1);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	int capacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,111 @@
+package com.mvc.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * redis命令耗时统计：每种命令一个耗时直方图，超过阈值的命令记录慢日志（命令、key、调用方）。
+ * <p>
+ * 计时不包含等待连接的时间；记录时只更新计数器，不分配对象（RedisUtil的每次调用仍会创建一个JedisCallback）。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+final class CommandMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger("redis.slowlog");
+
+	private final long slowMicros;
+
+	private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	private final AtomicLong slowCommands = new AtomicLong();
+
+	/**
+	 * @param slowMillis 慢命令阈值，单位毫秒，小于0表示不记录慢日志
+	 */
+	CommandMetrics(long slowMillis) {
+		this.slowMicros = slowMillis < 0 ? Long.MAX_VALUE : slowMillis * 1000;
+	}
+
+	/**
+	 * 记录一次命令耗时
+	 * 
+	 * @param command 命令名
+	 * @param key 命令操作的key，只在记录慢日志时使用，可以是String、String[]、byte[]、byte[][]、Map或Collection
+	 * @param startNanos 命令开始时的System.nanoTime()
+	 */
+	void record(String command, Object key, long startNanos) {
+		long micros = (System.nanoTime() - startNanos) / 1000;
+		LatencyHistogram histogram = histograms.get(command);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(command, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		histogram.record(micros);
+		if (micros >= slowMicros) {
+			slowCommands.incrementAndGet();
+			logger.warn("redis慢命令：" + command + " key=" + describe(key) + " 耗时" + micros + "微秒 调用方=" + caller());
+		}
+	}
+
+	/**
+	 * 命令名 -> 耗时直方图
+	 */
+	Map<String, LatencyHistogram> getHistograms() {
+		return Collections.unmodifiableMap(histograms);
+	}
+
+	long getSlowCommands() {
+		return slowCommands.get();
+	}
+
+	private static String describe(Object key) {
+		if (key instanceof byte[]) {
+			return SafeEncoder.encode((byte[]) key);
+		}
+		if (key instanceof byte[][]) {
+			byte[][] keys = (byte[][]) key;
+			return keys.length == 0 ? "" : keys.length == 1 ? describe(keys[0]) : describe(keys[0]) + " 等" + keys.length
+					+ "个";
+		}
+		if (key instanceof String[]) {
+			String[] keys = (String[]) key;
+			return keys.length == 0 ? "" : keys.length == 1 ? keys[0] : keys[0] + " 等" + keys.length + "个";
+		}
+		if (key instanceof Map) {
+			return describe(((Map<?, ?>) key).keySet());
+		}
+		if (key instanceof Collection) {
+			Collection<?> keys = (Collection<?>) key;
+			return keys.isEmpty() ? "" : keys.size() == 1 ? String.valueOf(keys.iterator().next()) : keys.iterator()
+					.next() + " 等" + keys.size() + "个";
+		}
+		return String.valueOf(key);
+	}
+
+	/**
+	 * RedisUtil之外的第一个调用方，只在慢命令时计算
+	 */
+	private static String caller() {
+		for (StackTraceElement element : new Throwable().getStackTrace()) {
+			String className = element.getClassName();
+			if (!className.startsWith("com.mvc.util.RedisUtil") && !className.equals(CommandMetrics.class.getName())) {
+				return element.toString();
+			}
+		}
+		return "unknown";
+	}
+}
@@ -0,0 +1,86 @@
+package com.mvc.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 近端缓存失效通知的后台发布：写操作只把key放入队列，由后台线程合并后一次PUBLISH，
+ * 写操作本身不再多一次往返。
+ * <p>
+ * 其他节点最多晚一个发布周期收到通知；队列满或发布失败时丢弃的通知由缓存的有效期兜底。
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+final class InvalidationPublisher implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(InvalidationPublisher.class);
+
+	/**
+	 * 一条通知最多合并的key数
+	 */
+	private static final int MAX_BATCH = 1000;
+
+	private final String channel;
+	private final BlockingQueue<String> queue;
+
+	/**
+	 * @param channel 失效通知频道
+	 * @param capacity 等待发布的key数上限
+	 */
+	InvalidationPublisher(String channel, int capacity) {
+		this.channel = channel;
+		this.queue = new LinkedBlockingQueue<String>(capacity);
+	}
+
+	void start() {
+		Thread thread = new Thread(this, "redis-invalidate");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 写操作后调用，不阻塞
+	 */
+	void offer(String... keys) {
+		for (String key : keys) {
+			// 队列满时丢弃，由缓存的有效期兜底
+			queue.offer(key);
+		}
+	}
+
+	public void run() {
+		List<String> batch = new ArrayList<String>(MAX_BATCH);
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, MAX_BATCH - 1);
+			// 同一批中重复的key只通知一次
+			Set<String> keys = new LinkedHashSet<String>(batch);
+			batch.clear();
+			StringBuilder message = new StringBuilder();
+			for (String key : keys) {
+				if (message.length() > 0) {
+					message.append('\n');
+				}
+				message.append(key);
+			}
+			try {
+				RedisUtil.publish(channel, message.toString());
+			} catch (Exception e) {
+				logger.error("发布近端缓存失效通知失败：" + e.getMessage());
+			}
+		}
+	}
+}
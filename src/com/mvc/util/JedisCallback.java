@@ -0,0 +1,18 @@
+package com.mvc.util;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 在借出的jedis连接上执行的操作，见{@link RedisUtil#execute(JedisCallback)}
+ * 
+ * @author 23006
+ *
+ * @param <T> 返回值类型
+ */
+public interface JedisCallback<T> {
+
+	/**
+	 * @param jedis 借出的连接，只在本方法内有效，不要保存或归还
+	 */
+	T doInRedis(Jedis jedis);
+}
@@ -0,0 +1,55 @@
+package com.mvc.util;
+
+/**
+ * 
+ * 简单的json拼接工具，只用于接口返回少量字段
+ * 
+ * @author 23006
+ *
+ */
+public final class JsonUtil {
+
+	private JsonUtil() {
+	}
+
+	/**
+	 * 将字符串转义并加上双引号，null返回null字面量
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static String quote(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(value.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,145 @@
+package com.mvc.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图，单位微秒
+ * <p>
+ * 固定的对数分桶：每个2的幂区间再等分为16个子桶，相对误差不超过1/16；
+ * 记录时只对所在桶的计数做原子加，总数由各桶相加得到；总耗时和最大值按线程分条带存放，读取时合并，
+ * 记录本身不分配对象，不同线程之间不争用同一个总数计数器。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * 每个2的幂区间的子桶数为2^SUB_BITS
+	 */
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	/**
+	 * 小于该值的耗时每微秒一个桶
+	 */
+	private static final int LINEAR = SUB_COUNT * 2;
+
+	/**
+	 * 可记录的最大耗时为2^MAX_MAGNITUDE微秒，超过的计入最后一个桶
+	 */
+	private static final int MAX_MAGNITUDE = 40;
+
+	private static final int BUCKETS = LINEAR + (MAX_MAGNITUDE - SUB_BITS - 1) * SUB_COUNT;
+
+	/**
+	 * 条带数，不小于cpu数的2的幂，最多64
+	 */
+	private static final int STRIPES = Math.min(64,
+			Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+	/**
+	 * 每个条带占8个long（64字节），总耗时在第0个、最大值在第1个，相邻条带不共享缓存行
+	 */
+	private static final int PAD = 8;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * PAD);
+
+	/**
+	 * 记录一次耗时
+	 * 
+	 * @param micros
+	 */
+	public void record(long micros) {
+		if (micros < 0) {
+			micros = 0;
+		}
+		counts.incrementAndGet(index(micros));
+		int stripe = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+		stripes.addAndGet(stripe, micros);
+		long current = stripes.get(stripe + 1);
+		while (micros > current && !stripes.compareAndSet(stripe + 1, current, micros)) {
+			current = stripes.get(stripe + 1);
+		}
+	}
+
+	/**
+	 * 各桶计数之和，记录同时进行时是近似值
+	 */
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	public long getMax() {
+		long max = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			max = Math.max(max, stripes.get(i * PAD + 1));
+		}
+		return max;
+	}
+
+	public double getMean() {
+		long n = getCount();
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += stripes.get(i * PAD);
+		}
+		return n == 0 ? 0 : (double) sum / n;
+	}
+
+	/**
+	 * 百分位耗时，返回所在桶的上界
+	 * 
+	 * @param percentile 0到100之间，如99.9
+	 */
+	public long getPercentile(double percentile) {
+		// 先取各桶的快照，总数与逐桶累加基于同一组计数
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long max = getMax();
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= target) {
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int index(long micros) {
+		if (micros < LINEAR) {
+			return (int) micros;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+		if (magnitude >= MAX_MAGNITUDE) {
+			return BUCKETS - 1;
+		}
+		int sub = (int) (micros >>> (magnitude - SUB_BITS)) & (SUB_COUNT - 1);
+		return LINEAR + (magnitude - SUB_BITS - 1) * SUB_COUNT + sub;
+	}
+
+	private static long upperBound(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int magnitude = (index - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+		int sub = (index - LINEAR) % SUB_COUNT;
+		long width = 1L << (magnitude - SUB_BITS);
+		return (SUB_COUNT + sub) * width + width - 1;
+	}
+}
@@ -0,0 +1,375 @@
+package com.mvc.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * long到long的并发哈希表
+ * <p>
+ * 分段加锁写入、不加锁读取（每段一个顺序锁），每段是线性探测的开放寻址表，key和value直接存放在long数组中，
+ * 没有装箱和条目对象；删除时把后续条目前移，不留墓碑。适合以数字菜品编号为key的大量本地计数、时间戳。
+ * 与ConcurrentHashMap&lt;String, Long&gt;的对比见test目录下的LongLongMapBenchmark。
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+public final class LongLongMap {
+
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * 每段的最小容量，必须是2的幂
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/**
+	 * 表示不存在的value
+	 */
+	private final long noValue;
+
+	/**
+	 * @param expectedSize 预计的条目数，超出时自动扩容
+	 * @param noValue key不存在时返回的值，不能作为value存入
+	 */
+	public LongLongMap(int expectedSize, long noValue) {
+		this.noValue = noValue;
+		// 装载因子0.5
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2 / SEGMENTS) {
+			capacity <<= 1;
+		}
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(capacity);
+		}
+	}
+
+	/**
+	 * 不加锁读取
+	 *
+	 * @return key对应的value，不存在返回noValue
+	 */
+	public long get(long key) {
+		long h = mix(key);
+		return segmentFor(h).read(key, h);
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != noValue;
+	}
+
+	/**
+	 * @return 原来的value，不存在返回noValue
+	 */
+	public long put(long key, long value) {
+		checkValue(value);
+		long h = mix(key);
+		Segment segment = segmentFor(h);
+		synchronized (segment) {
+			return segment.put(key, h, value, false);
+		}
+	}
+
+	/**
+	 * key不存在时才存入
+	 *
+	 * @return 已有的value，不存在(本次存入)返回noValue
+	 */
+	public long putIfAbsent(long key, long value) {
+		checkValue(value);
+		long h = mix(key);
+		Segment segment = segmentFor(h);
+		synchronized (segment) {
+			return segment.put(key, h, value, true);
+		}
+	}
+
+	/**
+	 * value大于已有的value或key不存在时才存入
+	 *
+	 * @return 存入后key对应的value
+	 */
+	public long putIfGreater(long key, long value) {
+		checkValue(value);
+		long h = mix(key);
+		Segment segment = segmentFor(h);
+		synchronized (segment) {
+			long old = segment.get(key, h);
+			if (old != noValue && old >= value) {
+				return old;
+			}
+			segment.put(key, h, value, false);
+			return value;
+		}
+	}
+
+	/**
+	 * 原子地给key的value加上delta，key不存在时从0开始
+	 *
+	 * @return 加上后的值
+	 */
+	public long addAndGet(long key, long delta) {
+		long h = mix(key);
+		Segment segment = segmentFor(h);
+		synchronized (segment) {
+			long old = segment.get(key, h);
+			long value = (old == noValue ? 0 : old) + delta;
+			checkValue(value);
+			segment.put(key, h, value, false);
+			return value;
+		}
+	}
+
+	/**
+	 * @return 被删除的value，不存在返回noValue
+	 */
+	public long remove(long key) {
+		long h = mix(key);
+		Segment segment = segmentFor(h);
+		synchronized (segment) {
+			int slot = segment.find(key, h);
+			if (slot < 0) {
+				return noValue;
+			}
+			long old = segment.table.values.get(slot);
+			segment.removeAt(slot);
+			return old;
+		}
+	}
+
+	/**
+	 * value等于expected时才删除
+	 *
+	 * @return 是否删除
+	 */
+	public boolean remove(long key, long expected) {
+		long h = mix(key);
+		Segment segment = segmentFor(h);
+		synchronized (segment) {
+			int slot = segment.find(key, h);
+			if (slot < 0 || segment.table.values.get(slot) != expected) {
+				return false;
+			}
+			segment.removeAt(slot);
+			return true;
+		}
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * 当前条目数，各段分别加锁统计，并发修改时只是近似值
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	private void checkValue(long value) {
+		if (value == noValue) {
+			throw new IllegalArgumentException("value不能等于noValue：" + value);
+		}
+	}
+
+	private Segment segmentFor(long h) {
+		// 高位选段，低位选槽，两者互不相关
+		return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * 64位混合函数，连续的菜品编号也能均匀分布
+	 */
+	private static long mix(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * 一个段的槽位数组，扩容和清空时整体替换
+	 */
+	private static final class Table {
+		final AtomicLongArray keys;
+		final AtomicLongArray values;
+
+		/**
+		 * 槽位是否占用，因此任何long都可以作为key
+		 */
+		final AtomicIntegerArray used;
+		final int mask;
+
+		Table(int capacity) {
+			keys = new AtomicLongArray(capacity);
+			values = new AtomicLongArray(capacity);
+			used = new AtomicIntegerArray(capacity);
+			mask = capacity - 1;
+		}
+	}
+
+	/**
+	 * 一段线性探测表。
+	 * <p>
+	 * 写操作加锁；插入、删除、扩容、清空会移动或改写条目，前后各把seq加1（执行期间为奇数）。
+	 * 读操作不加锁，读取seq后探测，seq不变才采用结果；槽位都是volatile读写，读到的任何改动都能被seq的变化发现。
+	 * 多次乐观读都与写操作冲突时加锁读取。覆盖已有key的value只改写一个槽位，读到新值或旧值都正确，不改变seq。
+	 * </p>
+	 */
+	private final class Segment {
+
+		/**
+		 * 乐观读的最大尝试次数
+		 */
+		private static final int OPTIMISTIC_READS = 4;
+
+		private volatile Table table;
+		private volatile int seq;
+		private int size;
+
+		Segment(int capacity) {
+			table = new Table(capacity);
+		}
+
+		long read(long key, long h) {
+			for (int i = 0; i < OPTIMISTIC_READS; i++) {
+				int before = seq;
+				if ((before & 1) == 0) {
+					long value = probe(table, key, h);
+					if (seq == before) {
+						return value;
+					}
+				}
+			}
+			synchronized (this) {
+				return get(key, h);
+			}
+		}
+
+		/**
+		 * 在t中查找key；与写操作并发时结果可能不正确，由调用方通过seq校验。探测次数不超过容量，不会死循环
+		 */
+		private long probe(Table t, long key, long h) {
+			for (int i = (int) h & t.mask, n = 0; n <= t.mask; i = (i + 1) & t.mask, n++) {
+				if (t.used.get(i) == 0) {
+					return noValue;
+				}
+				if (t.keys.get(i) == key) {
+					return t.values.get(i);
+				}
+			}
+			return noValue;
+		}
+
+		/**
+		 * 持有锁时调用
+		 *
+		 * @return key所在的槽位，不存在返回-1
+		 */
+		int find(long key, long h) {
+			Table t = table;
+			for (int i = (int) h & t.mask;; i = (i + 1) & t.mask) {
+				if (t.used.get(i) == 0) {
+					return -1;
+				}
+				if (t.keys.get(i) == key) {
+					return i;
+				}
+			}
+		}
+
+		long get(long key, long h) {
+			int slot = find(key, h);
+			return slot < 0 ? noValue : table.values.get(slot);
+		}
+
+		long put(long key, long h, long value, boolean onlyIfAbsent) {
+			Table t = table;
+			int i = (int) h & t.mask;
+			for (; t.used.get(i) != 0; i = (i + 1) & t.mask) {
+				if (t.keys.get(i) == key) {
+					long old = t.values.get(i);
+					if (!onlyIfAbsent) {
+						t.values.set(i, value);
+					}
+					return old;
+				}
+			}
+			seq++;
+			t.keys.set(i, key);
+			t.values.set(i, value);
+			t.used.set(i, 1);
+			if (++size * 2 > t.mask + 1) {
+				resize((t.mask + 1) << 1);
+			}
+			seq++;
+			return noValue;
+		}
+
+		/**
+		 * 删除槽位，并把探测链上后续的条目前移到空出的位置
+		 */
+		void removeAt(int slot) {
+			Table t = table;
+			int mask = t.mask;
+			seq++;
+			int gap = slot;
+			for (int i = (slot + 1) & mask; t.used.get(i) != 0; i = (i + 1) & mask) {
+				int home = (int) mix(t.keys.get(i)) & mask;
+				// home不在(gap, i]区间内时，条目可以前移到gap
+				if (((i - home) & mask) >= ((i - gap) & mask)) {
+					t.keys.set(gap, t.keys.get(i));
+					t.values.set(gap, t.values.get(i));
+					gap = i;
+				}
+			}
+			t.used.set(gap, 0);
+			size--;
+			seq++;
+		}
+
+		void clear() {
+			seq++;
+			table = new Table(table.mask + 1);
+			size = 0;
+			seq++;
+		}
+
+		/**
+		 * 在put的seq区间内调用；新表填好后才发布，旧表不再改动
+		 */
+		private void resize(int capacity) {
+			Table old = table;
+			Table t = new Table(capacity);
+			for (int j = 0; j <= old.mask; j++) {
+				if (old.used.get(j) != 0) {
+					long key = old.keys.get(j);
+					int i = (int) mix(key) & t.mask;
+					while (t.used.get(i) != 0) {
+						i = (i + 1) & t.mask;
+					}
+					t.keys.set(i, key);
+					t.values.set(i, old.values.get(j));
+					t.used.set(i, 1);
+				}
+			}
+			table = t;
+		}
+	}
+}
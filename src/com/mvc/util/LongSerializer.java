@@ -0,0 +1,82 @@
+package com.mvc.util;
+
+/**
+ * 计数器的序列化：十进制ASCII，与redis的INCR/DECR兼容，直接在字节上编解码，不经过String。
+ * 
+ * @author 23006
+ *
+ */
+public final class LongSerializer implements RedisSerializer<Long> {
+
+	public static final LongSerializer INSTANCE = new LongSerializer();
+
+	/**
+	 * Long.MIN_VALUE的十进制表示，无法取反单独处理
+	 */
+	private static final byte[] MIN_VALUE = { '-', '9', '2', '2', '3', '3', '7', '2', '0', '3', '6', '8', '5', '4',
+			'7', '7', '5', '8', '0', '8' };
+
+	private LongSerializer() {
+	}
+
+	public byte[] serialize(Long value) {
+		return toBytes(value);
+	}
+
+	public Long deserialize(byte[] bytes) {
+		return toLong(bytes);
+	}
+
+	/**
+	 * 编码为十进制ASCII
+	 */
+	public static byte[] toBytes(long value) {
+		if (value == Long.MIN_VALUE) {
+			return MIN_VALUE.clone();
+		}
+		boolean negative = value < 0;
+		long v = negative ? -value : value;
+		int len = negative ? 2 : 1;
+		for (long t = v; t >= 10; t /= 10) {
+			len++;
+		}
+		byte[] bytes = new byte[len];
+		for (int i = len - 1; i >= (negative ? 1 : 0); i--) {
+			bytes[i] = (byte) ('0' + v % 10);
+			v /= 10;
+		}
+		if (negative) {
+			bytes[0] = '-';
+		}
+		return bytes;
+	}
+
+	/**
+	 * 解析十进制ASCII
+	 * 
+	 * @throws IllegalArgumentException 不是合法的整数
+	 */
+	public static long toLong(byte[] bytes) {
+		int len = bytes.length;
+		boolean negative = len > 0 && bytes[0] == '-';
+		int i = negative ? 1 : 0;
+		if (i == len) {
+			throw new IllegalArgumentException("不是整数");
+		}
+		// 按负数累加，Long.MIN_VALUE也不会溢出
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long result = 0;
+		for (; i < len; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9 || result < limit / 10) {
+				throw new IllegalArgumentException("不是整数");
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw new IllegalArgumentException("不是整数");
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+}
@@ -0,0 +1,264 @@
+package com.mvc.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * redis本地近端缓存
+ * <p>
+ * 分段加锁的LRU缓存，条目带有效期，总条目数有上限。字符串key缓存值，hash key缓存单个字段或整个hash。
+ * </p>
+ * <p>
+ * 版本号按key的哈希分为多个槽，失效时递增key所在槽的版本号；读取redis前记下key的版本号，回填时版本号已变化则放弃回填，
+ * 避免读到的旧值覆盖刚失效的条目。其他槽的写操作不影响回填。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+public final class NearCache implements NearCacheMBean {
+
+	/**
+	 * 缓存的空值，表示redis中不存在
+	 */
+	static final Object NULL = new Object();
+
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * 版本号的槽数，必须是2的幂；比分段数多，同一分段内不同key的写操作也很少互相影响回填
+	 */
+	private static final int VERSION_STRIPES = 256;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final long ttlMillis;
+	private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	NearCache(int maxSize, long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+		int segmentSize = Math.max(1, maxSize / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * key当前的版本号，读取redis前调用
+	 */
+	long version(String key) {
+		return versions.get(stripe(key));
+	}
+
+	/**
+	 * 读取字符串值
+	 * 
+	 * @return 未命中返回null，redis中不存在返回{@link #NULL}
+	 */
+	Object get(String key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			CacheEntry entry = live(segment, key);
+			if (entry != null && entry.value != null) {
+				hits.incrementAndGet();
+				return entry.value;
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * 读取hash的单个字段
+	 * 
+	 * @return 未命中返回null，字段不存在返回{@link #NULL}
+	 */
+	Object getField(String key, String field) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			CacheEntry entry = live(segment, key);
+			if (entry != null) {
+				Object value = null;
+				if (entry.all != null) {
+					value = entry.all.containsKey(field) ? entry.all.get(field) : NULL;
+				} else if (entry.fields != null) {
+					value = entry.fields.get(field);
+				}
+				if (value != null) {
+					hits.incrementAndGet();
+					return value;
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * 读取整个hash
+	 * 
+	 * @return 未命中返回null，返回的map不可修改
+	 */
+	Map<String, String> getAll(String key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			CacheEntry entry = live(segment, key);
+			if (entry != null && entry.all != null) {
+				hits.incrementAndGet();
+				return entry.all;
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	void put(String key, String value, long readVersion) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			if (readVersion == versions.get(stripe(key))) {
+				CacheEntry entry = new CacheEntry(System.currentTimeMillis() + ttlMillis);
+				entry.value = value == null ? NULL : value;
+				segment.put(key, entry);
+			}
+		}
+	}
+
+	void putField(String key, String field, String value, long readVersion) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			if (readVersion == versions.get(stripe(key))) {
+				CacheEntry entry = live(segment, key);
+				if (entry == null || entry.fields == null) {
+					entry = new CacheEntry(System.currentTimeMillis() + ttlMillis);
+					entry.fields = new HashMap<String, Object>();
+					segment.put(key, entry);
+				}
+				entry.fields.put(field, value == null ? NULL : value);
+			}
+		}
+	}
+
+	void putAll(String key, Map<String, String> hash, long readVersion) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			if (readVersion == versions.get(stripe(key))) {
+				CacheEntry entry = new CacheEntry(System.currentTimeMillis() + ttlMillis);
+				entry.all = Collections.unmodifiableMap(new HashMap<String, String>(hash));
+				segment.put(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * 使key失效，先递增key所在槽的版本号再删除，保证并发的回填不会写入旧值
+	 */
+	void invalidate(String... keys) {
+		for (String key : keys) {
+			versions.incrementAndGet(stripe(key));
+			Segment segment = segmentFor(key);
+			synchronized (segment) {
+				segment.remove(key);
+			}
+		}
+		invalidations.addAndGet(keys.length);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0D : (double) h / total;
+	}
+
+	public double getMissRatio() {
+		long m = misses.get();
+		long total = m + hits.get();
+		return total == 0 ? 0D : (double) m / total;
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	public int getSize() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	private Segment segmentFor(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (SEGMENTS - 1)];
+	}
+
+	private static int stripe(String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return (h >>> 24) & (VERSION_STRIPES - 1);
+	}
+
+	private CacheEntry live(Segment segment, String key) {
+		CacheEntry entry = segment.get(key);
+		if (entry != null && entry.expireAt < System.currentTimeMillis()) {
+			segment.remove(key);
+			return null;
+		}
+		return entry;
+	}
+
+	private static class CacheEntry {
+		final long expireAt;
+		Object value;
+		Map<String, Object> fields;
+		Map<String, String> all;
+
+		CacheEntry(long expireAt) {
+			this.expireAt = expireAt;
+		}
+	}
+
+	/**
+	 * 按访问顺序淘汰的分段，超出容量时淘汰最久未访问的条目
+	 */
+	private class Segment extends LinkedHashMap<String, CacheEntry> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+			if (size() > maxSize) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+}
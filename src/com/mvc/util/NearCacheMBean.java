@@ -0,0 +1,24 @@
+package com.mvc.util;
+
+/**
+ * 近端缓存的JMX监控接口
+ * 
+ * @author 23006
+ *
+ */
+public interface NearCacheMBean {
+
+	long getHits();
+
+	long getMisses();
+
+	double getHitRatio();
+
+	double getMissRatio();
+
+	long getEvictions();
+
+	long getInvalidations();
+
+	int getSize();
+}
@@ -0,0 +1,15 @@
+package com.mvc.util;
+
+/**
+ * 在管道中执行的操作，见{@link RedisUtil#pipelined(PipelineCallback)}
+ * 
+ * @author 23006
+ *
+ */
+public interface PipelineCallback {
+
+	/**
+	 * @param pipeline 只在本方法内有效；方法返回后未读取回复的命令会自动完成
+	 */
+	void doInPipeline(RedisPipeline pipeline);
+}
@@ -0,0 +1,102 @@
+package com.mvc.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * redis连接健康检查：取代每次借出连接时的PING。
+ * <p>
+ * 只有空闲超过阈值的连接在借出时才PING一次，刚归还的连接直接使用；
+ * 其余空闲连接由连接池的后台驱逐线程定期验证；命令执行时的连接异常直接把连接作为坏连接丢弃。
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+final class PoolHealthChecker {
+
+	/**
+	 * 记录的空闲连接数超过该值时清理过期记录，被连接池关闭的连接不会再归还
+	 */
+	private static final int PRUNE_SIZE = 1024;
+
+	private final long idleMillis;
+
+	/**
+	 * 空闲连接 -> 归还时间
+	 */
+	private final ConcurrentHashMap<Jedis, Long> lastReturned = new ConcurrentHashMap<Jedis, Long>();
+
+	private final AtomicLong validations = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong brokenConnections = new AtomicLong();
+
+	/**
+	 * @param idleMillis 空闲超过该时间的连接借出时先验证，小于0表示从不在借出时验证
+	 */
+	PoolHealthChecker(long idleMillis) {
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * 借出连接时调用
+	 *
+	 * @return 连接可用返回true；返回false时调用方应丢弃该连接
+	 */
+	boolean validate(Jedis jedis) {
+		Long last = lastReturned.remove(jedis);
+		if (idleMillis < 0 || last != null && System.currentTimeMillis() - last < idleMillis) {
+			return true;
+		}
+		validations.incrementAndGet();
+		try {
+			if ("PONG".equals(jedis.ping())) {
+				return true;
+			}
+		} catch (Exception e) {
+			// 连接已断开
+		}
+		validationFailures.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * 连接正常归还时调用
+	 */
+	void returned(Jedis jedis) {
+		long now = System.currentTimeMillis();
+		lastReturned.put(jedis, now);
+		if (lastReturned.size() > PRUNE_SIZE) {
+			// 清理掉的连接下次借出时会验证一次
+			for (Iterator<Map.Entry<Jedis, Long>> it = lastReturned.entrySet().iterator(); it.hasNext();) {
+				if (now - it.next().getValue() >= idleMillis) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 命令执行时发现连接损坏
+	 */
+	void broken(Jedis jedis) {
+		lastReturned.remove(jedis);
+		brokenConnections.incrementAndGet();
+	}
+
+	long getValidations() {
+		return validations.get();
+	}
+
+	long getValidationFailures() {
+		return validationFailures.get();
+	}
+
+	long getBrokenConnections() {
+		return brokenConnections.get();
+	}
+}
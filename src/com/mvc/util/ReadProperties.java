@@ -36,4 +36,24 @@ public class ReadProperties {
 		}
 		return param;
 	}
+
+	/**
+	 * 读取配置项，未配置时返回默认值
+	 * 
+	 * @param pram
+	 * @param defaultValue
+	 * @return
+	 */
+	public static String getProperties(String pram, String defaultValue) {
+		Properties prop = new Properties();
+		InputStream in = ReadProperties.class.getClassLoader().getResourceAsStream("redis.properties");
+		String value = null;
+		try {
+			prop.load(in);
+			value = prop.getProperty(pram);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return value == null || "".equals(value.trim()) ? defaultValue : value.trim();
+	}
 }
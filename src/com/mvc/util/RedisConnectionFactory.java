@@ -0,0 +1,77 @@
+package com.mvc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool.BasePoolableObjectFactory;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * jedis连接工厂，行为与jedis自带的工厂一致：建立连接、按需认证；另外统计创建和关闭的连接数
+ * 
+ * @author 23006
+ *
+ */
+final class RedisConnectionFactory extends BasePoolableObjectFactory {
+
+	private final String host;
+	private final int port;
+	private final int timeout;
+	private final String password;
+
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong destroyed = new AtomicLong();
+
+	/**
+	 * @param password 为null或空时不认证
+	 */
+	RedisConnectionFactory(String host, int port, int timeout, String password) {
+		this.host = host;
+		this.port = port;
+		this.timeout = timeout;
+		this.password = password == null || "".equals(password) ? null : password;
+	}
+
+	@Override
+	public Object makeObject() throws Exception {
+		Jedis jedis = new Jedis(host, port, timeout);
+		jedis.connect();
+		if (password != null) {
+			jedis.auth(password);
+		}
+		created.incrementAndGet();
+		return jedis;
+	}
+
+	@Override
+	public void destroyObject(Object obj) throws Exception {
+		destroyed.incrementAndGet();
+		Jedis jedis = (Jedis) obj;
+		if (jedis.isConnected()) {
+			try {
+				jedis.quit();
+			} catch (Exception e) {
+				// 连接可能已断开
+			}
+			jedis.disconnect();
+		}
+	}
+
+	@Override
+	public boolean validateObject(Object obj) {
+		Jedis jedis = (Jedis) obj;
+		try {
+			return jedis.isConnected() && "PONG".equals(jedis.ping());
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	long getCreated() {
+		return created.get();
+	}
+
+	long getDestroyed() {
+		return destroyed.get();
+	}
+}
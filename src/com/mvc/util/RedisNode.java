@@ -0,0 +1,23 @@
+package com.mvc.util;
+
+/**
+ * 一个redis节点：地址、连接池及其监控
+ *
+ * @author 23006
+ *
+ */
+final class RedisNode {
+
+	/**
+	 * host:port
+	 */
+	final String address;
+	final RedisPool pool;
+	final RedisPoolMetrics metrics;
+
+	RedisNode(String address, RedisPool pool, RedisPoolMetrics metrics) {
+		this.address = address;
+		this.pool = pool;
+		this.metrics = metrics;
+	}
+}
@@ -0,0 +1,364 @@
+package com.mvc.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * redis管道：在一个连接上连续发送命令，攒够一批后一次读取全部回复，一批只需一次往返。
+ * <p>
+ * 每个命令立即返回Response，所在批次发送并读取回复后才能调用get()；单条命令的错误在对该命令调用get()时抛出
+ * JedisDataException，不影响同一批的其他命令。写入字符串和hash的命令在批次完成后使近端缓存失效。
+ * </p>
+ * <p>
+ * 通过{@link RedisUtil#pipelined(PipelineCallback)}获得，只在回调内有效；分片模式下只能访问管道所在节点上的key，
+ * 其他节点的key抛出IllegalArgumentException。
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+public final class RedisPipeline {
+
+	private final Jedis jedis;
+	private final Pipeline pipeline;
+	private final int chunkSize;
+
+	/**
+	 * 连接所属的节点，分片模式下管道中的key都必须位于该节点
+	 */
+	private final int node;
+
+	/**
+	 * 当前批次已发送未读取回复的命令数
+	 */
+	private int queued;
+
+	/**
+	 * 当前批次写入的key，批次完成后使近端缓存失效
+	 */
+	private final List<String> written = new ArrayList<String>();
+
+	RedisPipeline(Jedis jedis, int chunkSize, int node) {
+		this.jedis = jedis;
+		this.pipeline = jedis.pipelined();
+		this.chunkSize = Math.max(1, chunkSize);
+		this.node = node;
+	}
+
+	/**
+	 * 读取当前批次全部命令的回复，之后这些命令的Response可以get()
+	 */
+	public void sync() {
+		if (queued == 0) {
+			return;
+		}
+		pipeline.sync();
+		queued = 0;
+		if (!written.isEmpty()) {
+			RedisUtil.invalidate(written.toArray(new String[written.size()]));
+			written.clear();
+		}
+	}
+
+	/**
+	 * 当前批次已发送未读取回复的命令数
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	private void routed(String... keys) {
+		for (String key : keys) {
+			if (RedisUtil.nodeFor(key) != node) {
+				throw new IllegalArgumentException("key不在管道所在的节点上：" + key);
+			}
+		}
+	}
+
+	// ---------- 字符串 ----------
+
+	public Response<String> get(String key) {
+		routed(key);
+		return queued(pipeline.get(key));
+	}
+
+	public Response<String> set(String key, String value) {
+		routed(key);
+		written(key);
+		return queued(pipeline.set(key, value));
+	}
+
+	public Response<String> setex(String key, int seconds, String value) {
+		routed(key);
+		written(key);
+		return queued(pipeline.setex(key, seconds, value));
+	}
+
+	public Response<List<String>> mget(String... keys) {
+		routed(keys);
+		return queued(pipeline.mget(keys));
+	}
+
+	public Response<Long> del(String... keys) {
+		routed(keys);
+		written(keys);
+		return queued(pipeline.del(keys));
+	}
+
+	public Response<Boolean> exists(String key) {
+		routed(key);
+		return queued(pipeline.exists(key));
+	}
+
+	public Response<Long> expire(String key, int seconds) {
+		routed(key);
+		written(key);
+		return queued(pipeline.expire(key, seconds));
+	}
+
+	public Response<Long> incr(String key) {
+		routed(key);
+		written(key);
+		return queued(pipeline.incr(key));
+	}
+
+	public Response<Long> incrBy(String key, long integer) {
+		routed(key);
+		written(key);
+		return queued(pipeline.incrBy(key, integer));
+	}
+
+	public Response<Long> decr(String key) {
+		routed(key);
+		written(key);
+		return queued(pipeline.decr(key));
+	}
+
+	public Response<Long> decrBy(String key, long integer) {
+		routed(key);
+		written(key);
+		return queued(pipeline.decrBy(key, integer));
+	}
+
+	// ---------- hash ----------
+
+	public Response<String> hget(String key, String field) {
+		routed(key);
+		return queued(pipeline.hget(key, field));
+	}
+
+	public Response<Long> hset(String key, String field, String value) {
+		routed(key);
+		written(key);
+		return queued(pipeline.hset(key, field, value));
+	}
+
+	public Response<List<String>> hmget(String key, String... fields) {
+		routed(key);
+		return queued(pipeline.hmget(key, fields));
+	}
+
+	public Response<String> hmset(String key, Map<String, String> hash) {
+		routed(key);
+		written(key);
+		return queued(pipeline.hmset(key, hash));
+	}
+
+	public Response<Map<String, String>> hgetall(String key) {
+		routed(key);
+		return queued(pipeline.hgetAll(key));
+	}
+
+	public Response<Long> hincrby(String key, String field, long value) {
+		routed(key);
+		written(key);
+		return queued(pipeline.hincrBy(key, field, value));
+	}
+
+	public Response<Long> hdel(String key, String field) {
+		routed(key);
+		written(key);
+		return queued(pipeline.hdel(key, field));
+	}
+
+	public Response<Boolean> hexists(String key, String field) {
+		routed(key);
+		return queued(pipeline.hexists(key, field));
+	}
+
+	public Response<Long> hlen(String key) {
+		routed(key);
+		return queued(pipeline.hlen(key));
+	}
+
+	public Response<Set<String>> hkeys(String key) {
+		routed(key);
+		return queued(pipeline.hkeys(key));
+	}
+
+	public Response<List<String>> hvals(String key) {
+		routed(key);
+		return queued(pipeline.hvals(key));
+	}
+
+	// ---------- list ----------
+
+	public Response<Long> lpush(String key, String value) {
+		routed(key);
+		return queued(pipeline.lpush(key, value));
+	}
+
+	public Response<Long> rpush(String key, String value) {
+		routed(key);
+		return queued(pipeline.rpush(key, value));
+	}
+
+	public Response<String> lpop(String key) {
+		routed(key);
+		return queued(pipeline.lpop(key));
+	}
+
+	public Response<String> rpop(String key) {
+		routed(key);
+		return queued(pipeline.rpop(key));
+	}
+
+	public Response<List<String>> lrange(String key, long start, long end) {
+		routed(key);
+		return queued(pipeline.lrange(key, start, end));
+	}
+
+	public Response<Long> llen(String key) {
+		routed(key);
+		return queued(pipeline.llen(key));
+	}
+
+	public Response<String> lindex(String key, int index) {
+		routed(key);
+		return queued(pipeline.lindex(key, index));
+	}
+
+	public Response<String> ltrim(String key, long start, long end) {
+		routed(key);
+		return queued(pipeline.ltrim(key, start, end));
+	}
+
+	// ---------- set ----------
+
+	public Response<Long> sadd(String key, String member) {
+		routed(key);
+		return queued(pipeline.sadd(key, member));
+	}
+
+	public Response<Long> srem(String key, String member) {
+		routed(key);
+		return queued(pipeline.srem(key, member));
+	}
+
+	public Response<Boolean> sismember(String key, String member) {
+		routed(key);
+		return queued(pipeline.sismember(key, member));
+	}
+
+	public Response<Set<String>> smembers(String key) {
+		routed(key);
+		return queued(pipeline.smembers(key));
+	}
+
+	public Response<Long> scard(String key) {
+		routed(key);
+		return queued(pipeline.scard(key));
+	}
+
+	// ---------- sorted set ----------
+
+	public Response<Long> zadd(String key, double score, String member) {
+		routed(key);
+		return queued(pipeline.zadd(key, score, member));
+	}
+
+	public Response<Double> zincrby(String key, double score, String member) {
+		routed(key);
+		return queued(pipeline.zincrby(key, score, member));
+	}
+
+	public Response<Long> zrem(String key, String member) {
+		routed(key);
+		return queued(pipeline.zrem(key, member));
+	}
+
+	public Response<Double> zscore(String key, String member) {
+		routed(key);
+		return queued(pipeline.zscore(key, member));
+	}
+
+	public Response<Long> zrank(String key, String member) {
+		routed(key);
+		return queued(pipeline.zrank(key, member));
+	}
+
+	public Response<Long> zrevrank(String key, String member) {
+		routed(key);
+		return queued(pipeline.zrevrank(key, member));
+	}
+
+	public Response<Long> zcard(String key) {
+		routed(key);
+		return queued(pipeline.zcard(key));
+	}
+
+	public Response<Long> zcount(String key, double min, double max) {
+		routed(key);
+		return queued(pipeline.zcount(key, min, max));
+	}
+
+	public Response<Set<String>> zrange(String key, int start, int end) {
+		routed(key);
+		return queued(pipeline.zrange(key, start, end));
+	}
+
+	public Response<Set<String>> zrevrange(String key, int start, int end) {
+		routed(key);
+		return queued(pipeline.zrevrange(key, start, end));
+	}
+
+	public Response<Set<String>> zrangeByScore(String key, double min, double max) {
+		routed(key);
+		return queued(pipeline.zrangeByScore(key, min, max));
+	}
+
+	public Response<Set<String>> zrangeByScore(String key, double min, double max, int offset, int count) {
+		routed(key);
+		return queued(pipeline.zrangeByScore(key, min, max, offset, count));
+	}
+
+	// ---------- 发布订阅 ----------
+
+	/**
+	 * 频道只在第一个节点上，只能在{@link RedisUtil#pipelined(PipelineCallback)}得到的管道中发布
+	 */
+	public Response<Long> publish(String channel, String message) {
+		if (node != 0) {
+			throw new IllegalArgumentException("频道不在管道所在的节点上：" + channel);
+		}
+		return queued(pipeline.publish(channel, message));
+	}
+
+	private <T> Response<T> queued(Response<T> response) {
+		if (++queued >= chunkSize) {
+			sync();
+		}
+		return response;
+	}
+
+	private void written(String... keys) {
+		Collections.addAll(written, keys);
+	}
+}
@@ -0,0 +1,19 @@
+package com.mvc.util;
+
+import org.apache.commons.pool.impl.GenericObjectPool;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * jedis连接池：与JedisPool相同，但使用能统计连接创建和关闭次数的连接工厂
+ * 
+ * @author 23006
+ *
+ */
+final class RedisPool extends Pool<Jedis> {
+
+	RedisPool(GenericObjectPool.Config config, RedisConnectionFactory factory) {
+		super(config, factory);
+	}
+}
@@ -0,0 +1,157 @@
+package com.mvc.util;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * redis连接池监控：借出等待时间分布、借出中和空闲连接数、连接池耗尽次数、坏连接数、连接创建速度，
+ * 用于根据实际数据调整redis_max_active和redis_max_idle
+ * 
+ * @author 23006
+ *
+ */
+public final class RedisPoolMetrics implements RedisPoolMetricsMBean {
+
+	private static final long MINUTE_MILLIS = 60000L;
+
+	private final int maxActive;
+	private final int maxIdle;
+	private final RedisConnectionFactory factory;
+	private final PoolHealthChecker health;
+
+	private final LatencyHistogram borrowWait = new LatencyHistogram();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong exhausted = new AtomicLong();
+	private final AtomicLong connectFailures = new AtomicLong();
+	private final AtomicLong brokenReturns = new AtomicLong();
+
+	/**
+	 * 计算每分钟创建连接数的统计窗口
+	 */
+	private long windowStart = System.currentTimeMillis();
+	private long windowCreated;
+	private double createdPerMinute;
+
+	RedisPoolMetrics(int maxActive, int maxIdle, RedisConnectionFactory factory, PoolHealthChecker health) {
+		this.maxActive = maxActive;
+		this.maxIdle = maxIdle;
+		this.factory = factory;
+		this.health = health;
+	}
+
+	/**
+	 * 成功借出连接
+	 * 
+	 * @param waitNanos 借出耗时
+	 */
+	void borrowed(long waitNanos) {
+		borrowWait.record(waitNanos / 1000);
+		active.incrementAndGet();
+	}
+
+	/**
+	 * 借出连接失败：等待超时视为连接池耗尽，其余为建立连接失败
+	 */
+	void borrowFailed(Exception e) {
+		if (e.getCause() instanceof NoSuchElementException) {
+			exhausted.incrementAndGet();
+		} else {
+			connectFailures.incrementAndGet();
+		}
+	}
+
+	void returned() {
+		active.decrementAndGet();
+	}
+
+	void discarded() {
+		active.decrementAndGet();
+		brokenReturns.incrementAndGet();
+	}
+
+	public int getMaxActive() {
+		return maxActive;
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * 已创建未关闭的连接中未借出的部分
+	 */
+	public int getIdle() {
+		return (int) Math.max(0, factory.getCreated() - factory.getDestroyed() - active.get());
+	}
+
+	public long getBorrows() {
+		return borrowWait.getCount();
+	}
+
+	public double getBorrowWaitMean() {
+		return borrowWait.getMean();
+	}
+
+	public long getBorrowWaitP50() {
+		return borrowWait.getPercentile(50);
+	}
+
+	public long getBorrowWaitP99() {
+		return borrowWait.getPercentile(99);
+	}
+
+	public long getBorrowWaitP999() {
+		return borrowWait.getPercentile(99.9);
+	}
+
+	public long getBorrowWaitMax() {
+		return borrowWait.getMax();
+	}
+
+	public long getExhausted() {
+		return exhausted.get();
+	}
+
+	public long getConnectFailures() {
+		return connectFailures.get();
+	}
+
+	public long getBrokenReturns() {
+		return brokenReturns.get();
+	}
+
+	public long getValidations() {
+		return health.getValidations();
+	}
+
+	public long getValidationFailures() {
+		return health.getValidationFailures();
+	}
+
+	public long getCreated() {
+		return factory.getCreated();
+	}
+
+	public long getDestroyed() {
+		return factory.getDestroyed();
+	}
+
+	/**
+	 * 最近一个统计窗口（至少一分钟）内平均每分钟创建的连接数，稳定运行时应接近0
+	 */
+	public synchronized double getCreatedPerMinute() {
+		long now = System.currentTimeMillis();
+		if (now - windowStart >= MINUTE_MILLIS) {
+			long created = factory.getCreated();
+			createdPerMinute = (double) (created - windowCreated) * MINUTE_MILLIS / (now - windowStart);
+			windowCreated = created;
+			windowStart = now;
+		}
+		return createdPerMinute;
+	}
+}
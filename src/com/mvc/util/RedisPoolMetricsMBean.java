@@ -0,0 +1,46 @@
+package com.mvc.util;
+
+/**
+ * redis连接池的JMX监控接口，借出等待时间单位为微秒
+ * 
+ * @author 23006
+ *
+ */
+public interface RedisPoolMetricsMBean {
+
+	int getMaxActive();
+
+	int getMaxIdle();
+
+	int getActive();
+
+	int getIdle();
+
+	long getBorrows();
+
+	double getBorrowWaitMean();
+
+	long getBorrowWaitP50();
+
+	long getBorrowWaitP99();
+
+	long getBorrowWaitP999();
+
+	long getBorrowWaitMax();
+
+	long getExhausted();
+
+	long getConnectFailures();
+
+	long getBrokenReturns();
+
+	long getValidations();
+
+	long getValidationFailures();
+
+	long getCreated();
+
+	long getDestroyed();
+
+	double getCreatedPerMinute();
+}
@@ -0,0 +1,98 @@
+package com.mvc.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * redis连接池预热：启动时并行建立并验证一批连接，预先加载lua脚本，使第一批请求不用承担建连和认证的耗时
+ *
+ * @author 23006
+ *
+ */
+final class RedisPoolWarmer {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisPoolWarmer.class);
+
+	private final RedisPool pool;
+	private final int connections;
+	private final long timeoutMillis;
+
+	/**
+	 * @param pool
+	 * @param connections 预先建立的连接数，不应超过最大空闲连接数，否则多出的连接归还时会被关闭
+	 * @param timeoutMillis 等待全部连接建立的最长时间
+	 */
+	RedisPoolWarmer(RedisPool pool, int connections, long timeoutMillis) {
+		this.pool = pool;
+		this.connections = connections;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * 同时借出connections个连接并各自PING一次，全部借出后再一起归还，保证建立的是不同的连接；
+	 * 第一个连接上加载scripts
+	 *
+	 * @return 全部连接验证成功返回true
+	 */
+	boolean warmUp(final List<String> scripts) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(connections);
+		// 全部借出前不归还，否则后面的线程会借到同一个连接
+		final CountDownLatch borrowed = new CountDownLatch(connections);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(connections);
+		try {
+			for (int i = 0; i < connections; i++) {
+				final boolean first = i == 0;
+				results.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() throws Exception {
+						Jedis jedis = null;
+						boolean ok = false;
+						try {
+							jedis = pool.getResource();
+							ok = "PONG".equals(jedis.ping());
+							if (ok && first) {
+								for (String script : scripts) {
+									jedis.scriptLoad(script);
+								}
+							}
+						} catch (Exception e) {
+							logger.error("redis连接预热失败：" + e.getMessage());
+						} finally {
+							borrowed.countDown();
+							borrowed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+							if (jedis != null) {
+								if (ok) {
+									pool.returnResource(jedis);
+								} else {
+									pool.returnBrokenResource(jedis);
+								}
+							}
+						}
+						return ok;
+					}
+				}));
+			}
+			boolean ok = true;
+			for (Future<Boolean> result : results) {
+				try {
+					ok &= result.get();
+				} catch (Exception e) {
+					ok = false;
+				}
+			}
+			return ok;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.mvc.util;
+
+/**
+ * redis值的序列化方式，用于RedisUtil的二进制方法
+ * 
+ * @author 23006
+ *
+ */
+public interface RedisSerializer<T> {
+
+	/**
+	 * @param value 不为null
+	 */
+	byte[] serialize(T value);
+
+	/**
+	 * @param bytes 不为null
+	 * @throws IllegalArgumentException 数据格式错误
+	 */
+	T deserialize(byte[] bytes);
+}
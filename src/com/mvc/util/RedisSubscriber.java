@@ -0,0 +1,146 @@
+package com.mvc.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * 
+ * redis订阅公共类
+ * <p>
+ * 每个节点只保持一个订阅连接，由后台线程维护，连接断开后自动重连；
+ * 收到的消息按频道分发给注册的监听器
+ * </p>
+ * 
+ * @author 23006
+ *
+ */
+public final class RedisSubscriber {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisSubscriber.class);
+
+	/**
+	 * 重连间隔，单位毫秒
+	 */
+	private static final long RETRY_MILLIS = 3000L;
+
+	private static final ConcurrentHashMap<String, List<MessageListener>> listeners = new ConcurrentHashMap<String, List<MessageListener>>();
+
+	private static volatile JedisPubSub pubSub;
+
+	/**
+	 * 当前订阅连接已请求订阅的频道
+	 */
+	private static Set<String> requested = new HashSet<String>();
+
+	private static Thread thread;
+
+	private RedisSubscriber() {
+	}
+
+	/**
+	 * 频道消息监听器
+	 */
+	public interface MessageListener {
+		void onMessage(String channel, String message);
+	}
+
+	/**
+	 * 为频道注册监听器，首次注册时启动订阅线程
+	 * 
+	 * @param channel
+	 * @param listener
+	 */
+	public static synchronized void addListener(String channel, MessageListener listener) {
+		List<MessageListener> list = listeners.get(channel);
+		if (list == null) {
+			list = new CopyOnWriteArrayList<MessageListener>();
+			listeners.put(channel, list);
+			JedisPubSub current = pubSub;
+			if (current != null && current.isSubscribed() && requested.add(channel)) {
+				current.subscribe(channel);
+			}
+		}
+		list.add(listener);
+		if (thread == null) {
+			thread = new Thread(new Runnable() {
+				public void run() {
+					loop();
+				}
+			}, "redis-subscriber");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private static void loop() {
+		while (true) {
+			try {
+				JedisPubSub current = new JedisPubSub() {
+					public void onMessage(String channel, String message) {
+						dispatch(channel, message);
+					}
+
+					public void onPMessage(String pattern, String channel, String message) {
+					}
+
+					public void onSubscribe(String channel, int subscribedChannels) {
+						// 订阅建立前注册的频道在此补订
+						synchronized (RedisSubscriber.class) {
+							for (String missing : listeners.keySet()) {
+								if (requested.add(missing)) {
+									subscribe(missing);
+								}
+							}
+						}
+					}
+
+					public void onUnsubscribe(String channel, int subscribedChannels) {
+					}
+
+					public void onPUnsubscribe(String pattern, int subscribedChannels) {
+					}
+
+					public void onPSubscribe(String pattern, int subscribedChannels) {
+					}
+				};
+				String[] channels;
+				synchronized (RedisSubscriber.class) {
+					pubSub = current;
+					channels = listeners.keySet().toArray(new String[0]);
+					requested = new HashSet<String>(Arrays.asList(channels));
+				}
+				RedisUtil.subscribe(current, channels);
+			} catch (Exception e) {
+				logger.error("redis订阅断开，" + RETRY_MILLIS + "毫秒后重连：" + e.getMessage());
+			}
+			try {
+				Thread.sleep(RETRY_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private static void dispatch(String channel, String message) {
+		List<MessageListener> list = listeners.get(channel);
+		if (list == null) {
+			return;
+		}
+		for (MessageListener listener : list) {
+			try {
+				listener.onMessage(channel, message);
+			} catch (Exception e) {
+				logger.error("处理频道" + channel + "的消息失败：" + e.getMessage());
+			}
+		}
+	}
+}
@@ -1,17 +1,40 @@
 package com.mvc.util;
 
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Tuple;
 import redis.clients.jedis.BinaryClient.LIST_POSITION;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 
 /**
  * 
@@ -19,6 +42,10 @@ import redis.clients.jedis.exceptions.JedisConnectionException;
  * <p>
  * ①String类型方法名无前缀 ②Hash类型方法名前加h ③List类型方法名前加l ④Set类型方法名前加s ⑤Sort Set类型方法名前加z
  * </p>
+ * <p>
+ * 配置redis_nodes多个节点时key按一致性哈希分布到各节点：mget、mset、del按节点拆分并行执行；
+ * 其余涉及多个key的命令和脚本要求key位于同一节点(可用{hash tag})，否则抛出UnsupportedOperationException；发布订阅使用第一个节点。
+ * </p>
  * 
  * @author tangming
  * @date 2015-12-7
@@ -26,7 +53,239 @@ import redis.clients.jedis.exceptions.JedisConnectionException;
 public final class RedisUtil {
 
 	private static final Logger logger = LoggerFactory.getLogger(RedisUtil.class);
-	private static JedisPool jedisPool = null;
+
+	/**
+	 * redis节点及各自的连接池，未分片时只有一个；发布订阅、不指定key的操作使用第一个节点
+	 */
+	private static RedisNode[] nodes = null;
+
+	/**
+	 * 分片路由，只有一个节点时为null
+	 */
+	private static ShardRouter router = null;
+
+	/**
+	 * 分片模式下并行执行各节点的批量操作
+	 */
+	private static ExecutorService shardExecutor = null;
+
+	/**
+	 * 命令耗时统计
+	 */
+	private static CommandMetrics commands = null;
+
+	/**
+	 * 近端缓存，未开启时为null
+	 */
+	private static NearCache nearCache = null;
+
+	/**
+	 * 近端缓存失效通知的后台发布，未开启近端缓存时为null
+	 */
+	private static InvalidationPublisher invalidations = null;
+
+	/**
+	 * 连接池是否已预热完成
+	 */
+	private static volatile boolean ready;
+
+	/**
+	 * 预热失败后的重试间隔，单位毫秒
+	 */
+	private static final long WARM_UP_RETRY_MILLIS = 3000L;
+
+	/**
+	 * 连接健康检查
+	 */
+	private static PoolHealthChecker health = null;
+
+	/**
+	 * 当前线程在execute中借出的连接
+	 */
+	private static final ThreadLocal<Binding> BINDING = new ThreadLocal<Binding>() {
+		@Override
+		protected Binding initialValue() {
+			return new Binding();
+		}
+	};
+
+	/**
+	 * 借出连接时验证失败的最大重试次数
+	 */
+	private static final int BORROW_ATTEMPTS = 3;
+
+	/**
+	 * 管道默认每批命令数
+	 */
+	private static int pipelineChunkSize = 1000;
+
+	/**
+	 * 游标遍历默认每页的COUNT
+	 */
+	private static int scanCount = 1000;
+
+	/**
+	 * 近端缓存失效通知频道，消息为换行分隔的key
+	 */
+	private static final String INVALIDATE_CHANNEL = "redis:invalidate";
+
+	/**
+	 * 脚本返回值:值已扣减到0,无法继续扣减
+	 */
+	public static final long STOCK_EMPTY = -1L;
+
+	/**
+	 * 脚本返回值:key不存在
+	 */
+	public static final long KEY_NOT_EXISTS = -2L;
+
+	/**
+	 * 所有lua脚本，预热时全部加载；脚本常量都通过{@link #script(String)}登记，新增的脚本不会漏掉
+	 */
+	private static final List<String> SCRIPTS = new ArrayList<String>();
+
+	/*
+	 * 以下脚本的KEYS中可以在数据key之后附带版本号key,数据被修改时同一脚本内把版本号加1并返回加1后的版本号
+	 * (未修改或未附带时为0),调用方据此判断多个修改的先后;
+	 * 部分脚本在版本号key之后还可以附带代数key(数据被重新初始化的次数),用于识别租约领取时的数据
+	 */
+	private static final String DECR_IF_POSITIVE_SCRIPT = script("local v = tonumber(redis.call('get', KEYS[1])) "
+			+ "if v == nil then return {-2, 0} end " + "if v <= 0 then return {-1, 0} end " + "local ver = 0 "
+			+ "if KEYS[2] then ver = redis.call('incr', KEYS[2]) end " + "return {redis.call('decr', KEYS[1]), ver}");
+	private static final String DECR_IF_POSITIVE_SHA = sha1(DECR_IF_POSITIVE_SCRIPT);
+
+	private static final String INCR_IF_EXISTS_SCRIPT = script(
+			"if KEYS[3] and (tonumber(redis.call('get', KEYS[3])) or 0) "
+			+ "~= tonumber(ARGV[2]) then return {-2, 0} end " + "if redis.call('exists', KEYS[1]) == 1 then "
+			+ "local ver = 0 " + "if KEYS[2] then ver = redis.call('incr', KEYS[2]) end "
+			+ "return {redis.call('incrby', KEYS[1], ARGV[1]), ver} end " + "return {-2, 0}");
+	private static final String INCR_IF_EXISTS_SHA = sha1(INCR_IF_EXISTS_SCRIPT);
+
+	private static final String DECR_UP_TO_SCRIPT = script("local v = tonumber(redis.call('get', KEYS[1])) "
+			+ "if v == nil then return {-2, 0, 0} end " + "local n = tonumber(ARGV[1]) " + "if v < n then n = v end "
+			+ "if n <= 0 then return {0, v, 0} end " + "local ver = 0 "
+			+ "if KEYS[2] then ver = redis.call('incr', KEYS[2]) end "
+			+ "local res = {n, redis.call('decrby', KEYS[1], n), ver} "
+			+ "if KEYS[3] then res[4] = tonumber(redis.call('get', KEYS[3])) or 0 end " + "return res");
+	private static final String DECR_UP_TO_SHA = sha1(DECR_UP_TO_SCRIPT);
+
+	private static final String DECR_ALL_SCRIPT = script("local n = #ARGV " + "local res = {1} " + "for i = 1, n do "
+			+ "local v = tonumber(redis.call('get', KEYS[i])) " + "if v == nil then res[1] = 0 res[i + 1] = -2 "
+			+ "else if v < tonumber(ARGV[i]) then res[1] = 0 end res[i + 1] = v end " + "end "
+			+ "if res[1] == 1 then for i = 1, n do res[i + 1] = redis.call('decrby', KEYS[i], ARGV[i]) "
+			+ "if KEYS[n + i] then res[n + i + 1] = redis.call('incr', KEYS[n + i]) end end end " + "return res");
+	private static final String DECR_ALL_SHA = sha1(DECR_ALL_SCRIPT);
+
+	/*
+	 * KEYS依次为n组、每组ARGV[1]个key,同一组的key是同一个值的各部分,之后可以附带与这n组key一一对应的版本号key,
+	 * 扣减了的key对应的版本号加1;ARGV[i + 1]为第i组的扣减数量
+	 */
+	private static final String DECR_ALL_SUMS_SCRIPT = script("local m = tonumber(ARGV[1]) " + "local n = #ARGV - 1 "
+			+ "local res = {1} " + "for i = 1, n do " + "local sum = 0 " + "local found = false " + "for j = 1, m do "
+			+ "local v = tonumber(redis.call('get', KEYS[(i - 1) * m + j])) "
+			+ "if v ~= nil then found = true sum = sum + v end " + "end "
+			+ "if not found then res[1] = 0 res[i + 1] = -2 "
+			+ "else if sum < tonumber(ARGV[i + 1]) then res[1] = 0 end res[i + 1] = sum end " + "end "
+			+ "if res[1] == 1 then for i = 1, n do " + "local need = tonumber(ARGV[i + 1]) " + "for j = 1, m do "
+			+ "local idx = (i - 1) * m + j " + "local v = tonumber(redis.call('get', KEYS[idx])) "
+			+ "if need > 0 and v ~= nil and v > 0 then " + "local t = need " + "if v < t then t = v end "
+			+ "redis.call('decrby', KEYS[idx], t) need = need - t "
+			+ "if KEYS[n * m + idx] then redis.call('incr', KEYS[n * m + idx]) end end " + "end "
+			+ "res[i + 1] = res[i + 1] - tonumber(ARGV[i + 1]) end end " + "return res");
+	private static final String DECR_ALL_SUMS_SHA = sha1(DECR_ALL_SUMS_SCRIPT);
+
+	/*
+	 * KEYS前ARGV[1]个为同一个值的各部分,最后一个为版本号key;返回{各key之和(都不存在为-2), 版本号(不存在为0)}
+	 */
+	private static final String SUM_WITH_VERSION_SCRIPT = script("local m = tonumber(ARGV[1]) " + "local sum = 0 "
+			+ "local found = false " + "for i = 1, m do " + "local v = tonumber(redis.call('get', KEYS[i])) "
+			+ "if v ~= nil then found = true sum = sum + v end " + "end " + "if not found then sum = -2 end "
+			+ "return {sum, tonumber(redis.call('get', KEYS[m + 1])) or 0}");
+	private static final String SUM_WITH_VERSION_SHA = sha1(SUM_WITH_VERSION_SCRIPT);
+
+	private static final String MSET_VERSIONED_SCRIPT = script("local n = #ARGV " + "for i = 1, n do "
+			+ "redis.call('set', KEYS[i], ARGV[i]) end " + "local vers = {} "
+			+ "for i = n + 1, #KEYS do vers[#vers + 1] = redis.call('incr', KEYS[i]) end " + "return vers");
+	private static final String MSET_VERSIONED_SHA = sha1(MSET_VERSIONED_SCRIPT);
+
+	/*
+	 * 以下脚本操作hash中的field,ARGV中可以附带同一hash中的版本号field,数据被修改时同一脚本内把版本号加1并返回,
+	 * 返回值的格式与对应的字符串key脚本相同
+	 */
+	private static final String HDECR_IF_POSITIVE_SCRIPT = script(
+			"local v = tonumber(redis.call('hget', KEYS[1], ARGV[1])) "
+			+ "if v == nil then return {-2, 0} end " + "if v <= 0 then return {-1, 0} end " + "local ver = 0 "
+			+ "if ARGV[2] then ver = redis.call('hincrby', KEYS[1], ARGV[2], 1) end "
+			+ "return {redis.call('hincrby', KEYS[1], ARGV[1], -1), ver}");
+	private static final String HDECR_IF_POSITIVE_SHA = sha1(HDECR_IF_POSITIVE_SCRIPT);
+
+	private static final String HINCR_IF_EXISTS_SCRIPT = script("if ARGV[4] and "
+			+ "(tonumber(redis.call('hget', KEYS[1], ARGV[4])) or 0) ~= tonumber(ARGV[5]) then return {-2, 0} end "
+			+ "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then " + "local ver = 0 "
+			+ "if ARGV[3] then ver = redis.call('hincrby', KEYS[1], ARGV[3], 1) end "
+			+ "return {redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2]), ver} end " + "return {-2, 0}");
+	private static final String HINCR_IF_EXISTS_SHA = sha1(HINCR_IF_EXISTS_SCRIPT);
+
+	private static final String HDECR_UP_TO_SCRIPT = script("local v = tonumber(redis.call('hget', KEYS[1], ARGV[1])) "
+			+ "if v == nil then return {-2, 0, 0} end " + "local n = tonumber(ARGV[2]) " + "if v < n then n = v end "
+			+ "if n <= 0 then return {0, v, 0} end " + "local ver = 0 "
+			+ "if ARGV[3] then ver = redis.call('hincrby', KEYS[1], ARGV[3], 1) end "
+			+ "local res = {n, redis.call('hincrby', KEYS[1], ARGV[1], -n), ver} "
+			+ "if ARGV[4] then res[4] = tonumber(redis.call('hget', KEYS[1], ARGV[4])) or 0 end " + "return res");
+	private static final String HDECR_UP_TO_SHA = sha1(HDECR_UP_TO_SCRIPT);
+
+	private static final String HGET_WITH_VERSION_SCRIPT = script(
+			"return {tonumber(redis.call('hget', KEYS[1], ARGV[1])) or -2, "
+			+ "tonumber(redis.call('hget', KEYS[1], ARGV[2])) or 0}");
+	private static final String HGET_WITH_VERSION_SHA = sha1(HGET_WITH_VERSION_SCRIPT);
+
+	/*
+	 * KEYS[i]为第i个field所在的hash,ARGV依次为n个field、n个扣减数量、可选的n个版本号field
+	 */
+	private static final String HDECR_ALL_SCRIPT = script("local n = #KEYS " + "local res = {1} " + "for i = 1, n do "
+			+ "local v = tonumber(redis.call('hget', KEYS[i], ARGV[i])) "
+			+ "if v == nil then res[1] = 0 res[i + 1] = -2 "
+			+ "else if v < tonumber(ARGV[n + i]) then res[1] = 0 end res[i + 1] = v end " + "end "
+			+ "if res[1] == 1 then for i = 1, n do "
+			+ "res[i + 1] = redis.call('hincrby', KEYS[i], ARGV[i], -tonumber(ARGV[n + i])) "
+			+ "if ARGV[2 * n + i] then res[n + i + 1] = redis.call('hincrby', KEYS[i], ARGV[2 * n + i], 1) end end end "
+			+ "return res");
+	private static final String HDECR_ALL_SHA = sha1(HDECR_ALL_SCRIPT);
+
+	/*
+	 * ARGV[1]为field数m,之后m组field,value,其余为版本号field
+	 */
+	private static final String HMSET_VERSIONED_SCRIPT = script("local m = tonumber(ARGV[1]) " + "for i = 1, m do "
+			+ "redis.call('hset', KEYS[1], ARGV[2 * i], ARGV[2 * i + 1]) end " + "local vers = {} "
+			+ "for i = 2 * m + 2, #ARGV do vers[#vers + 1] = redis.call('hincrby', KEYS[1], ARGV[i], 1) end "
+			+ "return vers");
+	private static final String HMSET_VERSIONED_SHA = sha1(HMSET_VERSIONED_SCRIPT);
+
+	/*
+	 * KEYS[2]起ARGV[3]个为版本号key,其余为数据key:把数据key的值之和写入hash KEYS[1]的field ARGV[1],
+	 * 各版本号key的值之和加1后写入field ARGV[2],再删除这些key
+	 */
+	private static final String MOVE_TO_HASH_SCRIPT = script("local k = tonumber(ARGV[3]) " + "local sum = 0 "
+			+ "local found = false " + "for i = k + 2, #KEYS do " + "local v = tonumber(redis.call('get', KEYS[i])) "
+			+ "if v ~= nil then sum = sum + v found = true end " + "end " + "if not found then return -2 end "
+			+ "local ver = 1 " + "for i = 2, k + 1 do ver = ver + (tonumber(redis.call('get', KEYS[i])) or 0) end "
+			+ "redis.call('hset', KEYS[1], ARGV[1], sum) " + "redis.call('hset', KEYS[1], ARGV[2], ver) "
+			+ "for i = 2, #KEYS do redis.call('del', KEYS[i]) end " + "return sum");
+	private static final String MOVE_TO_HASH_SHA = sha1(MOVE_TO_HASH_SCRIPT);
+
+	/*
+	 * 客户端不支持SCAN命令，在脚本内执行；ARGV依次为游标、pattern、COUNT，返回{下一游标, {key...}}
+	 */
+	private static final String SCAN_SCRIPT = script(
+			"return redis.call('scan', ARGV[1], 'match', ARGV[2], 'count', ARGV[3])");
+	private static final String SCAN_SHA = sha1(SCAN_SCRIPT);
+
+	/*
+	 * ARGV依次为命令(hscan/sscan/zscan)、游标、pattern、COUNT，返回{下一游标, {元素...}}
+	 */
+	private static final String COLLECTION_SCAN_SCRIPT = script("return redis.call(ARGV[1], KEYS[1], ARGV[2], "
+			+ "'match', ARGV[3], 'count', ARGV[4])");
+	private static final String COLLECTION_SCAN_SHA = sha1(COLLECTION_SCAN_SCRIPT);
 
 	/**
 	 * 初始化Redis连接池
@@ -47,230 +306,705 @@ public final class RedisUtil {
 			// 在borrow一个jedis实例时，是否提前进行validate操作；如果为true，则得到的jedis实例均是可用的
 			config.setTestOnBorrow(Boolean.parseBoolean(ReadProperties.getProperties("redis_test_on_borrow")));
 
-			// 创建连接池，访问密码如果未配置，则直接连接
-			if (ReadProperties.getProperties("redis_auth") == null || "".equals(ReadProperties.getProperties("redis_auth"))) {
-				jedisPool = new JedisPool(config, ReadProperties.getProperties("redis_ip"), Integer.parseInt(ReadProperties
-						.getProperties("redis_port")), Integer.parseInt(ReadProperties.getProperties("redis_timeout")));
+			// 后台驱逐线程定期验证空闲连接，只驱逐超出最小空闲数的连接
+			config.setTestWhileIdle(true);
+			config.setTimeBetweenEvictionRunsMillis(Long.parseLong(ReadProperties.getProperties(
+					"redis_idle_check_interval_millis", "30000")));
+			config.setNumTestsPerEvictionRun(-1);
+			config.setMinEvictableIdleTimeMillis(-1);
+			config.setSoftMinEvictableIdleTimeMillis(Long.parseLong(ReadProperties.getProperties(
+					"redis_idle_evict_millis", "60000")));
+
+			// 执行超过该时间的命令记录慢日志
+			commands = new CommandMetrics(Long.parseLong(ReadProperties.getProperties("redis_slow_command_millis", "10")));
+
+			pipelineChunkSize = Integer.parseInt(ReadProperties.getProperties("redis_pipeline_chunk_size", "1000"));
+
+			scanCount = Integer.parseInt(ReadProperties.getProperties("redis_scan_count", "1000"));
+
+			// 空闲超过该时间的连接借出时先PING
+			health = new PoolHealthChecker(Long.parseLong(ReadProperties.getProperties("redis_validate_idle_millis",
+					"30000")));
+
+			// 启动时预热的连接数，同时作为连接池保持的最小空闲连接数
+			int warmUpConnections = Math.min(config.maxIdle, Integer.parseInt(ReadProperties.getProperties(
+					"redis_warm_up_connections", "0")));
+			config.setMinIdle(Math.max(0, warmUpConnections));
+
+			// 创建连接池，访问密码如果未配置，则直接连接；配置了多个节点时每个节点一个连接池，key按一致性哈希分布
+			String nodeList = ReadProperties.getProperties("redis_nodes", "").trim();
+			List<String> addresses = nodeList.length() == 0 ? Collections.singletonList(ReadProperties
+					.getProperties("redis_ip") + ":" + ReadProperties.getProperties("redis_port")) : Arrays
+					.asList(nodeList.split("\\s*,\\s*"));
+			RedisNode[] created = new RedisNode[addresses.size()];
+			for (int i = 0; i < created.length; i++) {
+				String address = addresses.get(i).trim();
+				int colon = address.lastIndexOf(':');
+				RedisConnectionFactory factory = new RedisConnectionFactory(address.substring(0, colon),
+						Integer.parseInt(address.substring(colon + 1)), Integer.parseInt(ReadProperties
+								.getProperties("redis_timeout")), ReadProperties.getProperties("redis_auth"));
+				RedisPoolMetrics poolMetrics = new RedisPoolMetrics(config.maxActive, config.maxIdle, factory, health);
+				ManagementFactory.getPlatformMBeanServer().registerMBean(poolMetrics, new ObjectName(created.length == 1
+						? "com.mvc:type=RedisPool" : "com.mvc:type=RedisPool,node=" + ObjectName.quote(address)));
+				created[i] = new RedisNode(address, new RedisPool(config, factory), poolMetrics);
+			}
+			if (created.length > 1) {
+				router = new ShardRouter(addresses);
+				shardExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "redis-shard-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+			nodes = created;
+			logger.info("redis连接池创建成功，共" + created.length + "个节点。");
+
+			// 开启近端缓存，写操作及其他节点的失效通知会清除对应的key
+			if (Boolean.parseBoolean(ReadProperties.getProperties("near_cache_enabled", "false"))) {
+				int nearCacheSize = Integer.parseInt(ReadProperties.getProperties("near_cache_max_size", "10000"));
+				final NearCache cache = new NearCache(nearCacheSize, Long.parseLong(ReadProperties.getProperties(
+						"near_cache_ttl_millis", "1000")));
+				RedisSubscriber.addListener(INVALIDATE_CHANNEL, new RedisSubscriber.MessageListener() {
+					public void onMessage(String channel, String message) {
+						cache.invalidate(message.split("\n"));
+					}
+				});
+				ManagementFactory.getPlatformMBeanServer().registerMBean(cache, new ObjectName("com.mvc:type=NearCache"));
+				// 等待发布的key数不超过缓存容量
+				invalidations = new InvalidationPublisher(INVALIDATE_CHANNEL, Math.max(1, nearCacheSize));
+				invalidations.start();
+				nearCache = cache;
+				logger.info("redis近端缓存已开启。");
+			}
 
-				// 配置了访问密码，需要用访问密码登录
+			if (warmUpConnections > 0) {
+				startWarmUp(warmUpConnections);
 			} else {
-				jedisPool = new JedisPool(config, ReadProperties.getProperties("redis_ip"), Integer.parseInt(ReadProperties
-						.getProperties("redis_port")), Integer.parseInt(ReadProperties.getProperties("redis_timeout")), ReadProperties
-						.getProperties("redis_auth"));
+				ready = true;
 			}
-			logger.info("redis连接池创建成功。");
 		} catch (Exception e) {
 			e.printStackTrace();
 			logger.error("redis连接池创建失败。失败原因：" + e.getMessage());
 		}
 	}
 
+	/**
+	 * 连接池监控数据，分片模式下为第一个节点的；连接池创建失败时返回null
+	 */
+	public static RedisPoolMetrics getPoolMetrics() {
+		return nodes == null ? null : nodes[0].metrics;
+	}
+
+	/**
+	 * 各节点的连接池监控数据，节点地址 -> 监控数据；连接池创建失败时为空
+	 */
+	public static Map<String, RedisPoolMetrics> getNodePoolMetrics() {
+		Map<String, RedisPoolMetrics> res = new LinkedHashMap<String, RedisPoolMetrics>();
+		if (nodes != null) {
+			for (RedisNode node : nodes) {
+				res.put(node.address, node.metrics);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * 是否配置了多个节点
+	 */
+	public static boolean isSharded() {
+		return router != null;
+	}
+
+	/**
+	 * 各命令的耗时直方图，命令名 -> 直方图，单位微秒
+	 */
+	public static Map<String, LatencyHistogram> getCommandLatencies() {
+		return commands == null ? Collections.<String, LatencyHistogram> emptyMap() : commands.getHistograms();
+	}
+
+	/**
+	 * 慢命令总数
+	 */
+	public static long getSlowCommands() {
+		return commands == null ? 0 : commands.getSlowCommands();
+	}
+
+	/**
+	 * 连接池是否已预热完成，未开启预热时始终为true；负载均衡的健康检查据此决定是否向本节点转发请求
+	 */
+	public static boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * 在后台线程中预热连接池：建立连接、加载lua脚本、读取需要预先缓存的key，失败时间隔一段时间重试，
+	 * 所有节点都成功后标记为就绪
+	 */
+	private static void startWarmUp(int connections) {
+		final List<RedisPoolWarmer> warmers = new ArrayList<RedisPoolWarmer>(nodes.length);
+		for (RedisNode node : nodes) {
+			warmers.add(new RedisPoolWarmer(node.pool, connections, Long.parseLong(ReadProperties.getProperties(
+					"redis_warm_up_timeout_millis", "10000"))));
+		}
+		final String primeKeys = ReadProperties.getProperties("redis_warm_up_keys", "");
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				long start = System.currentTimeMillis();
+				while (!ready) {
+					try {
+						boolean ok = true;
+						for (RedisPoolWarmer warmer : warmers) {
+							ok &= warmer.warmUp(SCRIPTS);
+						}
+						if (ok) {
+							if (primeKeys.trim().length() > 0) {
+								mget(primeKeys.trim().split("\\s*,\\s*"));
+							}
+							ready = true;
+							logger.info("redis连接池预热完成，耗时" + (System.currentTimeMillis() - start) + "毫秒。");
+						} else {
+							Thread.sleep(WARM_UP_RETRY_MILLIS);
+						}
+					} catch (InterruptedException e) {
+						return;
+					} catch (Exception e) {
+						logger.error("redis连接池预热失败：" + e.getMessage());
+						try {
+							Thread.sleep(WARM_UP_RETRY_MILLIS);
+						} catch (InterruptedException e1) {
+							return;
+						}
+					}
+				}
+			}
+		}, "redis-warm-up");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
 	/**
 	 * 释放jedis资源
 	 * 
 	 * @param jedis
 	 */
 	public static void returnResource(final Jedis jedis) {
-		if (jedis != null && jedisPool != null) {
-			jedisPool.returnResource(jedis);
+		if (jedis != null && nodes != null) {
+			returnResource(nodeOf(jedis), jedis);
+		}
+	}
+
+	private static void returnResource(int node, Jedis jedis) {
+		if (jedis != null) {
+			nodes[node].metrics.returned();
+			health.returned(jedis);
+			nodes[node].pool.returnResource(jedis);
+		}
+	}
+
+	/**
+	 * 连接所属的节点
+	 */
+	private static int nodeOf(Jedis jedis) {
+		if (nodes.length > 1) {
+			String address = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
+			for (int i = 0; i < nodes.length; i++) {
+				if (nodes[i].address.equals(address)) {
+					return i;
+				}
+			}
 		}
+		return 0;
 	}
 
 	/**
+	 * 在一个借出的连接上执行一组命令，只借出、归还一次连接。
 	 * <p>
-	 * 通过key获取储存在redis中的value
+	 * 回调中再调用RedisUtil的其他方法时复用同一个连接，因此DAO可以把多次调用合并到一次借出中，
+	 * 近端缓存、脚本等行为不变。
 	 * </p>
 	 * <p>
-	 * 并释放连接
+	 * 连接异常时丢弃连接并抛出JedisConnectionException；其他异常打印后返回null，与其他方法一致。
 	 * </p>
 	 * 
-	 * @param key
-	 * @return 成功返回value 失败返回null
+	 * @param callback
+	 * @return 回调的返回值，异常返回null
 	 */
-	public static String get(String key) {
-		Jedis jedis = null;
-		String value = null;
-		try {
-			jedis = jedisPool.getResource();
-			value = jedis.get(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return value;
+	public static <T> T execute(JedisCallback<T> callback) {
+		return execute(0, "execute", null, callback);
+	}
+
+	/**
+	 * 同{@link #execute(JedisCallback)}，连接借自key所在的节点；分片模式下回调中访问的key都与之位于同一节点时只借出一个连接，
+	 * 访问其他节点的key时另外借出该节点的连接
+	 * 
+	 * @param key 决定借出哪个节点的连接
+	 * @param callback
+	 * @return 回调的返回值，异常返回null
+	 */
+	public static <T> T execute(String key, JedisCallback<T> callback) {
+		return execute(nodeFor(key), "execute", key, callback);
+	}
+
+	/**
+	 * 以默认批大小在管道中执行一组命令，见{@link #pipelined(int, PipelineCallback)}
+	 * 
+	 * @param callback
+	 * @return 全部命令发送并读取回复返回true，异常返回false
+	 */
+	public static boolean pipelined(PipelineCallback callback) {
+		return pipelined(pipelineChunkSize, callback);
 	}
 
 	/**
+	 * 以默认批大小在key所在节点上以管道执行一组命令；分片模式下管道中的key都必须与之位于同一节点(使用相同的hash tag)
+	 * 
+	 * @param key 决定管道所在的节点
+	 * @param callback
+	 * @return 全部命令发送并读取回复返回true，异常返回false
+	 */
+	public static boolean pipelined(String key, PipelineCallback callback) {
+		return pipelined(nodeFor(key), key, pipelineChunkSize, callback);
+	}
+
+	/**
+	 * 在一个借出的连接上以管道执行一组命令，每攒够chunkSize条命令发送一次并读取回复，回调返回后读取剩余回复。
 	 * <p>
-	 * 向redis存入key和value,并释放连接资源
+	 * 回调中得到的Response在所在批次完成后可以get()，单条命令的错误在get()时抛出JedisDataException；
+	 * 回调中直接调用RedisUtil的其他方法时先完成当前批次，再在同一连接上执行。
 	 * </p>
 	 * <p>
-	 * 如果key已经存在 则覆盖
+	 * 连接异常时丢弃连接并抛出JedisConnectionException；其他异常打印后返回false。
+	 * </p>
+	 * <p>
+	 * 分片模式下在第一个节点上执行，管道中的key都必须位于该节点；其他节点使用{@link #pipelined(String, PipelineCallback)}
 	 * </p>
 	 * 
-	 * @param key
-	 * @param value
-	 * @return 成功 返回OK 失败返回 0
+	 * @param chunkSize 每批命令数，批越大往返越少，但客户端和服务端缓存的回复越多
+	 * @param callback
+	 * @return 全部命令发送并读取回复返回true，异常返回false
 	 */
-	public static String set(String key, String value) {
-		Jedis jedis = null;
-		try {
-			jedis = jedisPool.getResource();
-			return jedis.set(key, value);
+	public static boolean pipelined(int chunkSize, PipelineCallback callback) {
+		return pipelined(0, null, chunkSize, callback);
+	}
+
+	private static boolean pipelined(final int node, String key, final int chunkSize, final PipelineCallback callback) {
+		Boolean res = execute(node, "pipeline", key, new JedisCallback<Boolean>() {
+			public Boolean doInRedis(Jedis jedis) {
+				Binding binding = BINDING.get();
+				RedisPipeline outer = binding.pipeline;
+				RedisPipeline pipeline = new RedisPipeline(jedis, chunkSize, node);
+				binding.pipeline = pipeline;
+				try {
+					callback.doInPipeline(pipeline);
+				} finally {
+					try {
+						// 回调异常时也读完已发送命令的回复，连接才能继续使用
+						pipeline.sync();
+					} finally {
+						binding.pipeline = outer;
+					}
+				}
+				return Boolean.TRUE;
+			}
+		});
+		return res != null;
+	}
+
+	/**
+	 * 执行回调并按命令名记录耗时
+	 * 
+	 * @param command 命令名
+	 * @param key 命令操作的key，记录慢日志用
+	 */
+	private static <T> T execute(String command, Object key, JedisCallback<T> callback) {
+		return execute(nodeFor(key), command, key, callback);
+	}
+
+	/**
+	 * 在指定节点的连接上执行回调并按命令名记录耗时
+	 * 
+	 * @param node 节点下标
+	 * @param command 命令名
+	 * @param key 命令操作的key，记录慢日志用
+	 */
+	private static <T> T execute(int node, String command, Object key, JedisCallback<T> callback) {
+		Binding binding = BINDING.get();
+		if (binding.jedis != null && binding.node == node) {
+			// 外层execute已借出连接，直接复用，由外层归还
+			if (binding.pipeline != null) {
+				// 外层管道中还有未读取的回复，先读完才能在同一连接上直接执行命令
+				binding.pipeline.sync();
+			}
+			long start = System.nanoTime();
+			try {
+				return callback.doInRedis(binding.jedis);
+			} catch (JedisConnectionException e1) {
+				throw e1;
+			} catch (UnsupportedOperationException e) {
+				throw e;
+			} catch (Exception e) {
+				if (!(e instanceof JedisDataException)) {
+					binding.broken = true;
+				}
+				e.printStackTrace();
+				return null;
+			} finally {
+				commands.record(command, key, start);
+			}
+		}
+		// 外层借出的是其他节点的连接时，另外借出本节点的连接，结束后恢复外层的绑定
+		Jedis outerJedis = binding.jedis;
+		int outerNode = binding.node;
+		boolean outerBroken = binding.broken;
+		RedisPipeline outerPipeline = binding.pipeline;
+		Jedis jedis = null;
+		try {
+			jedis = getResource(node);
+			binding.jedis = jedis;
+			binding.node = node;
+			binding.broken = false;
+			binding.pipeline = null;
+			long start = System.nanoTime();
+			T res;
+			try {
+				res = callback.doInRedis(jedis);
+			} finally {
+				commands.record(command, key, start);
+			}
+			if (binding.broken) {
+				discard(node, jedis);
+				jedis = null;
+			}
+			return res;
 		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
+			jedis = discardIfBroken(node, jedis, e1);
 			e1.printStackTrace();
 			throw new JedisConnectionException("redis连接失败");
+		} catch (UnsupportedOperationException e) {
+			// 分片模式下跨节点的操作，属于调用方的错误
+			throw e;
 		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
+			jedis = discardIfBroken(node, jedis, e);
 			e.printStackTrace();
-			return "0";
+			return null;
 		} finally {
-			returnResource(jedis);
+			binding.jedis = outerJedis;
+			binding.node = outerNode;
+			binding.broken = outerBroken;
+			binding.pipeline = outerPipeline;
+			returnResource(node, jedis);
 		}
 	}
 
 	/**
-	 * <p>
-	 * 删除指定的key,也可以传入一个包含key的数组
-	 * </p>
+	 * key所在节点的下标；key可以是单个key，也可以是一组必须位于同一节点的key
 	 * 
-	 * @param keys 一个key 也可以使 string 数组
-	 * @return 返回删除成功的个数
+	 * @param key String、byte[]、Object[]、Collection、Map(按key)，null表示第一个节点
+	 * @throws UnsupportedOperationException 分片模式下一组key位于多个节点
 	 */
-	public static Long del(String... keys) {
-		Jedis jedis = null;
-		try {
-			jedis = jedisPool.getResource();
-			return jedis.del(keys);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-			return 0L;
-		} finally {
-			returnResource(jedis);
+	static int nodeFor(Object key) {
+		if (router == null || key == null) {
+			return 0;
+		}
+		if (key instanceof String) {
+			return router.nodeFor((String) key);
+		}
+		if (key instanceof byte[]) {
+			return router.nodeFor(SafeEncoder.encode((byte[]) key));
+		}
+		Iterable<?> keys;
+		if (key instanceof Object[]) {
+			keys = Arrays.asList((Object[]) key);
+		} else if (key instanceof Map) {
+			keys = ((Map<?, ?>) key).keySet();
+		} else if (key instanceof Collection) {
+			keys = (Collection<?>) key;
+		} else {
+			return 0;
+		}
+		int node = -1;
+		for (Object k : keys) {
+			int n = nodeFor(k);
+			if (node >= 0 && n != node) {
+				throw new UnsupportedOperationException("分片模式下一次操作的多个key必须位于同一节点，可用{hash tag}使相关的key位于同一节点："
+						+ key);
+			}
+			node = n;
 		}
+		return Math.max(node, 0);
 	}
 
 	/**
-	 * <p>
-	 * 通过key向指定的value值追加值
-	 * </p>
+	 * 按所在节点拆分一组key
 	 * 
-	 * @param key
-	 * @param str
-	 * @return 成功返回 添加后value的长度 失败 返回 添加的 value 的长度 异常返回0L
+	 * @param keys String或byte[]
+	 * @return 每个节点一组key的下标；未分片或全部位于同一节点时返回null
 	 */
-	public static Long append(String key, String str) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.append(key, str);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-			return 0L;
-		} finally {
-			returnResource(jedis);
+	private static List<List<Integer>> splitByNode(Object[] keys) {
+		if (router == null || keys.length < 2) {
+			return null;
+		}
+		List<List<Integer>> groups = new ArrayList<List<Integer>>(nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			groups.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < keys.length; i++) {
+			groups.get(nodeFor(keys[i])).add(i);
+		}
+		for (Iterator<List<Integer>> it = groups.iterator(); it.hasNext();) {
+			if (it.next().isEmpty()) {
+				it.remove();
+			}
+		}
+		return groups.size() > 1 ? groups : null;
+	}
+
+	/**
+	 * 并行执行各节点的操作，最后一组在当前线程执行
+	 * 
+	 * @param groups {@link #splitByNode(Object[])}拆分的各组下标
+	 * @return 与groups一一对应的结果，失败的为null
+	 * @throws JedisConnectionException 任一节点连接失败
+	 */
+	private static <T> List<T> inParallel(List<List<Integer>> groups, final ShardTask<T> task) {
+		List<Future<T>> futures = new ArrayList<Future<T>>(groups.size() - 1);
+		for (int i = 0; i < groups.size() - 1; i++) {
+			final List<Integer> index = groups.get(i);
+			futures.add(shardExecutor.submit(new Callable<T>() {
+				public T call() {
+					return task.run(index);
+				}
+			}));
+		}
+		List<T> res = new ArrayList<T>(groups.size());
+		JedisConnectionException failure = null;
+		for (int i = 0; i < groups.size(); i++) {
+			try {
+				res.add(i < futures.size() ? futures.get(i).get() : task.run(groups.get(i)));
+			} catch (Exception e) {
+				Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+				if (cause instanceof JedisConnectionException) {
+					failure = (JedisConnectionException) cause;
+				} else {
+					// 非连接异常多半是程序错误，保留堆栈
+					logger.error("第" + (i + 1) + "个节点分组执行失败：" + cause.getMessage(), cause);
+				}
+				res.add(null);
+			}
+		}
+		if (failure != null) {
+			throw failure;
 		}
 		return res;
 	}
 
 	/**
-	 * <p>
-	 * 判断key是否存在
-	 * </p>
+	 * 从连接池借出连接，空闲过久的连接先验证，验证失败时丢弃并重新借出
+	 */
+	private static Jedis getResource(int node) {
+		RedisPool pool = nodes[node].pool;
+		RedisPoolMetrics metrics = nodes[node].metrics;
+		for (int i = 0; i < BORROW_ATTEMPTS; i++) {
+			long start = System.nanoTime();
+			Jedis jedis;
+			try {
+				jedis = pool.getResource();
+			} catch (JedisConnectionException e) {
+				metrics.borrowFailed(e);
+				throw e;
+			}
+			metrics.borrowed(System.nanoTime() - start);
+			if (health.validate(jedis)) {
+				return jedis;
+			}
+			metrics.discarded();
+			pool.returnBrokenResource(jedis);
+		}
+		throw new JedisConnectionException("redis连接失败");
+	}
+
+	/**
+	 * 命令执行失败时调用：redis返回的错误(JedisDataException)不影响连接，由调用方正常归还；
+	 * 其余异常说明连接已不可用，作为坏连接丢弃
 	 * 
-	 * @param key
-	 * @return true OR false
+	 * @return 仍需归还的连接，已丢弃时返回null
 	 */
-	public static Boolean exists(String key) {
-		Jedis jedis = null;
-		try {
-			jedis = jedisPool.getResource();
-			return jedis.exists(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-			return false;
-		} finally {
-			returnResource(jedis);
+	private static Jedis discardIfBroken(int node, Jedis jedis, Exception e) {
+		if (jedis == null || e instanceof JedisDataException) {
+			return jedis;
 		}
+		discard(node, jedis);
+		return null;
+	}
+
+	/**
+	 * 作为坏连接丢弃
+	 */
+	private static void discard(int node, Jedis jedis) {
+		nodes[node].metrics.discarded();
+		health.broken(jedis);
+		nodes[node].pool.returnBrokenResource(jedis);
 	}
 
 	/**
 	 * <p>
-	 * 设置key value,如果key已经存在则返回0,nx==> not exist
+	 * 通过key获取储存在redis中的value
+	 * </p>
+	 * <p>
+	 * 并释放连接
 	 * </p>
 	 * 
 	 * @param key
-	 * @param value
-	 * @return 成功返回1 如果存在 和 发生异常 返回 0
+	 * @return 成功返回value 失败返回null
 	 */
-	public static Long setnx(String key, String value) {
-		Jedis jedis = null;
-		try {
-			jedis = jedisPool.getResource();
-			return jedis.setnx(key, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-			return 0L;
-		} finally {
-			returnResource(jedis);
+	public static String get(final String key) {
+		if (nearCache != null) {
+			Object cached = nearCache.get(key);
+			if (cached != null) {
+				return cached == NearCache.NULL ? null : (String) cached;
+			}
 		}
+		final long version = nearCache == null ? 0 : nearCache.version(key);
+		return execute("get", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String value = jedis.get(key);
+				if (nearCache != null) {
+					nearCache.put(key, value, version);
+				}
+				return value;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 设置key value并制定这个键值的有效期
+	 * 向redis存入key和value,并释放连接资源
+	 * </p>
+	 * <p>
+	 * 如果key已经存在 则覆盖
 	 * </p>
 	 * 
 	 * @param key
 	 * @param value
-	 * @param seconds 单位:秒
-	 * @return 成功返回OK 失败和异常返回null
+	 * @return 成功 返回OK 失败返回 0
 	 */
-	public static String setex(String key, String value, int seconds) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.setex(key, seconds, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String set(final String key, final String value) {
+		String res = execute("set", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.set(key, value);
+				invalidate(key);
+				return res;
+			}
+		});
+		return res == null ? "0" : res;
+	}
+
+	/**
+	 * <p>
+	 * 删除指定的key,也可以传入一个包含key的数组
+	 * </p>
+	 * 
+	 * @param keys 一个key 也可以使 string 数组
+	 * @return 返回删除成功的个数；分片模式下按节点拆分并行删除，返回各节点之和
+	 */
+	public static Long del(final String... keys) {
+		List<List<Integer>> groups = splitByNode(keys);
+		if (groups != null) {
+			return sum(inParallel(groups, new ShardTask<Long>() {
+				public Long run(List<Integer> index) {
+					return del(pick(keys, index));
+				}
+			}));
+		}
+		Long res = execute("del", keys, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.del(keys);
+				invalidate(keys);
+				return res;
+			}
+		});
+		return res == null ? 0L : res;
+	}
+
+	/**
+	 * <p>
+	 * 通过key向指定的value值追加值
+	 * </p>
+	 * 
+	 * @param key
+	 * @param str
+	 * @return 成功返回 添加后value的长度 失败 返回 添加的 value 的长度 异常返回0L
+	 */
+	public static Long append(final String key, final String str) {
+		Long res = execute("append", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.append(key, str);
+				invalidate(key);
+				return res;
+			}
+		});
+		return res == null ? 0L : res;
+	}
+
+	/**
+	 * <p>
+	 * 判断key是否存在
+	 * </p>
+	 * 
+	 * @param key
+	 * @return true OR false
+	 */
+	public static Boolean exists(final String key) {
+		Boolean res = execute("exists", key, new JedisCallback<Boolean>() {
+			public Boolean doInRedis(Jedis jedis) {
+				return jedis.exists(key);
+			}
+		});
+		return res == null ? false : res;
+	}
+
+	/**
+	 * <p>
+	 * 设置key value,如果key已经存在则返回0,nx==> not exist
+	 * </p>
+	 * 
+	 * @param key
+	 * @param value
+	 * @return 成功返回1 如果存在 和 发生异常 返回 0
+	 */
+	public static Long setnx(final String key, final String value) {
+		Long res = execute("setnx", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.setnx(key, value);
+				invalidate(key);
+				return res;
+			}
+		});
+		return res == null ? 0L : res;
+	}
+
+	/**
+	 * <p>
+	 * 设置key value并制定这个键值的有效期
+	 * </p>
+	 * 
+	 * @param key
+	 * @param value
+	 * @param seconds 单位:秒
+	 * @return 成功返回OK 失败和异常返回null
+	 */
+	public static String setex(final String key, final String value, final int seconds) {
+		return execute("setex", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.setex(key, seconds, value);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
@@ -304,22 +1038,15 @@ public final class RedisUtil {
 	 * @param offset 下标位置
 	 * @return 返回替换后 value 的长度
 	 */
-	public static Long setrange(String key, String str, int offset) {
-		Jedis jedis = null;
-		try {
-			jedis = jedisPool.getResource();
-			return jedis.setrange(key, offset, str);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-			return 0L;
-		} finally {
-			returnResource(jedis);
-		}
+	public static Long setrange(final String key, final String str, final int offset) {
+		Long res = execute("setrange", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.setrange(key, offset, str);
+				invalidate(key);
+				return res;
+			}
+		});
+		return res == null ? 0L : res;
 	}
 
 	/**
@@ -328,25 +1055,32 @@ public final class RedisUtil {
 	 * </p>
 	 * 
 	 * @param keys string数组 也可以是一个key
-	 * @return 成功返回value的集合, 失败返回null的集合 ,异常返回空
+	 * @return 成功返回value的集合, 失败返回null的集合 ,异常返回空；分片模式下按节点拆分并行读取，任一节点异常返回空
 	 */
-	public static List<String> mget(String... keys) {
-		Jedis jedis = null;
-		List<String> values = null;
-		try {
-			jedis = jedisPool.getResource();
-			values = jedis.mget(keys);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
+	public static List<String> mget(final String... keys) {
+		if (nearCache != null) {
+			return nearCacheMget(keys);
 		}
-		return values;
+		return mgetFromRedis(keys);
+	}
+
+	/**
+	 * 不经过近端缓存的mget，分片模式下按节点拆分
+	 */
+	private static List<String> mgetFromRedis(final String... keys) {
+		List<List<Integer>> groups = splitByNode(keys);
+		if (groups != null) {
+			return merge(keys.length, groups, inParallel(groups, new ShardTask<List<String>>() {
+				public List<String> run(List<Integer> index) {
+					return mgetFromRedis(pick(keys, index));
+				}
+			}));
+		}
+		return execute("mget", keys, new JedisCallback<List<String>>() {
+			public List<String> doInRedis(Jedis jedis) {
+				return jedis.mget(keys);
+			}
+		});
 	}
 
 	/**
@@ -361,26 +1095,26 @@ public final class RedisUtil {
 	 * </p>
 	 * 
 	 * @param keysvalues
-	 * @return 成功返回OK 失败 异常 返回 null
-	 * 
-	 */
-	public static String mset(String... keysvalues) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.mset(keysvalues);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	 * @return 成功返回OK 失败 异常 返回 null；分片模式下按节点拆分并行设置，各节点都成功才返回OK，不保证跨节点的原子性
+	 * 
+	 */
+	public static String mset(final String... keysvalues) {
+		String[] keys = keysOf(keysvalues);
+		List<List<Integer>> groups = splitByNode(keys);
+		if (groups != null) {
+			return allOk(inParallel(groups, new ShardTask<String>() {
+				public String run(List<Integer> index) {
+					return mset(pickPairs(keysvalues, index));
+				}
+			}));
+		}
+		return execute("mset", keys, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.mset(keysvalues);
+				invalidate(keysOf(keysvalues));
+				return res;
+			}
+		});
 	}
 
 	/**
@@ -396,24 +1130,17 @@ public final class RedisUtil {
 	 * 
 	 * @param keysvalues
 	 * @return 成功返回1 失败返回0
-	 */
-	public static Long msetnx(String... keysvalues) {
-		Jedis jedis = null;
-		Long res = 0L;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.msetnx(keysvalues);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	 * @throws UnsupportedOperationException 分片模式下key位于多个节点
+	 */
+	public static Long msetnx(final String... keysvalues) {
+		Long res = execute("msetnx", keysOf(keysvalues), new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.msetnx(keysvalues);
+				invalidate(keysOf(keysvalues));
+				return res;
+			}
+		});
+		return res == null ? 0L : res;
 	}
 
 	/**
@@ -425,23 +1152,14 @@ public final class RedisUtil {
 	 * @param value
 	 * @return 旧值 如果key不存在 则返回null
 	 */
-	public static String getset(String key, String value) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.getSet(key, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String getset(final String key, final String value) {
+		return execute("getset", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.getSet(key, value);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
@@ -454,23 +1172,12 @@ public final class RedisUtil {
 	 * @param endOffset
 	 * @return 如果没有返回null
 	 */
-	public static String getrange(String key, int startOffset, int endOffset) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.getrange(key, startOffset, endOffset);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String getrange(final String key, final int startOffset, final int endOffset) {
+		return execute("getrange", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.getrange(key, startOffset, endOffset);
+			}
+		});
 	}
 
 	/**
@@ -481,23 +1188,14 @@ public final class RedisUtil {
 	 * @param key
 	 * @return 加值后的结果
 	 */
-	public static Long incr(String key) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.incr(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long incr(final String key) {
+		return execute("incr", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.incr(key);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
@@ -509,23 +1207,14 @@ public final class RedisUtil {
 	 * @param integer
 	 * @return
 	 */
-	public static Long incrBy(String key, Long integer) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.incrBy(key, integer);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long incrBy(final String key, final Long integer) {
+		return execute("incrBy", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.incrBy(key, integer);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
@@ -536,23 +1225,14 @@ public final class RedisUtil {
 	 * @param key
 	 * @return
 	 */
-	public static Long decr(String key) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.decr(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long decr(final String key) {
+		return execute("decr", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.decr(key);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
@@ -564,1775 +1244,2684 @@ public final class RedisUtil {
 	 * @param integer
 	 * @return
 	 */
-	public static Long decrBy(String key, Long integer) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.decrBy(key, integer);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long decrBy(final String key, final Long integer) {
+		return execute("decrBy", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.decrBy(key, integer);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取value值的长度
+	 * 原子地将key的值减1,仅当值大于0时才会扣减,在redis内部以lua脚本执行,一次往返完成
 	 * </p>
 	 * 
 	 * @param key
-	 * @return 失败返回null
+	 * @return 扣减后的值;值已为0时返回{@link #STOCK_EMPTY};key不存在时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static Long serlen(String key) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.strlen(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long decrIfPositive(String key) {
+		return decrIfPositive(key, null);
 	}
 
 	/**
 	 * <p>
-	 * 通过key给field设置指定的值,如果key不存在,则先创建
+	 * 同{@link #decrIfPositive(String)},扣减成功时在同一脚本内把versionKey的值加1
 	 * </p>
 	 * 
 	 * @param key
-	 * @param field 字段
-	 * @param value
-	 * @return 如果存在返回0 异常返回null
+	 * @param versionKey 版本号key,为null时不记录版本
+	 * @return 扣减后的值;值已为0时返回{@link #STOCK_EMPTY};key不存在时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static Long hset(String key, String field, String value) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hset(key, field, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long decrIfPositive(String key, String versionKey) {
+		return first(decrIfPositiveWithVersion(key, versionKey));
 	}
 
 	/**
 	 * <p>
-	 * 通过key给field设置指定的值,如果key不存在则先创建,如果field已经存在,返回0
+	 * 同{@link #decrIfPositive(String, String)},同时返回扣减后的版本号
 	 * </p>
 	 * 
 	 * @param key
-	 * @param field
-	 * @param value
-	 * @return
+	 * @param versionKey 版本号key,为null时不记录版本
+	 * @return [扣减后的值, 版本号(未扣减或未记录版本时为0)];值已为0时值为{@link #STOCK_EMPTY};key不存在时值为
+	 *         {@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static Long hsetnx(String key, String field, String value) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hsetnx(key, field, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	@SuppressWarnings("unchecked")
+	public static List<Long> decrIfPositiveWithVersion(final String key, final String versionKey) {
+		final List<String> keys = versionedKeys(key, versionKey);
+		return execute("decrIfPositive", keys, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, DECR_IF_POSITIVE_SCRIPT, DECR_IF_POSITIVE_SHA, keys,
+						Collections.<String> emptyList());
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key同时设置 hash的多个field
+	 * 原子地将key的值加1,仅当key已存在时才会增加,在redis内部以lua脚本执行
 	 * </p>
 	 * 
 	 * @param key
-	 * @param hash
-	 * @return 返回OK 异常返回null
+	 * @return 增加后的值;key不存在时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static String hmset(String key, Map<String, String> hash) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hmset(key, hash);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long incrIfExists(String key) {
+		return incrByIfExists(key, 1L);
 	}
 
 	/**
 	 * <p>
-	 * 通过key 和 field 获取指定的 value
+	 * 原子地给key的值加上指定值,仅当key已存在时才会增加
 	 * </p>
 	 * 
 	 * @param key
-	 * @param field
-	 * @return 没有返回null
+	 * @param integer
+	 * @return 增加后的值;key不存在时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static String hget(String key, String field) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hget(key, field);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long incrByIfExists(String key, long integer) {
+		return incrByIfExists(key, integer, null);
 	}
 
 	/**
 	 * <p>
-	 * 通过key 和 fields 获取指定的value 如果没有对应的value则返回null
+	 * 同{@link #incrByIfExists(String, long)},增加成功时在同一脚本内把versionKey的值加1
 	 * </p>
 	 * 
 	 * @param key
-	 * @param fields 可以使 一个String 也可以是 String数组
-	 * @return
+	 * @param integer
+	 * @param versionKey 版本号key,为null时不记录版本
+	 * @return 增加后的值;key不存在时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static List<String> hmget(String key, String... fields) {
-		Jedis jedis = null;
-		List<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hmget(key, fields);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long incrByIfExists(String key, long integer, String versionKey) {
+		return incrByIfExists(key, integer, versionKey, null, 0);
 	}
 
 	/**
 	 * <p>
-	 * 通过key给指定的field的value加上给定的值
+	 * 同{@link #incrByIfExists(String, long, String)},仅当代数key的值(不存在为0)等于generation时才增加,
+	 * 数据已被重新初始化时不增加
 	 * </p>
 	 * 
 	 * @param key
-	 * @param field
-	 * @param value
-	 * @return
+	 * @param integer
+	 * @param versionKey 版本号key,generationKey不为null时不能为null
+	 * @param generationKey 代数key,为null时不检查
+	 * @param generation 期望的代数
+	 * @return 增加后的值;key不存在或代数不同时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static Long hincrby(String key, String field, Long value) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hincrBy(key, field, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long incrByIfExists(String key, long integer, String versionKey, String generationKey,
+			long generation) {
+		return first(incrByIfExistsWithVersion(key, integer, versionKey, generationKey, generation));
 	}
 
 	/**
 	 * <p>
-	 * 通过key和field判断是否有指定的value存在
+	 * 同{@link #incrByIfExists(String, long, String)},同时返回增加后的版本号
 	 * </p>
 	 * 
 	 * @param key
-	 * @param field
-	 * @return
+	 * @param integer
+	 * @param versionKey 版本号key,为null时不记录版本
+	 * @return [增加后的值, 版本号(未增加或未记录版本时为0)];key不存在时值为{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static Boolean hexists(String key, String field) {
-		Jedis jedis = null;
-		Boolean res = false;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hexists(key, field);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<Long> incrByIfExistsWithVersion(String key, long integer, String versionKey) {
+		return incrByIfExistsWithVersion(key, integer, versionKey, null, 0);
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回field的数量
+	 * 同{@link #incrByIfExists(String, long, String, String, long)},同时返回增加后的版本号
 	 * </p>
 	 * 
-	 * @param key
-	 * @return
+	 * @return [增加后的值, 版本号(未增加时为0)];key不存在或代数不同时值为{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static Long hlen(String key) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hlen(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
-
+	@SuppressWarnings("unchecked")
+	public static List<Long> incrByIfExistsWithVersion(final String key, final long integer, final String versionKey,
+			final String generationKey, final long generation) {
+		final List<String> keys = generationKey == null ? versionedKeys(key, versionKey) : Arrays.asList(key,
+				versionKey, generationKey);
+		return execute("incrByIfExists", keys, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, INCR_IF_EXISTS_SCRIPT, INCR_IF_EXISTS_SHA, keys,
+						Arrays.asList(String.valueOf(integer), String.valueOf(generation)));
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key 删除指定的 field
+	 * 原子地从key的值中最多扣减count,值不足时扣减剩余全部,不会扣成负数
 	 * </p>
 	 * 
 	 * @param key
-	 * @param fields 可以是 一个 field 也可以是 一个数组
-	 * @return
+	 * @param count 期望扣减的数量
+	 * @return [实际扣减数量, 扣减后的值, 0];key不存在时实际扣减数量为{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static Long hdel(String key, String... fields) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hdel(key, fields);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<Long> decrByUpTo(String key, long count) {
+		return decrByUpTo(key, count, null);
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回所有的field
+	 * 同{@link #decrByUpTo(String, long)},实际扣减数量大于0时在同一脚本内把versionKey的值加1
 	 * </p>
 	 * 
 	 * @param key
-	 * @return
+	 * @param count 期望扣减的数量
+	 * @param versionKey 版本号key,为null时不记录版本
+	 * @return [实际扣减数量, 扣减后的值, 版本号(未扣减或未记录版本时为0)];key不存在时实际扣减数量为{@link #KEY_NOT_EXISTS};
+	 *         异常返回null
 	 */
-	public static Set<String> hkeys(String key) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hkeys(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<Long> decrByUpTo(String key, long count, String versionKey) {
+		return decrByUpTo(key, count, versionKey, null);
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回所有和key有关的value
+	 * 同{@link #decrByUpTo(String, long, String)},实际扣减数量大于0时在同一脚本内读取代数key的值
 	 * </p>
 	 * 
 	 * @param key
-	 * @return
+	 * @param count 期望扣减的数量
+	 * @param versionKey 版本号key,generationKey不为null时不能为null
+	 * @param generationKey 代数key,为null时不读取
+	 * @return [实际扣减数量, 扣减后的值, 版本号, 代数(不存在为0)];未扣减时只有前三项;key不存在时实际扣减数量为
+	 *         {@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static List<String> hvals(String key) {
-		Jedis jedis = null;
-		List<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hvals(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	@SuppressWarnings("unchecked")
+	public static List<Long> decrByUpTo(final String key, final long count, final String versionKey,
+			final String generationKey) {
+		final List<String> keys = generationKey == null ? versionedKeys(key, versionKey) : Arrays.asList(key,
+				versionKey, generationKey);
+		return execute("decrByUpTo", keys, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				List<Long> res = null;
+				res = (List<Long>) evalScript(jedis, DECR_UP_TO_SCRIPT, DECR_UP_TO_SHA, keys,
+						Collections.singletonList(String.valueOf(count)));
+				return res;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取所有的field和value
+	 * 原子地按各自的数量扣减多个key,全部key都存在且值足够时才扣减,否则一个都不扣减
 	 * </p>
 	 * 
-	 * @param key
-	 * @return
+	 * @param keysCounts key和扣减数量
+	 * @return 第一个元素为1表示已扣减、0表示未扣减;之后按keysCounts的顺序依次为每个key扣减后的值(未扣减时为当前值,
+	 *         key不存在为{@link #KEY_NOT_EXISTS}); 异常返回null
 	 */
-	public static Map<String, String> hgetall(String key) {
-		Jedis jedis = null;
-		Map<String, String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.hgetAll(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<Long> decrAllIfEnough(Map<String, Long> keysCounts) {
+		return decrAllIfEnough(keysCounts, Collections.<String> emptyList());
 	}
 
 	/**
 	 * <p>
-	 * 通过key向list头部添加字符串
+	 * 同{@link #decrAllIfEnough(Map)},扣减成功时在同一脚本内把每个key对应的版本号key加1
 	 * </p>
 	 * 
-	 * @param key
-	 * @param strs 可以使一个string 也可以使string数组
-	 * @return 返回list的value个数
+	 * @param keysCounts key和扣减数量
+	 * @param versionKeys 按keysCounts的顺序对应的版本号key,为空时不记录版本
+	 * @return 同{@link #decrAllIfEnough(Map)};记录版本且已扣减时之后再依次附带每个key加1后的版本号
 	 */
-	public static Long lpush(String key, String... strs) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.lpush(key, strs);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
+	@SuppressWarnings("unchecked")
+	public static List<Long> decrAllIfEnough(final Map<String, Long> keysCounts, final List<String> versionKeys) {
+		final List<String> keys = new ArrayList<String>(keysCounts.size() + versionKeys.size());
+		final List<String> counts = new ArrayList<String>(keysCounts.size());
+		for (Map.Entry<String, Long> entry : keysCounts.entrySet()) {
+			keys.add(entry.getKey());
+			counts.add(String.valueOf(entry.getValue()));
 		}
-		return res;
+		keys.addAll(versionKeys);
+		return execute("decrAllIfEnough", keys, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, DECR_ALL_SCRIPT, DECR_ALL_SHA, keys, counts);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key向list尾部添加字符串
+	 * 同{@link #decrAllIfEnough(Map, List)},但每个值由一组key组成(如分片存放的库存):按组内各key之和判断是否足够,
+	 * 扣减时按组内顺序依次扣减,不会把任何key扣成负数
 	 * </p>
 	 * 
-	 * @param key
-	 * @param strs 可以使一个string 也可以使string数组
-	 * @return 返回list的value个数
+	 * @param keys 依次为各组的key,每组groupSize个,分片模式下需位于同一节点
+	 * @param groupSize 每组key的个数
+	 * @param counts 与各组一一对应的扣减数量
+	 * @param versionKeys 与keys一一对应的版本号key,扣减了的key对应的版本号加1;为null时不记录版本
+	 * @return 第一个元素为1表示已扣减、0表示未扣减;之后依次为每组扣减后的值之和(未扣减时为当前值之和,
+	 *         组内key都不存在为{@link #KEY_NOT_EXISTS}); 异常返回null
 	 */
-	public static Long rpush(String key, String... strs) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.rpush(key, strs);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
+	@SuppressWarnings("unchecked")
+	public static List<Long> decrAllSumsIfEnough(String[] keys, int groupSize, long[] counts, String[] versionKeys) {
+		final List<String> scriptKeys = new ArrayList<String>(keys.length * 2);
+		Collections.addAll(scriptKeys, keys);
+		if (versionKeys != null) {
+			Collections.addAll(scriptKeys, versionKeys);
 		}
-		return res;
+		final List<String> args = new ArrayList<String>(counts.length + 1);
+		args.add(String.valueOf(groupSize));
+		for (long count : counts) {
+			args.add(String.valueOf(count));
+		}
+		return execute("decrAllSumsIfEnough", scriptKeys, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, DECR_ALL_SUMS_SCRIPT, DECR_ALL_SUMS_SHA, scriptKeys, args);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key在list指定的位置之前或者之后 添加字符串元素
+	 * 在一个脚本内读取一组key的值之和及版本号,两者属于同一时刻
 	 * </p>
 	 * 
-	 * @param key
-	 * @param where LIST_POSITION枚举类型
-	 * @param pivot list里面的value
-	 * @param value 添加的value
-	 * @return
+	 * @param keys 同一个值的各部分(如分片存放的库存),分片模式下需与versionKey位于同一节点
+	 * @param versionKey 版本号key
+	 * @return [各key的值之和, 版本号];key都不存在时值之和为{@link #KEY_NOT_EXISTS},版本号key不存在时版本号为0;异常返回null
 	 */
-	public static Long linsert(String key, LIST_POSITION where, String pivot, String value) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.linsert(key, where, pivot, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	@SuppressWarnings("unchecked")
+	public static List<Long> sumWithVersion(String[] keys, String versionKey) {
+		final List<String> scriptKeys = new ArrayList<String>(keys.length + 1);
+		Collections.addAll(scriptKeys, keys);
+		scriptKeys.add(versionKey);
+		final List<String> args = Collections.singletonList(String.valueOf(keys.length));
+		return execute("sumWithVersion", scriptKeys, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, SUM_WITH_VERSION_SCRIPT, SUM_WITH_VERSION_SHA, scriptKeys, args);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 同时设置多个key-value,并在同一脚本内把各版本号key加1,返回加1后的版本号
+	 * </p>
+	 * 
+	 * @param keysvalues key,value交替
+	 * @param versionKeys 需要加1的版本号key
+	 * @return 加1后的各版本号,与versionKeys一一对应;异常返回null；分片模式下按节点拆分并行执行，各节点内原子，
+	 *         任一节点失败返回null
+	 */
+	public static List<Long> msetVersioned(final String[] keysvalues, final String... versionKeys) {
+		final String[] dataKeys = keysOf(keysvalues);
+		List<List<Integer>> groups = splitByNode(withKey(dataKeys, versionKeys));
+		if (groups != null) {
+			List<List<Long>> results = inParallel(groups, new ShardTask<List<Long>>() {
+				public List<Long> run(List<Integer> index) {
+					List<String> kv = new ArrayList<String>();
+					List<String> versions = new ArrayList<String>();
+					for (int i : index) {
+						if (i < dataKeys.length) {
+							kv.add(keysvalues[i * 2]);
+							kv.add(keysvalues[i * 2 + 1]);
+						} else {
+							versions.add(versionKeys[i - dataKeys.length]);
+						}
+					}
+					List<Long> vers = msetVersioned(kv.toArray(new String[kv.size()]),
+							versions.toArray(new String[versions.size()]));
+					if (vers == null) {
+						return null;
+					}
+					// 与index对齐，数据key的位置为null
+					List<Long> aligned = new ArrayList<Long>(index.size());
+					int v = 0;
+					for (int i : index) {
+						aligned.add(i < dataKeys.length ? null : vers.get(v++));
+					}
+					return aligned;
+				}
+			});
+			List<Long> res = merge(dataKeys.length + versionKeys.length, groups, results);
+			return res == null ? null : res.subList(dataKeys.length, res.size());
+		}
+		final List<String> keys = new ArrayList<String>(keysvalues.length / 2 + versionKeys.length);
+		final List<String> values = new ArrayList<String>(keysvalues.length / 2);
+		for (int i = 0; i < keysvalues.length; i += 2) {
+			keys.add(keysvalues[i]);
+			values.add(keysvalues[i + 1]);
+		}
+		Collections.addAll(keys, versionKeys);
+		return execute("msetVersioned", keys, new JedisCallback<List<Long>>() {
+			@SuppressWarnings("unchecked")
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, MSET_VERSIONED_SCRIPT, MSET_VERSIONED_SHA, keys, values);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key设置list指定下标位置的value
-	 * </p>
-	 * <p>
-	 * 如果下标超过list里面value的个数则报错
+	 * 原子地将hash中field的值减1,仅当field存在且值大于0时才扣减,在redis内部以lua脚本执行
 	 * </p>
 	 * 
 	 * @param key
-	 * @param index 从0开始
-	 * @param value
-	 * @return 成功返回OK
+	 * @param field
+	 * @param versionField 同一hash中的版本号field,扣减成功时加1,为null时不记录版本
+	 * @return 扣减后的值;值已为0时返回{@link #STOCK_EMPTY};field不存在时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static String lset(String key, Long index, String value) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.lset(key, index, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long hdecrIfPositive(String key, String field, String versionField) {
+		return first(hdecrIfPositiveWithVersion(key, field, versionField));
 	}
 
 	/**
 	 * <p>
-	 * 通过key从对应的list中删除指定的count个 和 value相同的元素
+	 * 同{@link #hdecrIfPositive(String, String, String)},同时返回扣减后的版本号
 	 * </p>
 	 * 
 	 * @param key
-	 * @param count 当count为0时删除全部
-	 * @param value
-	 * @return 返回被删除的个数
-	 */
-	public static Long lrem(String key, long count, String value) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.lrem(key, count, value);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	 * @param field
+	 * @param versionField 同一hash中的版本号field,为null时不记录版本
+	 * @return [扣减后的值, 版本号(未扣减或未记录版本时为0)];值已为0时值为{@link #STOCK_EMPTY};field不存在时值为
+	 *         {@link #KEY_NOT_EXISTS};异常返回null
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Long> hdecrIfPositiveWithVersion(final String key, final String field,
+			final String versionField) {
+		return execute("hdecrIfPositive", key, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, HDECR_IF_POSITIVE_SCRIPT, HDECR_IF_POSITIVE_SHA,
+						Collections.singletonList(key), versionedKeys(field, versionField));
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key保留list中从strat下标开始到end下标结束的value值
+	 * 原子地给hash中field的值加上指定值,仅当field已存在时才会增加
 	 * </p>
 	 * 
 	 * @param key
-	 * @param start
-	 * @param end
-	 * @return 成功返回OK
+	 * @param field
+	 * @param integer
+	 * @param versionField 同一hash中的版本号field,增加成功时加1,为null时不记录版本
+	 * @return 增加后的值;field不存在时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static String ltrim(String key, long start, long end) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.ltrim(key, start, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long hincrByIfExists(String key, String field, long integer, String versionField) {
+		return hincrByIfExists(key, field, integer, versionField, null, 0);
 	}
 
 	/**
 	 * <p>
-	 * 通过key从list的头部删除一个value,并返回该value
+	 * 同{@link #hincrByIfExists(String, String, long, String)},仅当同一hash中代数field的值(不存在为0)等于generation时才增加,
+	 * 数据已被重新初始化时不增加
 	 * </p>
 	 * 
 	 * @param key
-	 * @return
+	 * @param field
+	 * @param integer
+	 * @param versionField 版本号field,generationField不为null时不能为null
+	 * @param generationField 代数field,为null时不检查
+	 * @param generation 期望的代数
+	 * @return 增加后的值;field不存在或代数不同时返回{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static String lpop(String key) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.lpop(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long hincrByIfExists(String key, String field, long integer, String versionField,
+			String generationField, long generation) {
+		return first(hincrByIfExistsWithVersion(key, field, integer, versionField, generationField, generation));
 	}
 
 	/**
 	 * <p>
-	 * 通过key从list尾部删除一个value,并返回该元素
+	 * 同{@link #hincrByIfExists(String, String, long, String)},同时返回增加后的版本号
 	 * </p>
 	 * 
 	 * @param key
-	 * @return
+	 * @param field
+	 * @param integer
+	 * @param versionField 同一hash中的版本号field,为null时不记录版本
+	 * @return [增加后的值, 版本号(未增加或未记录版本时为0)];field不存在时值为{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static String rpop(String key) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.rpop(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<Long> hincrByIfExistsWithVersion(String key, String field, long integer, String versionField) {
+		return hincrByIfExistsWithVersion(key, field, integer, versionField, null, 0);
 	}
 
 	/**
 	 * <p>
-	 * 通过key从一个list的尾部删除一个value并添加到另一个list的头部,并返回该value
-	 * </p>
-	 * <p>
-	 * 如果第一个list为空或者不存在则返回null
+	 * 同{@link #hincrByIfExists(String, String, long, String, String, long)},同时返回增加后的版本号
 	 * </p>
 	 * 
-	 * @param srckey
-	 * @param dstkey
-	 * @return
+	 * @return [增加后的值, 版本号(未增加时为0)];field不存在或代数不同时值为{@link #KEY_NOT_EXISTS};异常返回null
 	 */
-	public static String rpoplpush(String srckey, String dstkey) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.rpoplpush(srckey, dstkey);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
+	@SuppressWarnings("unchecked")
+	public static List<Long> hincrByIfExistsWithVersion(final String key, final String field, final long integer,
+			final String versionField, final String generationField, final long generation) {
+		final List<String> args = new ArrayList<String>(5);
+		args.add(field);
+		args.add(String.valueOf(integer));
+		if (versionField != null) {
+			args.add(versionField);
 		}
-		return res;
+		if (generationField != null) {
+			args.add(generationField);
+			args.add(String.valueOf(generation));
+		}
+		return execute("hincrByIfExists", key, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, HINCR_IF_EXISTS_SCRIPT, HINCR_IF_EXISTS_SHA,
+						Collections.singletonList(key), args);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取list中指定下标位置的value
+	 * 原子地从hash中field的值中最多扣减count,值不足时扣减剩余全部,不会扣成负数
 	 * </p>
 	 * 
 	 * @param key
-	 * @param index
-	 * @return 如果没有返回null
+	 * @param field
+	 * @param count 期望扣减的数量
+	 * @param versionField 同一hash中的版本号field,实际扣减数量大于0时加1,为null时不记录版本
+	 * @return [实际扣减数量, 扣减后的值, 版本号(未扣减或未记录版本时为0)];field不存在时实际扣减数量为{@link #KEY_NOT_EXISTS};
+	 *         异常返回null
 	 */
-	public static String lindex(String key, long index) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.lindex(key, index);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<Long> hdecrByUpTo(String key, String field, long count, String versionField) {
+		return hdecrByUpTo(key, field, count, versionField, null);
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回list的长度
+	 * 同{@link #hdecrByUpTo(String, String, long, String)},实际扣减数量大于0时在同一脚本内读取同一hash中代数field的值
 	 * </p>
 	 * 
 	 * @param key
-	 * @return
+	 * @param field
+	 * @param count 期望扣减的数量
+	 * @param versionField 版本号field,generationField不为null时不能为null
+	 * @param generationField 代数field,为null时不读取
+	 * @return [实际扣减数量, 扣减后的值, 版本号, 代数(不存在为0)];未扣减时只有前三项;field不存在时实际扣减数量为
+	 *         {@link #KEY_NOT_EXISTS};异常返回null
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Long> hdecrByUpTo(final String key, final String field, final long count,
+			final String versionField, String generationField) {
+		final List<String> args = new ArrayList<String>(4);
+		args.add(field);
+		args.add(String.valueOf(count));
+		if (versionField != null) {
+			args.add(versionField);
+		}
+		if (generationField != null) {
+			args.add(generationField);
+		}
+		return execute("hdecrByUpTo", key, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, HDECR_UP_TO_SCRIPT, HDECR_UP_TO_SHA,
+						Collections.singletonList(key), args);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 原子地按各自的数量扣减多个hash中的field,全部field都存在且值足够时才扣减,否则一个都不扣减
+	 * </p>
+	 * 
+	 * @param keys 每个field所在的hash,可以重复
+	 * @param fields
+	 * @param counts 与fields一一对应的扣减数量
+	 * @param versionFields 与fields一一对应、位于同一hash中的版本号field,为null时不记录版本
+	 * @return 同{@link #decrAllIfEnough(Map, List)}
 	 */
-	public static Long llen(String key) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.llen(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
+	@SuppressWarnings("unchecked")
+	public static List<Long> hdecrAllIfEnough(final String[] keys, String[] fields, long[] counts,
+			String[] versionFields) {
+		final List<String> args = new ArrayList<String>(fields.length * 3);
+		Collections.addAll(args, fields);
+		for (long count : counts) {
+			args.add(String.valueOf(count));
 		}
-		return res;
+		if (versionFields != null) {
+			Collections.addAll(args, versionFields);
+		}
+		return execute("hdecrAllIfEnough", keys, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, HDECR_ALL_SCRIPT, HDECR_ALL_SHA, Arrays.asList(keys), args);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取list指定下标位置的value
+	 * 在一个脚本内读取hash中field的值及同一hash中的版本号field,两者属于同一时刻
 	 * </p>
+	 * 
+	 * @param key
+	 * @param field
+	 * @param versionField
+	 * @return [值, 版本号];field不存在时值为{@link #KEY_NOT_EXISTS},版本号field不存在时版本号为0;异常返回null
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Long> hgetWithVersion(final String key, final String field, final String versionField) {
+		return execute("hgetWithVersion", key, new JedisCallback<List<Long>>() {
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, HGET_WITH_VERSION_SCRIPT, HGET_WITH_VERSION_SHA,
+						Collections.singletonList(key), Arrays.asList(field, versionField));
+			}
+		});
+	}
+
+	/**
 	 * <p>
-	 * 如果start 为 0 end 为 -1 则返回全部的list中的value
+	 * 同时设置hash中的多个field,并在同一脚本内把同一hash中的各版本号field加1,返回加1后的版本号
 	 * </p>
 	 * 
 	 * @param key
-	 * @param start
-	 * @param end
-	 * @return
-	 */
-	public static List<String> lrange(String key, long start, long end) {
-		Jedis jedis = null;
-		List<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.lrange(key, start, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	 * @param hash
+	 * @param versionFields 需要加1的版本号field
+	 * @return 加1后的各版本号,与versionFields一一对应;异常返回null
+	 */
+	public static List<Long> hmsetVersioned(final String key, Map<String, String> hash, String... versionFields) {
+		final List<String> args = new ArrayList<String>(hash.size() * 2 + versionFields.length + 1);
+		args.add(String.valueOf(hash.size()));
+		for (Map.Entry<String, String> entry : hash.entrySet()) {
+			args.add(entry.getKey());
+			args.add(entry.getValue());
+		}
+		Collections.addAll(args, versionFields);
+		return execute("hmsetVersioned", key, new JedisCallback<List<Long>>() {
+			@SuppressWarnings("unchecked")
+			public List<Long> doInRedis(Jedis jedis) {
+				return (List<Long>) evalScript(jedis, HMSET_VERSIONED_SCRIPT, HMSET_VERSIONED_SHA,
+						Collections.singletonList(key), args);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key向指定的set中添加value
+	 * 把一组字符串key的值之和原子地移入hash的field,一组版本号key之和加1后移入同一hash的版本号field,并删除原有的key,
+	 * 用于迁移存储格式
 	 * </p>
 	 * 
-	 * @param key
-	 * @param members 可以是一个String 也可以是一个String数组
-	 * @return 添加成功的个数
-	 */
-	public static Long sadd(String key, String... members) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.sadd(key, members);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	 * @param sourceKeys 原有的数据key,可以是多个分片
+	 * @param versionKeys 原有的版本号key,可以是各分片的版本号
+	 * @param key 目标hash
+	 * @param field
+	 * @param versionField
+	 * @return 移入的值;原有的key都不存在时返回{@link #KEY_NOT_EXISTS};异常返回null
+	 */
+	public static Long moveToHash(String[] sourceKeys, String[] versionKeys, String key, final String field,
+			final String versionField) {
+		final List<String> keys = new ArrayList<String>(sourceKeys.length + versionKeys.length + 1);
+		keys.add(key);
+		Collections.addAll(keys, versionKeys);
+		Collections.addAll(keys, sourceKeys);
+		final String versionCount = String.valueOf(versionKeys.length);
+		return execute("moveToHash", keys, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return (Long) evalScript(jedis, MOVE_TO_HASH_SCRIPT, MOVE_TO_HASH_SHA, keys,
+						Arrays.asList(field, versionField, versionCount));
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key删除set中对应的value值
+	 * 通过key获取value值的长度
 	 * </p>
 	 * 
 	 * @param key
-	 * @param members 可以是一个String 也可以是一个String数组
-	 * @return 删除的个数
+	 * @return 失败返回null
 	 */
-	public static Long srem(String key, String... members) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.srem(key, members);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long serlen(final String key) {
+		return execute("serlen", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.strlen(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key随机删除一个set中的value并返回该值
+	 * 通过key给field设置指定的值,如果key不存在,则先创建
 	 * </p>
 	 * 
 	 * @param key
-	 * @return
+	 * @param field 字段
+	 * @param value
+	 * @return 如果存在返回0 异常返回null
 	 */
-	public static String spop(String key) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.spop(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long hset(final String key, final String field, final String value) {
+		return execute("hset", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.hset(key, field, value);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取set中的差集
-	 * </p>
-	 * <p>
-	 * 以第一个set为标准
+	 * 通过key给field设置指定的值,如果key不存在则先创建,如果field已经存在,返回0
 	 * </p>
 	 * 
-	 * @param keys 可以使一个string 则返回set中所有的value 也可以是string数组
+	 * @param key
+	 * @param field
+	 * @param value
 	 * @return
 	 */
-	public static Set<String> sdiff(String... keys) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.sdiff(keys);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long hsetnx(final String key, final String field, final String value) {
+		return execute("hsetnx", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.hsetnx(key, field, value);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取set中的差集并存入到另一个key中
+	 * 通过key同时设置 hash的多个field
 	 * </p>
+	 * 
+	 * @param key
+	 * @param hash
+	 * @return 返回OK 异常返回null
+	 */
+	public static String hmset(final String key, final Map<String, String> hash) {
+		return execute("hmset", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.hmset(key, hash);
+				invalidate(key);
+				return res;
+			}
+		});
+	}
+
+	/**
 	 * <p>
-	 * 以第一个set为标准
+	 * 通过key 和 field 获取指定的 value
 	 * </p>
 	 * 
-	 * @param dstkey 差集存入的key
-	 * @param keys 可以使一个string 则返回set中所有的value 也可以是string数组
-	 * @return
+	 * @param key
+	 * @param field
+	 * @return 没有返回null
 	 */
-	public static Long sdiffstore(String dstkey, String... keys) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.sdiffstore(dstkey, keys);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
+	public static String hget(final String key, final String field) {
+		if (nearCache != null) {
+			Object cached = nearCache.getField(key, field);
+			if (cached != null) {
+				return cached == NearCache.NULL ? null : (String) cached;
+			}
 		}
-		return res;
+		final long version = nearCache == null ? 0 : nearCache.version(key);
+		return execute("hget", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.hget(key, field);
+				if (nearCache != null) {
+					nearCache.putField(key, field, res, version);
+				}
+				return res;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取指定set中的交集
+	 * 通过key 和 fields 获取指定的value 如果没有对应的value则返回null
 	 * </p>
 	 * 
-	 * @param keys 可以使一个string 也可以是一个string数组
+	 * @param key
+	 * @param fields 可以使 一个String 也可以是 String数组
 	 * @return
 	 */
-	public static Set<String> sinter(String... keys) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.sinter(keys);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<String> hmget(final String key, final String... fields) {
+		return execute("hmget", key, new JedisCallback<List<String>>() {
+			public List<String> doInRedis(Jedis jedis) {
+				return jedis.hmget(key, fields);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取指定set中的交集 并将结果存入新的set中
+	 * 通过key给指定的field的value加上给定的值
 	 * </p>
 	 * 
-	 * @param dstkey
-	 * @param keys 可以使一个string 也可以是一个string数组
+	 * @param key
+	 * @param field
+	 * @param value
 	 * @return
 	 */
-	public static Long sinterstore(String dstkey, String... keys) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.sinterstore(dstkey, keys);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long hincrby(final String key, final String field, final Long value) {
+		return execute("hincrby", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.hincrBy(key, field, value);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回所有set的并集
+	 * 通过key和field判断是否有指定的value存在
 	 * </p>
 	 * 
-	 * @param keys 可以使一个string 也可以是一个string数组
+	 * @param key
+	 * @param field
 	 * @return
 	 */
-	public static Set<String> sunion(String... keys) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.sunion(keys);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Boolean hexists(final String key, final String field) {
+		Boolean res = execute("hexists", key, new JedisCallback<Boolean>() {
+			public Boolean doInRedis(Jedis jedis) {
+				return jedis.hexists(key, field);
+			}
+		});
+		return res == null ? false : res;
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回所有set的并集,并存入到新的set中
+	 * 通过key返回field的数量
 	 * </p>
 	 * 
-	 * @param dstkey
-	 * @param keys 可以使一个string 也可以是一个string数组
+	 * @param key
 	 * @return
 	 */
-	public static Long sunionstore(String dstkey, String... keys) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.sunionstore(dstkey, keys);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long hlen(final String key) {
+		return execute("hlen", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.hlen(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key将set中的value移除并添加到第二个set中
+	 * 通过key 删除指定的 field
 	 * </p>
 	 * 
-	 * @param srckey 需要移除的
-	 * @param dstkey 添加的
-	 * @param member set中的value
+	 * @param key
+	 * @param fields 可以是 一个 field 也可以是 一个数组
 	 * @return
 	 */
-	public static Long smove(String srckey, String dstkey, String member) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.smove(srckey, dstkey, member);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long hdel(final String key, final String... fields) {
+		return execute("hdel", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.hdel(key, fields);
+				invalidate(key);
+				return res;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取set中value的个数
+	 * 通过key返回所有的field
+	 * </p>
+	 * <p>
+	 * 一次读入整个集合，大集合使用{@link #hscan(String)}按页读取
 	 * </p>
 	 * 
 	 * @param key
 	 * @return
 	 */
-	public static Long scard(String key) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.scard(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Set<String> hkeys(final String key) {
+		return execute("hkeys", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.hkeys(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key判断value是否是set中的元素
+	 * 通过key返回所有和key有关的value
+	 * </p>
+	 * <p>
+	 * 一次读入整个集合，大集合使用{@link #hscan(String)}按页读取
 	 * </p>
 	 * 
 	 * @param key
-	 * @param member
 	 * @return
 	 */
-	public static Boolean sismember(String key, String member) {
-		Jedis jedis = null;
-		Boolean res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.sismember(key, member);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<String> hvals(final String key) {
+		return execute("hvals", key, new JedisCallback<List<String>>() {
+			public List<String> doInRedis(Jedis jedis) {
+				return jedis.hvals(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取set中随机的value,不删除元素
+	 * 通过key获取所有的field和value
+	 * </p>
+	 * <p>
+	 * 一次读入整个集合，大集合使用{@link #hscan(String)}按页读取
 	 * </p>
 	 * 
 	 * @param key
 	 * @return
 	 */
-	public static String srandmember(String key) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.srandmember(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
+	public static Map<String, String> hgetall(final String key) {
+		if (nearCache != null) {
+			Map<String, String> cached = nearCache.getAll(key);
+			if (cached != null) {
+				return new HashMap<String, String>(cached);
+			}
 		}
-		return res;
+		final long version = nearCache == null ? 0 : nearCache.version(key);
+		return execute("hgetall", key, new JedisCallback<Map<String, String>>() {
+			public Map<String, String> doInRedis(Jedis jedis) {
+				Map<String, String> res = jedis.hgetAll(key);
+				if (nearCache != null) {
+					nearCache.putAll(key, res, version);
+				}
+				return res;
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取set中所有的value
+	 * 通过key向list头部添加字符串
 	 * </p>
 	 * 
 	 * @param key
-	 * @return
+	 * @param strs 可以使一个string 也可以使string数组
+	 * @return 返回list的value个数
 	 */
-	public static Set<String> smembers(String key) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.smembers(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long lpush(final String key, final String... strs) {
+		return execute("lpush", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.lpush(key, strs);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key向zset中添加value,score,其中score就是用来排序的
+	 * 通过key向list尾部添加字符串
 	 * </p>
+	 * 
+	 * @param key
+	 * @param strs 可以使一个string 也可以使string数组
+	 * @return 返回list的value个数
+	 */
+	public static Long rpush(final String key, final String... strs) {
+		return execute("rpush", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.rpush(key, strs);
+			}
+		});
+	}
+
+	/**
 	 * <p>
-	 * 如果该value已经存在则根据score更新元素
+	 * 通过key在list指定的位置之前或者之后 添加字符串元素
 	 * </p>
 	 * 
 	 * @param key
-	 * @param scoreMembers
+	 * @param where LIST_POSITION枚举类型
+	 * @param pivot list里面的value
+	 * @param value 添加的value
 	 * @return
 	 */
-	public static Long zadd(String key, Map<Double, String> scoreMembers) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zadd(key, scoreMembers);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long linsert(final String key, final LIST_POSITION where, final String pivot, final String value) {
+		return execute("linsert", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.linsert(key, where, pivot, value);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key向zset中添加value,score,其中score就是用来排序的
+	 * 通过key设置list指定下标位置的value
 	 * </p>
 	 * <p>
-	 * 如果该value已经存在则根据score更新元素
+	 * 如果下标超过list里面value的个数则报错
 	 * </p>
 	 * 
 	 * @param key
-	 * @param score
-	 * @param member
-	 * @return
+	 * @param index 从0开始
+	 * @param value
+	 * @return 成功返回OK
 	 */
-	public static Long zadd(String key, double score, String member) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zadd(key, score, member);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String lset(final String key, final Long index, final String value) {
+		return execute("lset", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.lset(key, index, value);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key删除在zset中指定的value
+	 * 通过key从对应的list中删除指定的count个 和 value相同的元素
 	 * </p>
 	 * 
 	 * @param key
-	 * @param members 可以使一个string 也可以是一个string数组
-	 * @return
+	 * @param count 当count为0时删除全部
+	 * @param value
+	 * @return 返回被删除的个数
 	 */
-	public static Long zrem(String key, String... members) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrem(key, members);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long lrem(final String key, final long count, final String value) {
+		return execute("lrem", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.lrem(key, count, value);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key增加该zset中value的score的值
+	 * 通过key保留list中从strat下标开始到end下标结束的value值
 	 * </p>
 	 * 
 	 * @param key
-	 * @param score
-	 * @param member
-	 * @return
+	 * @param start
+	 * @param end
+	 * @return 成功返回OK
 	 */
-	public static Double zincrby(String key, double score, String member) {
-		Jedis jedis = null;
-		Double res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zincrby(key, score, member);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String ltrim(final String key, final long start, final long end) {
+		return execute("ltrim", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.ltrim(key, start, end);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回zset中value的排名
-	 * </p>
-	 * <p>
-	 * 下标从小到大排序
+	 * 通过key从list的头部删除一个value,并返回该value
 	 * </p>
 	 * 
 	 * @param key
-	 * @param member
 	 * @return
 	 */
-	public static Long zrank(String key, String member) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrank(key, member);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String lpop(final String key) {
+		return execute("lpop", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.lpop(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回zset中value的排名
-	 * </p>
-	 * <p>
-	 * 下标从大到小排序
+	 * 通过key从list尾部删除一个value,并返回该元素
 	 * </p>
 	 * 
 	 * @param key
-	 * @param member
 	 * @return
 	 */
-	public static Long zrevrank(String key, String member) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrevrank(key, member);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String rpop(final String key) {
+		return execute("rpop", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.rpop(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key将获取score从start到end中zset的value
-	 * </p>
-	 * <p>
-	 * socre从大到小排序
+	 * 通过key从一个list的尾部删除一个value并添加到另一个list的头部,并返回该value
 	 * </p>
 	 * <p>
-	 * 当start为0 end为-1时返回全部
+	 * 如果第一个list为空或者不存在则返回null
 	 * </p>
 	 * 
-	 * @param key
-	 * @param start
-	 * @param end
+	 * @param srckey
+	 * @param dstkey
 	 * @return
 	 */
-	public static Set<String> zrevrange(String key, long start, long end) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrevrange(key, start, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String rpoplpush(final String srckey, final String dstkey) {
+		return execute("rpoplpush", new String[] { srckey, dstkey }, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.rpoplpush(srckey, dstkey);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回指定score内zset中的value
+	 * 通过key获取list中指定下标位置的value
 	 * </p>
 	 * 
 	 * @param key
-	 * @param max
-	 * @param min
-	 * @return
+	 * @param index
+	 * @return 如果没有返回null
 	 */
-	public static Set<String> zrangeByScore(String key, String max, String min) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrangeByScore(key, max, min);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String lindex(final String key, final long index) {
+		return execute("lindex", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.lindex(key, index);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回指定score内zset中的value
+	 * 通过key返回list的长度
 	 * </p>
 	 * 
 	 * @param key
-	 * @param max
-	 * @param min
 	 * @return
 	 */
-	public static Set<String> zrangeByScore(String key, double max, double min) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrangeByScore(key, max, min);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long llen(final String key) {
+		return execute("llen", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.llen(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回指定score内zset中的value，并指定个数
+	 * 通过key获取list指定下标位置的value
+	 * </p>
+	 * <p>
+	 * 如果start 为 0 end 为 -1 则返回全部的list中的value
 	 * </p>
 	 * 
 	 * @param key
-	 * @param max
-	 * @param min
+	 * @param start
+	 * @param end
 	 * @return
 	 */
-	public static Set<String> zrangeByScore(String key, String max, String min, int begin, int end) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrangeByScore(key, max, min, begin, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static List<String> lrange(final String key, final long start, final long end) {
+		return execute("lrange", key, new JedisCallback<List<String>>() {
+			public List<String> doInRedis(Jedis jedis) {
+				return jedis.lrange(key, start, end);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回指定score内zset中的value，并指定个数
+	 * 通过key向指定的set中添加value
 	 * </p>
 	 * 
 	 * @param key
-	 * @param max
-	 * @param min
-	 * @return
+	 * @param members 可以是一个String 也可以是一个String数组
+	 * @return 添加成功的个数
 	 */
-	public static Set<String> zrangeByScore(String key, double max, double min, int begin, int end) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrangeByScore(key, max, min, begin, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long sadd(final String key, final String... members) {
+		return execute("sadd", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.sadd(key, members);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回指定score内zset中的value
+	 * 通过key删除set中对应的value值
 	 * </p>
 	 * 
 	 * @param key
-	 * @param max
-	 * @param min
-	 * @return
+	 * @param members 可以是一个String 也可以是一个String数组
+	 * @return 删除的个数
 	 */
-	public static Set<String> zrevrangeByScore(String key, String max, String min) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrevrangeByScore(key, max, min);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long srem(final String key, final String... members) {
+		return execute("srem", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.srem(key, members);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回指定score内zset中的value
+	 * 通过key随机删除一个set中的value并返回该值
 	 * </p>
 	 * 
 	 * @param key
-	 * @param max
-	 * @param min
 	 * @return
 	 */
-	public static Set<String> zrevrangeByScore(String key, double max, double min) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrevrangeByScore(key, max, min);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String spop(final String key) {
+		return execute("spop", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.spop(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回指定score内zset中的value，并指定个数
+	 * 通过key获取set中的差集
+	 * </p>
+	 * <p>
+	 * 以第一个set为标准
 	 * </p>
 	 * 
-	 * @param key
-	 * @param max
-	 * @param min
+	 * @param keys 可以使一个string 则返回set中所有的value 也可以是string数组
 	 * @return
 	 */
-	public static Set<String> zrevrangeByScore(String key, String max, String min, int begin, int end) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrevrangeByScore(key, max, min, begin, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Set<String> sdiff(final String... keys) {
+		return execute("sdiff", keys, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.sdiff(keys);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回指定score内zset中的value，并指定个数
+	 * 通过key获取set中的差集并存入到另一个key中
+	 * </p>
+	 * <p>
+	 * 以第一个set为标准
 	 * </p>
 	 * 
-	 * @param key
-	 * @param max
-	 * @param min
+	 * @param dstkey 差集存入的key
+	 * @param keys 可以使一个string 则返回set中所有的value 也可以是string数组
 	 * @return
 	 */
-	public static Set<String> zrevrangeByScore(String key, double max, double min, int begin, int end) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zrevrangeByScore(key, max, min, begin, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long sdiffstore(final String dstkey, final String... keys) {
+		return execute("sdiffstore", withKey(dstkey, keys), new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.sdiffstore(dstkey, keys);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 返回指定区间内zset中value的数量
+	 * 通过key获取指定set中的交集
 	 * </p>
 	 * 
-	 * @param key
-	 * @param min
-	 * @param max
+	 * @param keys 可以使一个string 也可以是一个string数组
 	 * @return
 	 */
-	public static Long zcount(String key, String min, String max) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zcount(key, min, max);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Set<String> sinter(final String... keys) {
+		return execute("sinter", keys, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.sinter(keys);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key返回zset中的value个数
+	 * 通过key获取指定set中的交集 并将结果存入新的set中
+	 * </p>
+	 * 
+	 * @param dstkey
+	 * @param keys 可以使一个string 也可以是一个string数组
+	 * @return
+	 */
+	public static Long sinterstore(final String dstkey, final String... keys) {
+		return execute("sinterstore", withKey(dstkey, keys), new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.sinterstore(dstkey, keys);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回所有set的并集
+	 * </p>
+	 * 
+	 * @param keys 可以使一个string 也可以是一个string数组
+	 * @return
+	 */
+	public static Set<String> sunion(final String... keys) {
+		return execute("sunion", keys, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.sunion(keys);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回所有set的并集,并存入到新的set中
+	 * </p>
+	 * 
+	 * @param dstkey
+	 * @param keys 可以使一个string 也可以是一个string数组
+	 * @return
+	 */
+	public static Long sunionstore(final String dstkey, final String... keys) {
+		return execute("sunionstore", withKey(dstkey, keys), new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.sunionstore(dstkey, keys);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key将set中的value移除并添加到第二个set中
+	 * </p>
+	 * 
+	 * @param srckey 需要移除的
+	 * @param dstkey 添加的
+	 * @param member set中的value
+	 * @return
+	 */
+	public static Long smove(final String srckey, final String dstkey, final String member) {
+		return execute("smove", new String[] { srckey, dstkey }, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.smove(srckey, dstkey, member);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key获取set中value的个数
 	 * </p>
 	 * 
 	 * @param key
 	 * @return
 	 */
-	public static Long zcard(String key) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zcard(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long scard(final String key) {
+		return execute("scard", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.scard(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key获取zset中value的score值
+	 * 通过key判断value是否是set中的元素
 	 * </p>
 	 * 
 	 * @param key
 	 * @param member
 	 * @return
 	 */
-	public static Double zscore(String key, String member) {
-		Jedis jedis = null;
-		Double res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zscore(key, member);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Boolean sismember(final String key, final String member) {
+		return execute("sismember", key, new JedisCallback<Boolean>() {
+			public Boolean doInRedis(Jedis jedis) {
+				return jedis.sismember(key, member);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key删除给定区间内的元素
+	 * 通过key获取set中随机的value,不删除元素
 	 * </p>
 	 * 
 	 * @param key
-	 * @param start
-	 * @param end
 	 * @return
 	 */
-	public static Long zremrangeByRank(String key, long start, long end) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zremrangeByRank(key, start, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static String srandmember(final String key) {
+		return execute("srandmember", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.srandmember(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key删除指定score内的元素
+	 * 通过key获取set中所有的value
+	 * </p>
+	 * <p>
+	 * 一次读入整个集合，大集合使用{@link #sscan(String)}按页读取
 	 * </p>
 	 * 
 	 * @param key
-	 * @param start
-	 * @param end
 	 * @return
 	 */
-	public static Long zremrangeByScore(String key, double start, double end) {
-		Jedis jedis = null;
-		Long res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.zremrangeByScore(key, start, end);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Set<String> smembers(final String key) {
+		return execute("smembers", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.smembers(key);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 返回满足pattern表达式的所有key
+	 * 通过key向zset中添加value,score,其中score就是用来排序的
 	 * </p>
 	 * <p>
-	 * keys(*)
+	 * 如果该value已经存在则根据score更新元素
+	 * </p>
+	 * 
+	 * @param key
+	 * @param scoreMembers
+	 * @return
+	 */
+	public static Long zadd(final String key, final Map<Double, String> scoreMembers) {
+		return execute("zadd", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zadd(key, scoreMembers);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key向zset中添加value,score,其中score就是用来排序的
 	 * </p>
 	 * <p>
-	 * 返回所有的key
+	 * 如果该value已经存在则根据score更新元素
 	 * </p>
 	 * 
-	 * @param pattern
+	 * @param key
+	 * @param score
+	 * @param member
 	 * @return
 	 */
-	public static Set<String> keys(String pattern) {
-		Jedis jedis = null;
-		Set<String> res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.keys(pattern);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long zadd(final String key, final double score, final String member) {
+		return execute("zadd", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zadd(key, score, member);
+			}
+		});
 	}
 
 	/**
 	 * <p>
-	 * 通过key判断值得类型
+	 * 通过key删除在zset中指定的value
 	 * </p>
 	 * 
 	 * @param key
+	 * @param members 可以使一个string 也可以是一个string数组
 	 * @return
 	 */
-	public static String type(String key) {
-		Jedis jedis = null;
-		String res = null;
-		try {
-			jedis = jedisPool.getResource();
-			res = jedis.type(key);
-		} catch (JedisConnectionException e1) {
-			jedisPool.returnBrokenResource(jedis);
-			e1.printStackTrace();
-			throw new JedisConnectionException("redis连接失败");
-		} catch (Exception e) {
-			jedisPool.returnBrokenResource(jedis);
-			e.printStackTrace();
-		} finally {
-			returnResource(jedis);
-		}
-		return res;
+	public static Long zrem(final String key, final String... members) {
+		return execute("zrem", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zrem(key, members);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key增加该zset中value的score的值
+	 * </p>
+	 * 
+	 * @param key
+	 * @param score
+	 * @param member
+	 * @return
+	 */
+	public static Double zincrby(final String key, final double score, final String member) {
+		return execute("zincrby", key, new JedisCallback<Double>() {
+			public Double doInRedis(Jedis jedis) {
+				return jedis.zincrby(key, score, member);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回zset中value的排名
+	 * </p>
+	 * <p>
+	 * 下标从小到大排序
+	 * </p>
+	 * 
+	 * @param key
+	 * @param member
+	 * @return
+	 */
+	public static Long zrank(final String key, final String member) {
+		return execute("zrank", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zrank(key, member);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回zset中value的排名
+	 * </p>
+	 * <p>
+	 * 下标从大到小排序
+	 * </p>
+	 * 
+	 * @param key
+	 * @param member
+	 * @return
+	 */
+	public static Long zrevrank(final String key, final String member) {
+		return execute("zrevrank", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zrevrank(key, member);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key将获取score从start到end中zset的value
+	 * </p>
+	 * <p>
+	 * socre从大到小排序
+	 * </p>
+	 * <p>
+	 * 当start为0 end为-1时返回全部
+	 * </p>
+	 * 
+	 * @param key
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static Set<String> zrevrange(final String key, final long start, final long end) {
+		return execute("zrevrange", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrevrange(key, start, end);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回指定score内zset中的value
+	 * </p>
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static Set<String> zrangeByScore(final String key, final String max, final String min) {
+		return execute("zrangeByScore", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrangeByScore(key, max, min);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回指定score内zset中的value
+	 * </p>
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static Set<String> zrangeByScore(final String key, final double max, final double min) {
+		return execute("zrangeByScore", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrangeByScore(key, max, min);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回指定score内zset中的value，并指定个数
+	 * </p>
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static Set<String> zrangeByScore(final String key, final String max, final String min, final int begin, final int end) {
+		return execute("zrangeByScore", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrangeByScore(key, max, min, begin, end);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回指定score内zset中的value，并指定个数
+	 * </p>
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static Set<String> zrangeByScore(final String key, final double max, final double min, final int begin, final int end) {
+		return execute("zrangeByScore", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrangeByScore(key, max, min, begin, end);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回指定score内zset中的value
+	 * </p>
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static Set<String> zrevrangeByScore(final String key, final String max, final String min) {
+		return execute("zrevrangeByScore", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrevrangeByScore(key, max, min);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回指定score内zset中的value
+	 * </p>
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static Set<String> zrevrangeByScore(final String key, final double max, final double min) {
+		return execute("zrevrangeByScore", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrevrangeByScore(key, max, min);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回指定score内zset中的value，并指定个数
+	 * </p>
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static Set<String> zrevrangeByScore(final String key, final String max, final String min, final int begin, final int end) {
+		return execute("zrevrangeByScore", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrevrangeByScore(key, max, min, begin, end);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回指定score内zset中的value，并指定个数
+	 * </p>
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @return
+	 */
+	public static Set<String> zrevrangeByScore(final String key, final double max, final double min, final int begin, final int end) {
+		return execute("zrevrangeByScore", key, new JedisCallback<Set<String>>() {
+			public Set<String> doInRedis(Jedis jedis) {
+				return jedis.zrevrangeByScore(key, max, min, begin, end);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 返回指定区间内zset中value的数量
+	 * </p>
+	 * 
+	 * @param key
+	 * @param min
+	 * @param max
+	 * @return
+	 */
+	public static Long zcount(final String key, final String min, final String max) {
+		return execute("zcount", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zcount(key, min, max);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key返回zset中的value个数
+	 * </p>
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public static Long zcard(final String key) {
+		return execute("zcard", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zcard(key);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key获取zset中value的score值
+	 * </p>
+	 * 
+	 * @param key
+	 * @param member
+	 * @return
+	 */
+	public static Double zscore(final String key, final String member) {
+		return execute("zscore", key, new JedisCallback<Double>() {
+			public Double doInRedis(Jedis jedis) {
+				return jedis.zscore(key, member);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key删除给定区间内的元素
+	 * </p>
+	 * 
+	 * @param key
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static Long zremrangeByRank(final String key, final long start, final long end) {
+		return execute("zremrangeByRank", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zremrangeByRank(key, start, end);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key删除指定score内的元素
+	 * </p>
+	 * 
+	 * @param key
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static Long zremrangeByScore(final String key, final double start, final double end) {
+		return execute("zremrangeByScore", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.zremrangeByScore(key, start, end);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 以默认COUNT按页遍历满足pattern的key，见{@link #scan(String, int)}
+	 * </p>
+	 * 
+	 * @param pattern
+	 * @return 每页一组key
+	 */
+	public static ScanCursor<String> scan(String pattern) {
+		return scan(pattern, scanCount);
+	}
+
+	/**
+	 * <p>
+	 * 以SCAN游标按页遍历满足pattern的key，每页只执行一次很短的命令，不会像KEYS一样长时间阻塞redis
+	 * </p>
+	 * <p>
+	 * 读取下一页时才访问redis，每页借出、归还一次连接；同一个key可能返回多次。分片模式下依次遍历各节点
+	 * </p>
+	 * 
+	 * @param pattern
+	 * @param count 每页的COUNT，实际返回的key数可能少于或多于该值
+	 * @return 每页一组key；读取失败时hasNext()/next()抛出IllegalStateException
+	 */
+	public static ScanCursor<String> scan(final String pattern, final int count) {
+		return new ScanCursor<String>() {
+			private int node;
+
+			protected String scan(String cursor, List<String> page) {
+				// 空游标表示从头遍历下一个节点
+				String next = scanPage(node, cursor.length() == 0 ? START : cursor, pattern, count, page);
+				if (START.equals(next) && node < nodes.length - 1) {
+					node++;
+					return "";
+				}
+				return next;
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 按页遍历满足pattern的key，每页的值用一次mget读取
+	 * </p>
+	 * 
+	 * @param pattern
+	 * @param count 每页的COUNT
+	 * @return 每页一组key -> value，遍历期间已删除的key不返回；读取失败时hasNext()/next()抛出IllegalStateException
+	 */
+	public static Iterator<Map<String, String>> scanValues(String pattern, int count) {
+		final ScanCursor<String> keys = scan(pattern, count);
+		return new Iterator<Map<String, String>>() {
+			public boolean hasNext() {
+				return keys.hasNext();
+			}
+
+			public Map<String, String> next() {
+				List<String> page = keys.next();
+				List<String> values = mget(page.toArray(new String[page.size()]));
+				if (values == null) {
+					throw new IllegalStateException("读取" + page.size() + "个key的值失败");
+				}
+				Map<String, String> res = new LinkedHashMap<String, String>(page.size() * 2);
+				for (int i = 0; i < page.size(); i++) {
+					if (values.get(i) != null) {
+						res.put(page.get(i), values.get(i));
+					}
+				}
+				return res;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 以默认COUNT删除满足pattern的key，见{@link #delByPattern(String, int)}
+	 * </p>
+	 * 
+	 * @param pattern
+	 * @return 删除的key数
+	 */
+	public static long delByPattern(String pattern) {
+		return delByPattern(pattern, scanCount);
+	}
+
+	/**
+	 * <p>
+	 * 按页遍历满足pattern的key，每页用一次del删除
+	 * </p>
+	 * 
+	 * @param pattern
+	 * @param count 每页的COUNT
+	 * @return 删除的key数
+	 * @throws IllegalStateException 遍历或删除失败，之前的页已删除
+	 */
+	public static long delByPattern(String pattern, int count) {
+		long deleted = 0;
+		for (ScanCursor<String> it = scan(pattern, count); it.hasNext();) {
+			List<String> page = it.next();
+			if (page.isEmpty()) {
+				continue;
+			}
+			Long res = delPage(page.toArray(new String[page.size()]));
+			if (res == null) {
+				throw new IllegalStateException("删除" + page.size() + "个满足" + pattern + "的key失败，已删除" + deleted + "个");
+			}
+			deleted += res;
+		}
+		return deleted;
+	}
+
+	/**
+	 * 同{@link #del(String...)}，但失败时返回null而不是0；分片模式下任一节点失败返回null
+	 */
+	private static Long delPage(final String... keys) {
+		List<List<Integer>> groups = splitByNode(keys);
+		if (groups != null) {
+			List<Long> res = inParallel(groups, new ShardTask<Long>() {
+				public Long run(List<Integer> index) {
+					return delPage(pick(keys, index));
+				}
+			});
+			return res.contains(null) ? null : sum(res);
+		}
+		return execute("del", keys, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.del(keys);
+				invalidate(keys);
+				return res;
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 以默认COUNT按页遍历hash的全部field，见{@link #hscan(String, String, int)}
+	 * </p>
+	 * 
+	 * @param key
+	 * @return 每页一组field、value
+	 */
+	public static ScanCursor<Map.Entry<String, String>> hscan(String key) {
+		return hscan(key, "*", scanCount);
+	}
+
+	/**
+	 * <p>
+	 * 以HSCAN游标按页遍历hash中满足pattern的field，代替大hash的hgetAll、hkeys、hvals
+	 * </p>
+	 * <p>
+	 * 调用next()时才读取下一页，内存中只有当前页，消费多慢读取就多慢；同一个field可能返回多次。
+	 * 小hash(紧凑编码)会在一页内全部返回
+	 * </p>
+	 * 
+	 * @param key
+	 * @param pattern field的pattern
+	 * @param count 每页的COUNT
+	 * @return 每页一组field、value；读取失败时hasNext()/next()抛出IllegalStateException
+	 */
+	public static ScanCursor<Map.Entry<String, String>> hscan(final String key, final String pattern, final int count) {
+		return new ScanCursor<Map.Entry<String, String>>() {
+			@SuppressWarnings("unchecked")
+			protected String scan(String cursor, List<Map.Entry<String, String>> page) {
+				List<Object> res = scanCollection("hscan", key, cursor, pattern, count);
+				List<Object> items = (List<Object>) res.get(1);
+				for (int i = 0; i + 1 < items.size(); i += 2) {
+					page.add(new AbstractMap.SimpleImmutableEntry<String, String>((String) items.get(i), (String) items
+							.get(i + 1)));
+				}
+				return (String) res.get(0);
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 以默认COUNT按页遍历set的全部成员，见{@link #sscan(String, String, int)}
+	 * </p>
+	 * 
+	 * @param key
+	 * @return 每页一组成员
+	 */
+	public static ScanCursor<String> sscan(String key) {
+		return sscan(key, "*", scanCount);
+	}
+
+	/**
+	 * <p>
+	 * 以SSCAN游标按页遍历set中满足pattern的成员，代替大set的smembers
+	 * </p>
+	 * 
+	 * @param key
+	 * @param pattern 成员的pattern
+	 * @param count 每页的COUNT
+	 * @return 每页一组成员，同一成员可能返回多次；读取失败时hasNext()/next()抛出IllegalStateException
+	 */
+	public static ScanCursor<String> sscan(final String key, final String pattern, final int count) {
+		return new ScanCursor<String>() {
+			@SuppressWarnings("unchecked")
+			protected String scan(String cursor, List<String> page) {
+				List<Object> res = scanCollection("sscan", key, cursor, pattern, count);
+				for (Object member : (List<Object>) res.get(1)) {
+					page.add((String) member);
+				}
+				return (String) res.get(0);
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 以默认COUNT按页遍历sorted set的全部成员，见{@link #zscan(String, String, int)}
+	 * </p>
+	 * 
+	 * @param key
+	 * @return 每页一组成员及分数
+	 */
+	public static ScanCursor<Tuple> zscan(String key) {
+		return zscan(key, "*", scanCount);
+	}
+
+	/**
+	 * <p>
+	 * 以ZSCAN游标按页遍历sorted set中满足pattern的成员，不保证顺序；需要按分数顺序时使用{@link #zrevrangePaged(String, int)}
+	 * </p>
+	 * 
+	 * @param key
+	 * @param pattern 成员的pattern
+	 * @param count 每页的COUNT
+	 * @return 每页一组成员及分数，同一成员可能返回多次；读取失败时hasNext()/next()抛出IllegalStateException
+	 */
+	public static ScanCursor<Tuple> zscan(final String key, final String pattern, final int count) {
+		return new ScanCursor<Tuple>() {
+			@SuppressWarnings("unchecked")
+			protected String scan(String cursor, List<Tuple> page) {
+				List<Object> res = scanCollection("zscan", key, cursor, pattern, count);
+				List<Object> items = (List<Object>) res.get(1);
+				for (int i = 0; i + 1 < items.size(); i += 2) {
+					page.add(new Tuple((String) items.get(i), Double.valueOf((String) items.get(i + 1))));
+				}
+				return (String) res.get(0);
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 以lrange窗口按页从头到尾读取list，每页pageSize个元素，代替lrange(key, 0, -1)
+	 * </p>
+	 * <p>
+	 * list没有游标，按下标分页：遍历期间在头部插入或删除元素会使后续页重复或漏掉元素，在尾部追加的元素会被读到
+	 * </p>
+	 * 
+	 * @param key
+	 * @param pageSize 每页元素数，至少为1
+	 * @return 每页一组元素；读取失败时hasNext()/next()抛出IllegalStateException
+	 * @throws IllegalArgumentException pageSize小于1
+	 */
+	public static ScanCursor<String> lrangePaged(final String key, final int pageSize) {
+		checkPageSize(pageSize);
+		return new ScanCursor<String>() {
+			protected String scan(String cursor, List<String> page) {
+				long start = Long.parseLong(cursor);
+				List<String> res = lrange(key, start, start + pageSize - 1);
+				if (res == null) {
+					throw new IllegalStateException("LRANGE " + key + "失败");
+				}
+				page.addAll(res);
+				return res.size() < pageSize ? START : String.valueOf(start + pageSize);
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 以zrevrange窗口按分数从高到低分页读取sorted set，每页pageSize个成员，代替zrevrange(key, 0, -1)
+	 * </p>
+	 * <p>
+	 * 按排名分页：遍历期间排名靠前的成员增删会使后续页重复或漏掉成员
+	 * </p>
+	 * 
+	 * @param key
+	 * @param pageSize 每页成员数，至少为1
+	 * @return 每页一组成员；读取失败时hasNext()/next()抛出IllegalStateException
+	 * @throws IllegalArgumentException pageSize小于1
+	 */
+	public static ScanCursor<String> zrevrangePaged(final String key, final int pageSize) {
+		checkPageSize(pageSize);
+		return new ScanCursor<String>() {
+			protected String scan(String cursor, List<String> page) {
+				long start = Long.parseLong(cursor);
+				Set<String> res = zrevrange(key, start, start + pageSize - 1);
+				if (res == null) {
+					throw new IllegalStateException("ZREVRANGE " + key + "失败");
+				}
+				page.addAll(res);
+				return res.size() < pageSize ? START : String.valueOf(start + pageSize);
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 返回满足pattern表达式的所有key
+	 * </p>
+	 * <p>
+	 * keys(*)
+	 * </p>
+	 * <p>
+	 * 返回所有的key
+	 * </p>
+	 * 
+	 * @param pattern
+	 * @return 满足pattern的所有key，分片模式下为各节点的并集，任一节点异常返回null
+	 * @deprecated KEYS遍历整个库期间阻塞redis，结果一次性读入内存，只用于测试；使用{@link #scan(String)}
+	 */
+	@Deprecated
+	public static Set<String> keys(final String pattern) {
+		Set<String> res = new HashSet<String>();
+		for (int node = 0; node < nodes.length; node++) {
+			Set<String> keys = execute(node, "keys", pattern, new JedisCallback<Set<String>>() {
+				public Set<String> doInRedis(Jedis jedis) {
+					return jedis.keys(pattern);
+				}
+			});
+			if (keys == null) {
+				return null;
+			}
+			if (nodes.length == 1) {
+				return keys;
+			}
+			res.addAll(keys);
+		}
+		return res;
+	}
+
+	/**
+	 * <p>
+	 * 通过key判断值得类型
+	 * </p>
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public static String type(final String key) {
+		return execute("type", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				return jedis.type(key);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key获取二进制value，不经过近端缓存
+	 * </p>
+	 * 
+	 * @param key
+	 * @return 成功返回value 失败返回null
+	 */
+	public static byte[] get(final byte[] key) {
+		return execute("get", key, new JedisCallback<byte[]>() {
+			public byte[] doInRedis(Jedis jedis) {
+				return jedis.get(key);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key获取value并用serializer反序列化，不经过近端缓存
+	 * </p>
+	 * 
+	 * @param key
+	 * @param serializer
+	 * @return key不存在或异常返回null
+	 */
+	public static <T> T get(String key, RedisSerializer<T> serializer) {
+		byte[] value = get(SafeEncoder.encode(key));
+		return value == null ? null : serializer.deserialize(value);
+	}
+
+	/**
+	 * <p>
+	 * 存入二进制key和value，如果key已经存在则覆盖
+	 * </p>
+	 * 
+	 * @param key
+	 * @param value
+	 * @return 成功返回OK 失败返回0
+	 */
+	public static String set(final byte[] key, final byte[] value) {
+		String res = execute("set", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.set(key, value);
+				invalidate(key);
+				return res;
+			}
+		});
+		return res == null ? "0" : res;
+	}
+
+	/**
+	 * <p>
+	 * 用serializer序列化value后存入，如果key已经存在则覆盖
+	 * </p>
+	 * 
+	 * @param key
+	 * @param value
+	 * @param serializer
+	 * @return 成功返回OK 失败返回0
+	 */
+	public static <T> String set(String key, T value, RedisSerializer<T> serializer) {
+		return set(SafeEncoder.encode(key), serializer.serialize(value));
+	}
+
+	/**
+	 * <p>
+	 * 存入二进制key和value，并设置有效期
+	 * </p>
+	 * 
+	 * @param key
+	 * @param seconds 单位:秒
+	 * @param value
+	 * @return 成功返回OK 失败和异常返回null
+	 */
+	public static String setex(final byte[] key, final int seconds, final byte[] value) {
+		return execute("setex", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.setex(key, seconds, value);
+				invalidate(key);
+				return res;
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过批量的二进制key获取批量的value，不经过近端缓存
+	 * </p>
+	 * 
+	 * @param keys
+	 * @return 成功返回value的集合，key不存在的位置为null，异常返回null；分片模式下按节点拆分并行读取
+	 */
+	public static List<byte[]> mget(final byte[]... keys) {
+		List<List<Integer>> groups = splitByNode(keys);
+		if (groups != null) {
+			return merge(keys.length, groups, inParallel(groups, new ShardTask<List<byte[]>>() {
+				public List<byte[]> run(List<Integer> index) {
+					return mget(pick(keys, index));
+				}
+			}));
+		}
+		return execute("mget", keys, new JedisCallback<List<byte[]>>() {
+			public List<byte[]> doInRedis(Jedis jedis) {
+				return jedis.mget(keys);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过批量的key获取value并用serializer反序列化，不经过近端缓存
+	 * </p>
+	 * 
+	 * @param serializer
+	 * @param keys
+	 * @return 与keys一一对应，key不存在的位置为null，异常返回null
+	 */
+	public static <T> List<T> mget(RedisSerializer<T> serializer, String... keys) {
+		byte[][] bkeys = new byte[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			bkeys[i] = SafeEncoder.encode(keys[i]);
+		}
+		List<byte[]> values = mget(bkeys);
+		if (values == null) {
+			return null;
+		}
+		List<T> res = new ArrayList<T>(values.size());
+		for (byte[] value : values) {
+			res.add(value == null ? null : serializer.deserialize(value));
+		}
+		return res;
+	}
+
+	/**
+	 * <p>
+	 * 批量设置二进制key:value
+	 * </p>
+	 * 
+	 * @param keysvalues key、value交替
+	 * @return 成功返回OK 失败 异常 返回 null；分片模式下按节点拆分并行设置，各节点都成功才返回OK
+	 */
+	public static String mset(final byte[]... keysvalues) {
+		final byte[][] keys = new byte[keysvalues.length / 2][];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = keysvalues[i * 2];
+		}
+		List<List<Integer>> groups = splitByNode(keys);
+		if (groups != null) {
+			return allOk(inParallel(groups, new ShardTask<String>() {
+				public String run(List<Integer> index) {
+					return mset(pickPairs(keysvalues, index));
+				}
+			}));
+		}
+		return execute("mset", keys, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.mset(keysvalues);
+				invalidate(keys);
+				return res;
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 删除指定的二进制key
+	 * </p>
+	 * 
+	 * @param keys
+	 * @return 返回删除成功的个数；分片模式下按节点拆分并行删除，返回各节点之和
+	 */
+	public static Long del(final byte[]... keys) {
+		List<List<Integer>> groups = splitByNode(keys);
+		if (groups != null) {
+			return sum(inParallel(groups, new ShardTask<Long>() {
+				public Long run(List<Integer> index) {
+					return del(pick(keys, index));
+				}
+			}));
+		}
+		Long res = execute("del", keys, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.del(keys);
+				invalidate(keys);
+				return res;
+			}
+		});
+		return res == null ? 0L : res;
+	}
+
+	/**
+	 * <p>
+	 * 通过key和field获取二进制value，不经过近端缓存
+	 * </p>
+	 * 
+	 * @param key
+	 * @param field
+	 * @return 没有返回null
+	 */
+	public static byte[] hget(final byte[] key, final byte[] field) {
+		return execute("hget", key, new JedisCallback<byte[]>() {
+			public byte[] doInRedis(Jedis jedis) {
+				return jedis.hget(key, field);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key和多个field获取二进制value，不经过近端缓存
+	 * </p>
+	 * 
+	 * @param key
+	 * @param fields
+	 * @return 与fields一一对应，field不存在的位置为null，异常返回null
+	 */
+	public static List<byte[]> hmget(final byte[] key, final byte[]... fields) {
+		return execute("hmget", key, new JedisCallback<List<byte[]>>() {
+			public List<byte[]> doInRedis(Jedis jedis) {
+				return jedis.hmget(key, fields);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 给key中的field设置二进制value
+	 * </p>
+	 * 
+	 * @param key
+	 * @param field
+	 * @param value
+	 * @return 新增field返回1，覆盖返回0，异常返回null
+	 */
+	public static Long hset(final byte[] key, final byte[] field, final byte[] value) {
+		return execute("hset", key, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				Long res = jedis.hset(key, field, value);
+				invalidate(key);
+				return res;
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key同时设置多个二进制field
+	 * </p>
+	 * 
+	 * @param key
+	 * @param hash
+	 * @return 成功返回OK 异常返回null
+	 */
+	public static String hmset(final byte[] key, final Map<byte[], byte[]> hash) {
+		return execute("hmset", key, new JedisCallback<String>() {
+			public String doInRedis(Jedis jedis) {
+				String res = jedis.hmset(key, hash);
+				invalidate(key);
+				return res;
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 通过key获取所有的二进制field和value，不经过近端缓存
+	 * </p>
+	 * 
+	 * @param key
+	 * @return 异常返回null
+	 */
+	public static Map<byte[], byte[]> hgetAll(final byte[] key) {
+		return execute("hgetall", key, new JedisCallback<Map<byte[], byte[]>>() {
+			public Map<byte[], byte[]> doInRedis(Jedis jedis) {
+				return jedis.hgetAll(key);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 向指定频道发布消息
+	 * </p>
+	 * 
+	 * @param channel
+	 * @param message
+	 * @return 收到消息的订阅者数量 异常返回0L
+	 */
+	public static Long publish(final String channel, final String message) {
+		// 频道只在第一个节点上，与subscribe一致
+		Long res = execute(0, "publish", channel, new JedisCallback<Long>() {
+			public Long doInRedis(Jedis jedis) {
+				return jedis.publish(channel, message);
+			}
+		});
+		return res == null ? 0L : res;
+	}
+
+	/**
+	 * <p>
+	 * 订阅频道,该方法会一直阻塞并占用一个连接,直到取消订阅或连接断开
+	 * </p>
+	 * 
+	 * @param jedisPubSub 消息处理器
+	 * @param channels
+	 */
+	public static void subscribe(JedisPubSub jedisPubSub, String... channels) {
+		Jedis jedis = null;
+		try {
+			jedis = getResource(0);
+			jedis.subscribe(jedisPubSub, channels);
+		} catch (JedisConnectionException e1) {
+			jedis = discardIfBroken(0, jedis, e1);
+			throw new JedisConnectionException("redis连接失败", e1);
+		} finally {
+			returnResource(0, jedis);
+		}
+	}
+
+	/**
+	 * 执行lua脚本,优先使用EVALSHA,脚本未缓存时(NOSCRIPT)退回EVAL
+	 */
+	private static Object evalScript(Jedis jedis, String script, String sha, List<String> keys, List<String> args) {
+		Object res = evalReadOnly(jedis, script, sha, keys, args);
+		// 脚本可能修改了KEYS中的任意key
+		invalidate(keys.toArray(new String[keys.size()]));
+		return res;
+	}
+
+	/**
+	 * 执行只读的lua脚本,不使近端缓存失效
+	 */
+	private static Object evalReadOnly(Jedis jedis, String script, String sha, List<String> keys, List<String> args) {
+		try {
+			return jedis.evalsha(sha, keys, args);
+		} catch (JedisDataException e) {
+			if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+				throw e;
+			}
+			return jedis.eval(script, keys, args);
+		}
+	}
+
+	/**
+	 * 执行一次HSCAN/SSCAN/ZSCAN，返回{下一游标, 元素列表}
+	 * 
+	 * @throws IllegalStateException 读取失败
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Object> scanCollection(final String command, final String key, final String cursor,
+			final String pattern, final int count) {
+		List<Object> res = execute(command, key, new JedisCallback<List<Object>>() {
+			public List<Object> doInRedis(Jedis jedis) {
+				return (List<Object>) evalReadOnly(jedis, COLLECTION_SCAN_SCRIPT, COLLECTION_SCAN_SHA,
+						Collections.singletonList(key), Arrays.asList(command, cursor, pattern, String.valueOf(count)));
+			}
+		});
+		if (res == null) {
+			throw new IllegalStateException(command.toUpperCase() + " " + key + "失败");
+		}
+		return res;
+	}
+
+	/**
+	 * 页大小小于1时窗口为空，读到的元素数永远不少于页大小，遍历不会结束
+	 */
+	private static void checkPageSize(int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("每页个数必须大于0：" + pageSize);
+		}
+	}
+
+	/**
+	 * 在指定节点上执行一次SCAN，读到的key放入page
+	 * 
+	 * @return 下一页的游标
+	 * @throws IllegalStateException 读取失败
+	 */
+	@SuppressWarnings("unchecked")
+	private static String scanPage(int node, final String cursor, final String pattern, final int count,
+			List<String> page) {
+		List<Object> res = execute(node, "scan", pattern, new JedisCallback<List<Object>>() {
+			public List<Object> doInRedis(Jedis jedis) {
+				return (List<Object>) evalReadOnly(jedis, SCAN_SCRIPT, SCAN_SHA, Collections.<String> emptyList(),
+						Arrays.asList(cursor, pattern, String.valueOf(count)));
+			}
+		});
+		if (res == null) {
+			throw new IllegalStateException("SCAN " + pattern + "失败");
+		}
+		for (Object key : (List<Object>) res.get(1)) {
+			page.add((String) key);
+		}
+		return (String) res.get(0);
+	}
+
+	/**
+	 * 近端缓存的mget：命中的key直接返回，未命中的key一次mget读取并回填
+	 */
+	private static List<String> nearCacheMget(final String... keys) {
+		List<String> values = new ArrayList<String>(keys.length);
+		List<String> missing = new ArrayList<String>();
+		int[] missingIndex = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			Object cached = nearCache.get(keys[i]);
+			if (cached == null) {
+				missingIndex[missing.size()] = i;
+				missing.add(keys[i]);
+			}
+			values.add(cached == null || cached == NearCache.NULL ? null : (String) cached);
+		}
+		if (missing.isEmpty()) {
+			return values;
+		}
+		long[] versions = new long[missing.size()];
+		for (int j = 0; j < versions.length; j++) {
+			versions[j] = nearCache.version(missing.get(j));
+		}
+		List<String> loaded = mgetFromRedis(missing.toArray(new String[missing.size()]));
+		if (loaded == null) {
+			return null;
+		}
+		for (int j = 0; j < missing.size(); j++) {
+			values.set(missingIndex[j], loaded.get(j));
+			nearCache.put(missing.get(j), loaded.get(j), versions[j]);
+		}
+		return values;
+	}
+
+	/**
+	 * 写操作后立即使本节点的近端缓存失效，其他节点的失效通知交给后台线程合并发布，写操作不多一次往返
+	 */
+	static void invalidate(String... keys) {
+		if (nearCache == null || keys.length == 0) {
+			return;
+		}
+		nearCache.invalidate(keys);
+		invalidations.offer(keys);
+	}
+
+	/**
+	 * 二进制key写入后使近端缓存失效
+	 */
+	private static void invalidate(byte[]... keys) {
+		if (nearCache == null || keys.length == 0) {
+			return;
+		}
+		String[] skeys = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			skeys[i] = SafeEncoder.encode(keys[i]);
+		}
+		invalidate(skeys);
+	}
+
+	/**
+	 * 取出key,value交替数组中的key
+	 */
+	private static String[] keysOf(String[] keysvalues) {
+		String[] keys = new String[keysvalues.length / 2];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = keysvalues[i * 2];
+		}
+		return keys;
+	}
+
+	/**
+	 * 合并两组key
+	 */
+	private static String[] withKey(String[] first, String... keys) {
+		String[] res = Arrays.copyOf(first, first.length + keys.length);
+		System.arraycopy(keys, 0, res, first.length, keys.length);
+		return res;
+	}
+
+	private static String[] withKey(String key, String... keys) {
+		return withKey(new String[] { key }, keys);
+	}
+
+	/**
+	 * 取出指定下标的元素
+	 */
+	private static <T> T[] pick(T[] array, List<Integer> index) {
+		T[] res = Arrays.copyOf(array, index.size());
+		for (int i = 0; i < res.length; i++) {
+			res[i] = array[index.get(i)];
+		}
+		return res;
+	}
+
+	/**
+	 * 从key,value交替的数组中取出指定下标的key及其value
+	 */
+	private static <T> T[] pickPairs(T[] keysvalues, List<Integer> index) {
+		T[] res = Arrays.copyOf(keysvalues, index.size() * 2);
+		for (int i = 0; i < index.size(); i++) {
+			res[i * 2] = keysvalues[index.get(i) * 2];
+			res[i * 2 + 1] = keysvalues[index.get(i) * 2 + 1];
+		}
+		return res;
+	}
+
+	/**
+	 * 按原顺序合并各节点的读取结果，任一节点失败返回null
+	 */
+	private static <T> List<T> merge(int size, List<List<Integer>> groups, List<List<T>> results) {
+		List<T> res = new ArrayList<T>(Collections.<T> nCopies(size, null));
+		for (int g = 0; g < groups.size(); g++) {
+			if (results.get(g) == null) {
+				return null;
+			}
+			List<Integer> index = groups.get(g);
+			for (int i = 0; i < index.size(); i++) {
+				res.set(index.get(i), results.get(g).get(i));
+			}
+		}
+		return res;
+	}
+
+	private static Long sum(List<Long> results) {
+		long sum = 0;
+		for (Long n : results) {
+			if (n != null) {
+				sum += n;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * 各节点都返回OK时返回OK，否则返回null
+	 */
+	private static String allOk(List<String> results) {
+		for (String res : results) {
+			if (!"OK".equals(res)) {
+				return null;
+			}
+		}
+		return "OK";
+	}
+
+	/**
+	 * 数据key之后附带版本号key,versionKey为null时只有数据key
+	 */
+	private static List<String> versionedKeys(String key, String versionKey) {
+		if (versionKey == null) {
+			return Collections.singletonList(key);
+		}
+		List<String> keys = new ArrayList<String>(2);
+		keys.add(key);
+		keys.add(versionKey);
+		return keys;
+	}
+
+	/**
+	 * 带版本号的脚本结果中的值,异常时为null
+	 */
+	private static Long first(List<Long> res) {
+		return res == null ? null : res.get(0);
+	}
+
+	/**
+	 * 登记一个lua脚本，预热时加载
+	 */
+	private static String script(String lua) {
+		SCRIPTS.add(lua);
+		return lua;
+	}
+
+	/**
+	 * 计算脚本的SHA1摘要,与redis SCRIPT LOAD返回值一致
+	 */
+	private static String sha1(String script) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(script.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 分片模式下批量操作中一个节点上的部分
+	 */
+	private interface ShardTask<T> {
+
+		/**
+		 * @param index 该节点上的key在原数组中的下标
+		 */
+		T run(List<Integer> index);
+	}
+
+	/**
+	 * 线程当前借出的连接，execute嵌套调用时复用
+	 */
+	private static final class Binding {
+		private Jedis jedis;
+
+		/**
+		 * jedis所属的节点
+		 */
+		private int node;
+
+		/**
+		 * 嵌套调用中发生了可能损坏连接的异常，外层归还时丢弃连接
+		 */
+		private boolean broken;
+
+		/**
+		 * 正在执行的管道，嵌套调用直接执行命令前先读取管道中的回复
+		 */
+		private RedisPipeline pipeline;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package com.mvc.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * redis游标遍历，按页惰性读取
+ * <p>
+ * 每次next()才向redis读取下一页，内存中只保留当前页；空页自动跳过。
+ * 与SCAN语义相同：遍历期间一直存在的元素至少返回一次，可能重复返回，遍历期间增删的元素不保证返回。
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+public abstract class ScanCursor<T> implements Iterator<List<T>> {
+
+	/**
+	 * 起始及结束游标
+	 */
+	static final String START = "0";
+
+	private String cursor = START;
+	private boolean finished;
+	private List<T> page;
+
+	/**
+	 * 读取一页
+	 *
+	 * @param cursor 本页的游标
+	 * @param page 读到的元素放入page
+	 * @return 下一页的游标，遍历结束返回{@link #START}
+	 */
+	protected abstract String scan(String cursor, List<T> page);
+
+	/**
+	 * @throws IllegalStateException 读取失败
+	 */
+	public boolean hasNext() {
+		while (page == null && !finished) {
+			List<T> next = new ArrayList<T>();
+			cursor = scan(cursor, next);
+			finished = START.equals(cursor);
+			if (!next.isEmpty()) {
+				page = next;
+			}
+		}
+		return page != null;
+	}
+
+	/**
+	 * @return 下一页，不为空
+	 * @throws IllegalStateException 读取失败
+	 */
+	public List<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		List<T> res = page;
+		page = null;
+		return res;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
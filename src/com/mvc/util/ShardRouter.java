@@ -0,0 +1,64 @@
+package com.mvc.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import redis.clients.util.Hashing;
+
+/**
+ * 一致性哈希：把key映射到redis节点
+ * <p>
+ * 每个节点按地址在环上放置若干虚拟节点，增删一个节点只会移动约1/N的key。
+ * key中含有非空的{...}时只按第一个{}中的内容(hash tag)计算，相同hash tag的key总在同一节点，
+ * 可以在一个脚本或事务中一起操作。
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+final class ShardRouter {
+
+	/**
+	 * 每个节点的虚拟节点数，越多分布越均匀
+	 */
+	private static final int VIRTUAL_NODES = 160;
+
+	/**
+	 * 哈希值 -> 节点下标
+	 */
+	private final TreeMap<Long, Integer> ring = new TreeMap<Long, Integer>();
+
+	/**
+	 * @param addresses 各节点的地址(host:port)，作为虚拟节点的名称，调整顺序不影响分布
+	 */
+	ShardRouter(List<String> addresses) {
+		for (int i = 0; i < addresses.size(); i++) {
+			for (int v = 0; v < VIRTUAL_NODES; v++) {
+				ring.put(Hashing.MURMUR_HASH.hash(addresses.get(i) + "#" + v), i);
+			}
+		}
+	}
+
+	/**
+	 * @return key所在节点的下标
+	 */
+	int nodeFor(String key) {
+		Map.Entry<Long, Integer> entry = ring.ceilingEntry(Hashing.MURMUR_HASH.hash(hashTag(key)));
+		return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+	}
+
+	/**
+	 * key中第一个非空{}的内容，没有时返回key本身
+	 */
+	static String hashTag(String key) {
+		int start = key.indexOf('{');
+		if (start >= 0) {
+			int end = key.indexOf('}', start + 1);
+			if (end > start + 1) {
+				return key.substring(start + 1, end);
+			}
+		}
+		return key;
+	}
+}
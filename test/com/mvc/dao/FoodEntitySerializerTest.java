@@ -0,0 +1,77 @@
+package com.mvc.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.mvc.entity.FoodEntity;
+
+/**
+ * 菜品二进制格式的编解码往返和异常数据，不需要redis
+ *
+ * @author 23006
+ *
+ */
+public class FoodEntitySerializerTest {
+
+	private static final FoodEntitySerializer SERIALIZER = FoodEntitySerializer.INSTANCE;
+
+	@Test
+	public void roundTrip() {
+		String[] foodIds = { "", "1", "a1", "宫保鸡丁", "🍜面", repeat('x', 200) };
+		long[] numbers = { 0, 1, -1, 63, -64, 64, -65, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE,
+				Long.MAX_VALUE, Long.MIN_VALUE };
+		for (String foodId : foodIds) {
+			for (long number : numbers) {
+				FoodEntity food = SERIALIZER.deserialize(SERIALIZER.serialize(new FoodEntity(foodId, number)));
+				assertEquals(foodId, food.getFoodId());
+				assertEquals(number, food.getFoodNumber());
+			}
+		}
+	}
+
+	@Test
+	public void compactLayout() {
+		// 格式版本 + 长度 + "1" + zigzag(-1)=1
+		assertEquals("[1, 1, 49, 1]", Arrays.toString(SERIALIZER.serialize(new FoodEntity("1", -1))));
+		// 中文每个字3个字节，长度按字节计
+		byte[] bytes = SERIALIZER.serialize(new FoodEntity("鸡丁", 64));
+		assertEquals(1 + 1 + 6 + 2, bytes.length);
+		assertEquals(6, (int) bytes[1]);
+		// 超过127字节的编号长度占2个字节
+		assertEquals(1 + 2 + 200 + 1, SERIALIZER.serialize(new FoodEntity(repeat('x', 200), 0)).length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownFormatIsRejected() {
+		byte[] bytes = SERIALIZER.serialize(new FoodEntity("1", 1));
+		bytes[0] = 2;
+		SERIALIZER.deserialize(bytes);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyBytesAreRejected() {
+		SERIALIZER.deserialize(new byte[0]);
+	}
+
+	@Test
+	public void truncatedBytesAreRejected() {
+		byte[] bytes = SERIALIZER.serialize(new FoodEntity("宫保鸡丁", Long.MIN_VALUE));
+		for (int length = 1; length < bytes.length; length++) {
+			try {
+				SERIALIZER.deserialize(Arrays.copyOf(bytes, length));
+				throw new AssertionError("截断到" + length + "字节没有报错");
+			} catch (IllegalArgumentException e) {
+				// 预期
+			}
+		}
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,135 @@
+package com.mvc.dao;
+
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mvc.entity.FoodEntity;
+import com.mvc.util.LongSerializer;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 二进制序列化与字符串方式的编解码耗时和字节数对比，不需要redis。
+ * <p>
+ * 字符串方式按jedis的String方法处理：菜品实体拼成“菜品编号,菜品数量”，计数器用String.valueOf，再经SafeEncoder转为UTF-8；
+ * 读取时先解码为String再解析。二进制方式分别使用{@link FoodEntitySerializer}和{@link LongSerializer}。
+ * 每组先预热一轮，耗时为单线程编码加解码一次的平均值，字节数为value的平均长度（不含RESP协议的长度前缀）。
+ * </p>
+ * <p>
+ * 用法：java com.mvc.dao.SerializerBenchmark [样本数] [轮数]，默认100000个样本、20轮
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+public final class SerializerBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(SerializerBenchmark.class);
+
+	private final FoodEntity[] foods;
+	private final long[] counters;
+	private final int rounds;
+
+	/**
+	 * 防止结果被优化掉
+	 */
+	private long sink;
+
+	public SerializerBenchmark(int samples, int rounds) {
+		Random random = new Random(42);
+		foods = new FoodEntity[samples];
+		counters = new long[samples];
+		for (int i = 0; i < samples; i++) {
+			foods[i] = new FoodEntity(String.valueOf(100000 + i), random.nextInt(1000));
+			counters[i] = random.nextInt(1000000);
+		}
+		this.rounds = rounds;
+	}
+
+	public void run() {
+		entityString();
+		entityBinary();
+		counterString();
+		counterBinary();
+		report("菜品实体", entityString(), entityBinary());
+		report("计数器", counterString(), counterBinary());
+		logger.info("校验值：" + sink);
+	}
+
+	private void report(String name, long[] string, long[] binary) {
+		long ops = (long) rounds * foods.length;
+		logger.info(name + "：字符串方式 " + string[0] / ops + "纳秒/次，平均" + string[1] * 100 / foods.length / 100.0
+				+ "字节；二进制方式 " + binary[0] / ops + "纳秒/次，平均" + binary[1] * 100 / foods.length / 100.0 + "字节");
+	}
+
+	/**
+	 * @return {总耗时纳秒, 一轮的总字节数}
+	 */
+	private long[] entityString() {
+		long bytes = 0;
+		long begin = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			bytes = 0;
+			for (FoodEntity food : foods) {
+				byte[] value = SafeEncoder.encode(food.getFoodId() + "," + food.getFoodNumber());
+				bytes += value.length;
+				String text = SafeEncoder.encode(value);
+				int comma = text.lastIndexOf(',');
+				FoodEntity read = new FoodEntity(text.substring(0, comma), Long.parseLong(text.substring(comma + 1)));
+				sink += read.getFoodNumber() + read.getFoodId().length();
+			}
+		}
+		return new long[] { System.nanoTime() - begin, bytes };
+	}
+
+	private long[] entityBinary() {
+		long bytes = 0;
+		long begin = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			bytes = 0;
+			for (FoodEntity food : foods) {
+				byte[] value = FoodEntitySerializer.INSTANCE.serialize(food);
+				bytes += value.length;
+				FoodEntity read = FoodEntitySerializer.INSTANCE.deserialize(value);
+				sink += read.getFoodNumber() + read.getFoodId().length();
+			}
+		}
+		return new long[] { System.nanoTime() - begin, bytes };
+	}
+
+	private long[] counterString() {
+		long bytes = 0;
+		long begin = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			bytes = 0;
+			for (long counter : counters) {
+				byte[] value = SafeEncoder.encode(String.valueOf(counter));
+				bytes += value.length;
+				sink += Long.parseLong(SafeEncoder.encode(value));
+			}
+		}
+		return new long[] { System.nanoTime() - begin, bytes };
+	}
+
+	private long[] counterBinary() {
+		long bytes = 0;
+		long begin = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			bytes = 0;
+			for (long counter : counters) {
+				byte[] value = LongSerializer.toBytes(counter);
+				bytes += value.length;
+				sink += LongSerializer.toLong(value);
+			}
+		}
+		return new long[] { System.nanoTime() - begin, bytes };
+	}
+
+	public static void main(String[] args) {
+		int samples = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		new SerializerBenchmark(samples, rounds).run();
+	}
+}
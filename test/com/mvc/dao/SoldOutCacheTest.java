@@ -0,0 +1,82 @@
+package com.mvc.dao;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * 售完标记的版本号规则和有效期，不需要redis（通知发送失败只记录日志）
+ *
+ * @author 23006
+ *
+ */
+public class SoldOutCacheTest {
+
+	@Test
+	public void markIsVisibleUntilCleared() {
+		SoldOutCache cache = new SoldOutCache(60000);
+		for (String foodId : new String[] { "1", "a1", "007" }) {
+			assertFalse(cache.isSoldOut(foodId));
+			cache.markSoldOut(foodId, 5, false);
+			assertTrue(cache.isSoldOut(foodId));
+			cache.clear(foodId, 6);
+			assertFalse(cache.isSoldOut(foodId));
+		}
+	}
+
+	@Test
+	public void markOlderThanClearIsRejected() {
+		SoldOutCache cache = new SoldOutCache(60000);
+		for (String foodId : new String[] { "2", "b2" }) {
+			// 补货的清除先到，扣减时确认的售完后到
+			cache.clear(foodId, 10);
+			cache.markSoldOut(foodId, 9, false);
+			assertFalse(cache.isSoldOut(foodId));
+			// 补货之后再次售完
+			cache.markSoldOut(foodId, 11, false);
+			assertTrue(cache.isSoldOut(foodId));
+		}
+	}
+
+	@Test
+	public void olderClearDoesNotLowerTheClearedVersion() {
+		SoldOutCache cache = new SoldOutCache(60000);
+		for (String foodId : new String[] { "3", "c3" }) {
+			cache.clear(foodId, 20);
+			cache.clear(foodId, 15);
+			cache.markSoldOut(foodId, 18, false);
+			assertFalse(cache.isSoldOut(foodId));
+		}
+	}
+
+	@Test
+	public void bulkClearUsesEachDishVersion() {
+		SoldOutCache cache = new SoldOutCache(60000);
+		cache.markSoldOut("4", 1, false);
+		cache.markSoldOut("d4", 1, false);
+		Map<String, Long> versions = new LinkedHashMap<String, Long>();
+		versions.put("4", 7L);
+		versions.put("d4", 3L);
+		cache.clear(versions);
+		assertFalse(cache.isSoldOut("4"));
+		assertFalse(cache.isSoldOut("d4"));
+		cache.markSoldOut("4", 5, false);
+		cache.markSoldOut("d4", 5, false);
+		assertFalse(cache.isSoldOut("4"));
+		assertTrue(cache.isSoldOut("d4"));
+	}
+
+	@Test
+	public void markExpires() throws InterruptedException {
+		SoldOutCache cache = new SoldOutCache(1);
+		cache.markSoldOut("5", 1, false);
+		cache.markSoldOut("e5", 1, false);
+		Thread.sleep(20);
+		assertFalse(cache.isSoldOut("5"));
+		assertFalse(cache.isSoldOut("e5"));
+	}
+}
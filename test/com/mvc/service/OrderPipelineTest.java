@@ -0,0 +1,57 @@
+package com.mvc.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * 订单结果表的覆盖规则和容量上限，不需要redis
+ *
+ * @author 23006
+ *
+ */
+public class OrderPipelineTest {
+
+	@Test
+	public void stalePublishDoesNotOverwriteNewerResult() {
+		OrderPipeline pipeline = new OrderPipeline(null, 4, 0, 1);
+		for (int i = 0; i < 64; i++) {
+			pipeline.submit("1");
+		}
+		// 新订单先写入，同一槽位的旧订单后写入
+		for (long orderId = 32; orderId < 64; orderId++) {
+			pipeline.publish(orderId, orderId);
+		}
+		for (long orderId = 0; orderId < 32; orderId++) {
+			pipeline.publish(orderId, FoodService.ORDER_FAILED);
+		}
+		// 容量4的缓冲区为4个槽位，结果表16个槽位，只保留最新的16个订单
+		for (long orderId = 48; orderId < 64; orderId++) {
+			assertEquals(orderId, pipeline.result(orderId));
+		}
+		for (long orderId = 0; orderId < 48; orderId++) {
+			assertEquals(FoodService.ORDER_UNKNOWN, pipeline.result(orderId));
+		}
+	}
+
+	@Test
+	public void newerPublishOverwritesOlderResult() {
+		OrderPipeline pipeline = new OrderPipeline(null, 4, 0, 1);
+		for (int i = 0; i < 64; i++) {
+			pipeline.submit("1");
+		}
+		for (long orderId = 0; orderId < 64; orderId++) {
+			pipeline.publish(orderId, orderId);
+		}
+		for (long orderId = 48; orderId < 64; orderId++) {
+			assertEquals(orderId, pipeline.result(orderId));
+		}
+		assertEquals(FoodService.ORDER_UNKNOWN, pipeline.result(32));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void capacityWhoseResultTableOverflowsIsRejected() {
+		// 取整为2^29个槽位，结果表为2^31，在分配之前拒绝
+		new OrderPipeline(null, OrderPipeline.MAX_CAPACITY + 1, 0, 1);
+	}
+}
@@ -0,0 +1,157 @@
+package com.mvc.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * 容量取整、满/空、绕回和多生产者多消费者，不需要redis
+ *
+ * @author 23006
+ *
+ */
+public class OrderRingBufferTest {
+
+	@Test
+	public void capacityIsRoundedUpToAPowerOfTwo() {
+		int[][] cases = { { -1, 2 }, { 0, 2 }, { 1, 2 }, { 2, 2 }, { 3, 4 }, { 4, 4 }, { 5, 8 }, { 1000, 1024 },
+				{ 1024, 1024 }, { 1025, 2048 }, { OrderRingBuffer.MAX_CAPACITY - 1, OrderRingBuffer.MAX_CAPACITY } };
+		for (int[] c : cases) {
+			assertEquals("容量" + c[0], c[1], OrderRingBuffer.sizeFor(c[0]));
+		}
+		assertEquals(1024, new OrderRingBuffer(1000).capacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void capacityOverTheLimitIsRejected() {
+		new OrderRingBuffer(OrderRingBuffer.MAX_CAPACITY + 1);
+	}
+
+	@Test
+	public void fullAndEmpty() {
+		OrderRingBuffer ring = new OrderRingBuffer(4);
+		assertTrue(ring.isEmpty());
+		for (long orderId = 0; orderId < 4; orderId++) {
+			assertTrue(ring.offer(orderId, "f" + orderId));
+		}
+		assertFalse(ring.offer(4, "f4"));
+		assertFalse(ring.isEmpty());
+
+		long[] orderIds = new long[8];
+		String[] foodIds = new String[8];
+		assertEquals(4, ring.drain(orderIds, foodIds, 8));
+		for (int i = 0; i < 4; i++) {
+			assertEquals((long) i, orderIds[i]);
+			assertEquals("f" + i, foodIds[i]);
+		}
+		assertNull(foodIds[4]);
+		assertTrue(ring.isEmpty());
+		assertEquals(0, ring.drain(orderIds, foodIds, 8));
+	}
+
+	@Test
+	public void fifoAcrossManyWrapArounds() {
+		// 最小的2个槽位，每轮写满再分两次取出
+		OrderRingBuffer ring = new OrderRingBuffer(1);
+		long[] orderIds = new long[2];
+		String[] foodIds = new String[2];
+		long next = 0;
+		for (int round = 0; round < 1000; round++) {
+			assertTrue(ring.offer(next, "a"));
+			assertTrue(ring.offer(next + 1, "b"));
+			assertFalse(ring.offer(next + 2, "c"));
+			assertEquals(1, ring.drain(orderIds, foodIds, 1));
+			assertEquals(next, orderIds[0]);
+			assertEquals("a", foodIds[0]);
+			// 取出一个后空出一个槽位
+			assertTrue(ring.offer(next + 2, "c"));
+			assertEquals(2, ring.drain(orderIds, foodIds, 2));
+			assertEquals(next + 1, orderIds[0]);
+			assertEquals(next + 2, orderIds[1]);
+			assertEquals("c", foodIds[1]);
+			next += 3;
+		}
+		assertTrue(ring.isEmpty());
+	}
+
+	@Test(timeout = 30000)
+	public void everyOrderIsDrainedExactlyOnce() throws Exception {
+		final int producers = 4;
+		final int perProducer = 100000;
+		final OrderRingBuffer ring = new OrderRingBuffer(64);
+		final AtomicIntegerArray seen = new AtomicIntegerArray(producers * perProducer);
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p++) {
+			final int base = p * perProducer;
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perProducer; i++) {
+						long orderId = base + i;
+						while (!ring.offer(orderId, String.valueOf(orderId))) {
+							Thread.yield();
+						}
+					}
+				}
+			}));
+		}
+		List<Thread> consumers = new ArrayList<Thread>();
+		for (int c = 0; c < 3; c++) {
+			consumers.add(new Thread(new Runnable() {
+				public void run() {
+					long[] orderIds = new long[16];
+					String[] foodIds = new String[16];
+					try {
+						while (true) {
+							boolean finished = done.get();
+							int count = ring.drain(orderIds, foodIds, orderIds.length);
+							for (int i = 0; i < count; i++) {
+								if (!String.valueOf(orderIds[i]).equals(foodIds[i])) {
+									throw new AssertionError("订单" + orderIds[i] + "读到菜品" + foodIds[i]);
+								}
+								seen.incrementAndGet((int) orderIds[i]);
+							}
+							if (count == 0) {
+								if (finished) {
+									return;
+								}
+								Thread.yield();
+							}
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			}));
+		}
+		for (Thread thread : consumers) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		done.set(true);
+		for (Thread thread : consumers) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		for (int i = 0; i < seen.length(); i++) {
+			assertEquals("订单" + i, 1, seen.get(i));
+		}
+	}
+}
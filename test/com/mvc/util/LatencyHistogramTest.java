@@ -0,0 +1,56 @@
+package com.mvc.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * 由各桶得到的总数、按条带合并的总耗时和最大值，不需要redis
+ *
+ * @author 23006
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void emptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getMax());
+		assertEquals(0L, histogram.getPercentile(99));
+		assertEquals(0.0, histogram.getMean(), 0);
+	}
+
+	@Test
+	public void recordsFromManyThreadsAreMerged() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final int perThread = 10000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final long micros = t + 1;
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						histogram.record(micros);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(8L * perThread, histogram.getCount());
+		assertEquals(8L, histogram.getMax());
+		// (1 + 2 + ... + 8) / 8
+		assertEquals(4.5, histogram.getMean(), 1e-9);
+		// 小于32微秒时每微秒一个桶
+		assertEquals(4L, histogram.getPercentile(50));
+		assertEquals(8L, histogram.getPercentile(100));
+	}
+}
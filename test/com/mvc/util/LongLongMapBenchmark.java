@@ -0,0 +1,173 @@
+package com.mvc.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LongLongMap}与ConcurrentHashMap&lt;String, Long&gt;的内存占用和吞吐量对比，不需要redis。
+ * <p>
+ * 两者都以请求中的字符串菜品编号为输入，LongLongMap一侧包含把编号解析为long的开销。
+ * 吞吐量测试中每个线程随机读取菜品，按写比例执行加1；先预热一轮，结果只作为相对比较。
+ * </p>
+ * <p>
+ * 用法：java com.mvc.util.LongLongMapBenchmark [菜品数] [线程数] [每线程操作数] [写比例%]，
+ * 默认200000个菜品、4个线程、每线程5000000次操作、写比例10%；建议使用-Xms与-Xmx相同的堆运行
+ * </p>
+ *
+ * @author 23006
+ *
+ */
+public final class LongLongMapBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(LongLongMapBenchmark.class);
+
+	private static final long NO_VALUE = Long.MIN_VALUE;
+
+	private final String[] foodIds;
+	private final int threads;
+	private final int opsPerThread;
+	private final int writePercent;
+
+	public LongLongMapBenchmark(int dishes, int threads, int opsPerThread, int writePercent) {
+		foodIds = new String[dishes];
+		for (int i = 0; i < dishes; i++) {
+			foodIds[i] = String.valueOf(100000 + i);
+		}
+		this.threads = threads;
+		this.opsPerThread = opsPerThread;
+		this.writePercent = writePercent;
+	}
+
+	public void run() throws InterruptedException {
+		long before = usedMemory();
+		ConcurrentHashMap<String, Long> stringMap = fillStringMap();
+		long stringBytes = usedMemory() - before;
+		before = usedMemory();
+		LongLongMap longMap = fillLongMap();
+		long longBytes = usedMemory() - before;
+		logger.info("内存占用（" + foodIds.length + "个菜品）：ConcurrentHashMap " + stringBytes / 1024 + "KB，LongLongMap "
+				+ longBytes / 1024 + "KB");
+
+		// 预热
+		runStringMap(stringMap);
+		runLongMap(longMap);
+		long stringNanos = runStringMap(stringMap);
+		long longNanos = runLongMap(longMap);
+		long ops = (long) threads * opsPerThread;
+		logger.info("吞吐量（" + threads + "个线程，写" + writePercent + "%）：ConcurrentHashMap " + ops * 1000000L
+				/ stringNanos + "次/毫秒，LongLongMap " + ops * 1000000L / longNanos + "次/毫秒");
+	}
+
+	private ConcurrentHashMap<String, Long> fillStringMap() {
+		ConcurrentHashMap<String, Long> map = new ConcurrentHashMap<String, Long>(foodIds.length * 2);
+		for (String foodId : foodIds) {
+			// 与请求中的编号一样是新建的字符串，不与foodIds共用
+			map.put(new String(foodId), 0L);
+		}
+		return map;
+	}
+
+	private LongLongMap fillLongMap() {
+		LongLongMap map = new LongLongMap(foodIds.length, NO_VALUE);
+		for (String foodId : foodIds) {
+			map.put(Long.parseLong(foodId), 0L);
+		}
+		return map;
+	}
+
+	private long runStringMap(final ConcurrentHashMap<String, Long> map) throws InterruptedException {
+		return measure(new Runnable() {
+			public void run() {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long sink = 0;
+				for (int i = 0; i < opsPerThread; i++) {
+					String foodId = foodIds[random.nextInt(foodIds.length)];
+					if (random.nextInt(100) < writePercent) {
+						Long old;
+						do {
+							old = map.get(foodId);
+						} while (!map.replace(foodId, old, old + 1));
+					} else {
+						sink += map.get(foodId);
+					}
+				}
+				consume(sink);
+			}
+		});
+	}
+
+	private long runLongMap(final LongLongMap map) throws InterruptedException {
+		return measure(new Runnable() {
+			public void run() {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long sink = 0;
+				for (int i = 0; i < opsPerThread; i++) {
+					long foodId = Long.parseLong(foodIds[random.nextInt(foodIds.length)]);
+					if (random.nextInt(100) < writePercent) {
+						map.addAndGet(foodId, 1);
+					} else {
+						sink += map.get(foodId);
+					}
+				}
+				consume(sink);
+			}
+		});
+	}
+
+	/**
+	 * 所有线程同时开始执行task
+	 *
+	 * @return 全部完成的耗时，纳秒
+	 */
+	private long measure(final Runnable task) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						task.run();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}, "benchmark-" + i).start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - begin;
+	}
+
+	private static volatile long blackhole;
+
+	/**
+	 * 防止读取结果被优化掉
+	 */
+	private static void consume(long value) {
+		blackhole += value;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int dishes = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int ops = args.length > 2 ? Integer.parseInt(args[2]) : 5000000;
+		int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		new LongLongMapBenchmark(dishes, threads, ops, writePercent).run();
+	}
+}
@@ -0,0 +1,201 @@
+package com.mvc.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * 探测、删除前移、扩容和并发读写，不需要redis
+ *
+ * @author 23006
+ *
+ */
+public class LongLongMapTest {
+
+	private static final long NO_VALUE = -1L;
+
+	@Test
+	public void collidingKeysWrapAroundTheTableEnd() {
+		LongLongMap map = new LongLongMap(0, NO_VALUE);
+		// 同一段中落在最后一个槽位的3个key，探测链从槽位15绕回0、1；再加一个落在槽位0的key
+		List<Long> keys = keys(0, 15, 3);
+		long other = keys(0, 0, 1).get(0);
+		keys.add(other);
+		for (long key : keys) {
+			assertEquals(NO_VALUE, map.put(key, key + 100));
+		}
+		for (long key : keys) {
+			assertEquals(key + 100, map.get(key));
+		}
+		assertEquals(4, map.size());
+
+		// 删除链首，后续条目前移，落在槽位0的key不能移到它的起始槽位之前
+		assertEquals(keys.get(0) + 100, map.remove(keys.get(0)));
+		assertEquals(NO_VALUE, map.get(keys.get(0)));
+		for (long key : keys.subList(1, 4)) {
+			assertEquals(key + 100, map.get(key));
+		}
+		// 删除绕回后的中间条目
+		assertEquals(keys.get(2) + 100, map.remove(keys.get(2)));
+		assertEquals(keys.get(1) + 100, map.get(keys.get(1)));
+		assertEquals(other + 100, map.get(other));
+		assertEquals(2, map.size());
+
+		// 删除后再插入，空出的槽位可以复用
+		assertEquals(NO_VALUE, map.put(keys.get(0), 7));
+		assertEquals(7L, map.get(keys.get(0)));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void anyLongCanBeAKey() {
+		LongLongMap map = new LongLongMap(0, NO_VALUE);
+		map.put(0, 1);
+		map.put(NO_VALUE, 2);
+		map.put(Long.MIN_VALUE, 3);
+		assertEquals(1L, map.get(0));
+		assertEquals(2L, map.get(NO_VALUE));
+		assertEquals(3L, map.get(Long.MIN_VALUE));
+		assertFalse(map.containsKey(Long.MAX_VALUE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void noValueCannotBeStored() {
+		new LongLongMap(0, NO_VALUE).put(1, NO_VALUE);
+	}
+
+	@Test
+	public void resizeKeepsAllEntries() {
+		LongLongMap map = new LongLongMap(0, NO_VALUE);
+		for (long key = 0; key < 10000; key++) {
+			map.put(key, key * 3);
+		}
+		assertEquals(10000, map.size());
+		for (long key = 0; key < 10000; key += 2) {
+			assertEquals(key * 3, map.remove(key));
+		}
+		assertEquals(5000, map.size());
+		for (long key = 0; key < 10000; key++) {
+			assertEquals(key % 2 == 0 ? NO_VALUE : key * 3, map.get(key));
+		}
+		map.clear();
+		assertEquals(0, map.size());
+		assertEquals(NO_VALUE, map.get(1));
+	}
+
+	@Test
+	public void conditionalUpdates() {
+		LongLongMap map = new LongLongMap(16, NO_VALUE);
+		assertEquals(NO_VALUE, map.putIfAbsent(1, 10));
+		assertEquals(10L, map.putIfAbsent(1, 20));
+		assertEquals(10L, map.get(1));
+
+		assertEquals(10L, map.putIfGreater(1, 5));
+		assertEquals(10L, map.putIfGreater(1, 10));
+		assertEquals(15L, map.putIfGreater(1, 15));
+		assertEquals(15L, map.get(1));
+		assertEquals(3L, map.putIfGreater(2, 3));
+
+		assertFalse(map.remove(1, 10));
+		assertEquals(15L, map.get(1));
+		assertTrue(map.remove(1, 15));
+		assertEquals(NO_VALUE, map.get(1));
+		assertFalse(map.remove(1, 15));
+
+		assertEquals(4L, map.addAndGet(3, 4));
+		assertEquals(1L, map.addAndGet(3, -3));
+	}
+
+	@Test(timeout = 30000)
+	public void readersNeverSeeMissingOrWrongValuesWhileWritersShiftAndResize() throws Exception {
+		final LongLongMap map = new LongLongMap(0, NO_VALUE);
+		// 常驻key的value不变，写线程在同一批段中反复插入删除其他key，引起前移和扩容
+		final long[] stable = new long[256];
+		for (int i = 0; i < stable.length; i++) {
+			stable[i] = i * 2;
+			map.put(stable[i], stable[i] + 1);
+		}
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (int round = 0; !stop.get(); round++) {
+						for (long key = 1; key < 4096; key += 2) {
+							map.put(key, round);
+						}
+						for (long key = 1; key < 4096; key += 2) {
+							map.remove(key);
+						}
+					}
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			}
+		});
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int r = 0; r < 4; r++) {
+			readers.add(new Thread(new Runnable() {
+				public void run() {
+					try {
+						while (!stop.get()) {
+							for (long key : stable) {
+								long value = map.get(key);
+								if (value != key + 1) {
+									throw new AssertionError("key " + key + " 读到 " + value);
+								}
+							}
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			}));
+		}
+		writer.start();
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		Thread.sleep(1000);
+		stop.set(true);
+		writer.join();
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(stable.length, map.size());
+	}
+
+	/**
+	 * 找出count个落在指定段、指定起始槽位(最小容量16的表)的key，与LongLongMap的混合函数一致
+	 */
+	private static List<Long> keys(int segment, int home, int count) {
+		List<Long> keys = new ArrayList<Long>();
+		for (long key = 0; keys.size() < count; key++) {
+			long h = mix(key);
+			if (((int) (h >>> 60) & 15) == segment && ((int) h & 15) == home) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	private static long mix(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,78 @@
+package com.mvc.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * hash tag解析和一致性哈希的分布，不需要redis
+ *
+ * @author 23006
+ *
+ */
+public class ShardRouterTest {
+
+	@Test
+	public void hashTag() {
+		assertEquals("food", ShardRouter.hashTag("food"));
+		assertEquals("1", ShardRouter.hashTag("{1}:ver"));
+		assertEquals("1", ShardRouter.hashTag("stock:{1}:s0"));
+		// 只取第一个{}
+		assertEquals("1", ShardRouter.hashTag("{1}{2}"));
+		// 空的{}或没有闭合时按整个key
+		assertEquals("{}:1", ShardRouter.hashTag("{}:1"));
+		assertEquals("{}{1}", ShardRouter.hashTag("{}{1}"));
+		assertEquals("{1", ShardRouter.hashTag("{1"));
+		assertEquals("}1{", ShardRouter.hashTag("}1{"));
+		assertEquals("{b", ShardRouter.hashTag("a{{b}"));
+	}
+
+	@Test
+	public void sameHashTagSameNode() {
+		ShardRouter router = new ShardRouter(Arrays.asList("10.0.0.1:6379", "10.0.0.2:6379", "10.0.0.3:6379"));
+		for (int i = 0; i < 1000; i++) {
+			int node = router.nodeFor(String.valueOf(i));
+			assertEquals(node, router.nodeFor("{" + i + "}:ver"));
+			assertEquals(node, router.nodeFor("{" + i + "}:s7"));
+		}
+	}
+
+	@Test
+	public void keysSpreadOverAllNodes() {
+		ShardRouter router = new ShardRouter(Arrays.asList("10.0.0.1:6379", "10.0.0.2:6379", "10.0.0.3:6379"));
+		int[] counts = new int[3];
+		for (int i = 0; i < 30000; i++) {
+			counts[router.nodeFor("food:" + i)]++;
+		}
+		for (int count : counts) {
+			assertTrue("分布不均：" + Arrays.toString(counts), count > 7000 && count < 13000);
+		}
+	}
+
+	@Test
+	public void addressOrderDoesNotMatterAndAddingANodeMovesFewKeys() {
+		List<String> three = Arrays.asList("10.0.0.1:6379", "10.0.0.2:6379", "10.0.0.3:6379");
+		List<String> reordered = Arrays.asList("10.0.0.3:6379", "10.0.0.1:6379", "10.0.0.2:6379");
+		List<String> four = Arrays.asList("10.0.0.1:6379", "10.0.0.2:6379", "10.0.0.3:6379", "10.0.0.4:6379");
+		ShardRouter a = new ShardRouter(three);
+		ShardRouter b = new ShardRouter(reordered);
+		ShardRouter c = new ShardRouter(four);
+		int moved = 0;
+		for (int i = 0; i < 10000; i++) {
+			String key = "food:" + i;
+			String node = three.get(a.nodeFor(key));
+			assertEquals(node, reordered.get(b.nodeFor(key)));
+			String after = four.get(c.nodeFor(key));
+			if (!after.equals(node)) {
+				// 只会移到新节点
+				assertEquals("10.0.0.4:6379", after);
+				moved++;
+			}
+		}
+		assertTrue("移动的key数：" + moved, moved > 1500 && moved < 3500);
+	}
+}